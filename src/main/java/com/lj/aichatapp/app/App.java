@@ -60,6 +60,11 @@ public class App extends Application {
         }
     }
 
+    @Override
+    public void stop() {
+        AppContext.getInstance().shutdown();
+    }
+
     private void showFatalError(Throwable t) {
         Platform.runLater(() -> {
             Alert alert = new Alert(Alert.AlertType.ERROR);
@@ -1,36 +1,48 @@
 package com.lj.aichatapp.context;
 
+import com.lj.aichatapp.infrastructure.concurrent.AppExecutors;
 import com.lj.aichatapp.infrastructure.database.DatabaseManager;
 import com.lj.aichatapp.infrastructure.preferences.PreferencesManager;
 import com.lj.aichatapp.models.UserPreferences;
 import com.lj.aichatapp.repository.ConversationRepository;
 import com.lj.aichatapp.repository.MessageRepository;
 import com.lj.aichatapp.repository.PromptRepository;
+import com.lj.aichatapp.repository.ResponseCacheRepository;
+import com.lj.aichatapp.repository.SummaryRepository;
 import com.lj.aichatapp.repository.impl.ConversationRepositoryImpl;
 import com.lj.aichatapp.repository.impl.MessageRepositoryImpl;
 import com.lj.aichatapp.repository.impl.PromptRepositoryImpl;
+import com.lj.aichatapp.repository.impl.ResponseCacheRepositoryImpl;
+import com.lj.aichatapp.repository.impl.SummaryRepositoryImpl;
 import com.lj.aichatapp.service.ChatService;
+import com.lj.aichatapp.service.ModelCatalogService;
 import com.lj.aichatapp.service.PromptService;
 import com.lj.aichatapp.service.SettingsService;
 import com.lj.aichatapp.service.ai.AIServiceManager;
+import com.lj.aichatapp.service.ai.ResponseCache;
 
 public class AppContext {
 
     private static AppContext instance;
 
     private final UserPreferences preferences;
+    private final AppExecutors executors;
     private final DatabaseManager databaseManager;
     private final ConversationRepository conversationRepository;
     private final MessageRepository messageRepository;
     private final PromptRepository promptRepository;
+    private final ResponseCacheRepository responseCacheRepository;
+    private final SummaryRepository summaryRepository;
     private final SettingsService settingsService;
     private final AIServiceManager aiServiceManager;
     private final ChatService chatService;
     private final PromptService promptService;
+    private final ModelCatalogService modelCatalogService;
 
     private AppContext() {
         PreferencesManager.ensureAppDirectory();
         this.preferences = PreferencesManager.loadPreferences();
+        this.executors = AppExecutors.getInstance();
 
         this.databaseManager = DatabaseManager.getInstance();
         databaseManager.initDatabase();
@@ -38,11 +50,19 @@ public class AppContext {
         this.conversationRepository = new ConversationRepositoryImpl(databaseManager);
         this.messageRepository = new MessageRepositoryImpl(databaseManager);
         this.promptRepository = new PromptRepositoryImpl(databaseManager);
+        this.responseCacheRepository = new ResponseCacheRepositoryImpl(databaseManager);
+        this.summaryRepository = new SummaryRepositoryImpl(databaseManager);
 
         this.settingsService = new SettingsService(preferences);
-        this.aiServiceManager = new AIServiceManager(preferences);
-        this.chatService = new ChatService(aiServiceManager, conversationRepository, messageRepository, preferences);
+        this.modelCatalogService = new ModelCatalogService(preferences, executors.io());
+        this.aiServiceManager = new AIServiceManager(preferences, new ResponseCache(responseCacheRepository, preferences, executors.io()), executors);
+        aiServiceManager.setModelSource(modelCatalogService::routableModels);
+        this.chatService = new ChatService(aiServiceManager, conversationRepository, messageRepository, summaryRepository, modelCatalogService, preferences, executors);
         this.promptService = new PromptService(promptRepository);
+
+        aiServiceManager.warmUp();
+        aiServiceManager.startKeepAlive();
+        modelCatalogService.startRefreshing();
     }
 
     public static synchronized AppContext getInstance() {
@@ -56,6 +76,12 @@ public class AppContext {
         instance = null;
     }
 
+    public void shutdown() {
+        modelCatalogService.shutdown();
+        aiServiceManager.shutdown();
+        executors.shutdown();
+    }
+
     public UserPreferences getPreferences() {
         return preferences;
     }
@@ -64,6 +90,10 @@ public class AppContext {
         PreferencesManager.savePreferences(preferences);
     }
 
+    public AppExecutors getExecutors() {
+        return executors;
+    }
+
     public ConversationRepository getConversationRepository() {
         return conversationRepository;
     }
@@ -88,6 +118,10 @@ public class AppContext {
         return chatService;
     }
 
+    public ModelCatalogService getModelCatalogService() {
+        return modelCatalogService;
+    }
+
     public PromptService getPromptService() {
         return promptService;
     }
@@ -99,8 +133,39 @@ public class AppContext {
         preferences.setProvider(newPrefs.getProvider());
         preferences.setModel(newPrefs.getModel());
         preferences.setOllamaHost(newPrefs.getOllamaHost());
+        preferences.setOllamaHosts(newPrefs.getOllamaHosts());
         preferences.setProviderKeys(newPrefs.getProviderKeys());
+        preferences.setProviderBaseUrls(newPrefs.getProviderBaseUrls());
         preferences.setCustomModels(newPrefs.getCustomModels());
+        preferences.setOpenRouterSpeedProfiles(newPrefs.getOpenRouterSpeedProfiles());
+        preferences.setResponseCacheEnabled(newPrefs.isResponseCacheEnabled());
+        preferences.setResponseCacheTtlHours(newPrefs.getResponseCacheTtlHours());
+        preferences.setResponseCacheMaxEntries(newPrefs.getResponseCacheMaxEntries());
+        preferences.setHedgingEnabled(newPrefs.isHedgingEnabled());
+        preferences.setHedgeProvider(newPrefs.getHedgeProvider());
+        preferences.setHedgeModel(newPrefs.getHedgeModel());
+        preferences.setHedgeDelayMs(newPrefs.getHedgeDelayMs());
+        preferences.setAutoRouteAllowCloud(newPrefs.isAutoRouteAllowCloud());
+        preferences.setAutoRouteMaxTtftMs(newPrefs.getAutoRouteMaxTtftMs());
+        preferences.setAutoRouteMaxErrorRate(newPrefs.getAutoRouteMaxErrorRate());
+        preferences.setAutoRouteModels(newPrefs.getAutoRouteModels());
+        preferences.setProviderConcurrency(newPrefs.getProviderConcurrency());
+        preferences.setOllamaKeepAlive(newPrefs.getOllamaKeepAlive());
+        preferences.setOllamaPreloadEnabled(newPrefs.isOllamaPreloadEnabled());
+        preferences.setOllamaContextReuse(newPrefs.isOllamaContextReuse());
+        preferences.setOllamaProfile(newPrefs.getOllamaProfile());
+        preferences.setOllamaCalibration(newPrefs.getOllamaCalibration());
+        preferences.setContextBudgetTokens(newPrefs.getContextBudgetTokens());
+        preferences.setContextResponseReserveTokens(newPrefs.getContextResponseReserveTokens());
+        preferences.setSummaryEnabled(newPrefs.isSummaryEnabled());
+        preferences.setSummaryThresholdTokens(newPrefs.getSummaryThresholdTokens());
+        preferences.setTokenizerDownloadEnabled(newPrefs.isTokenizerDownloadEnabled());
+        preferences.setStreamFirstTokenTimeoutMs(newPrefs.getStreamFirstTokenTimeoutMs());
+        preferences.setStreamIdleTimeoutMs(newPrefs.getStreamIdleTimeoutMs());
+        preferences.setStreamMaxRetries(newPrefs.getStreamMaxRetries());
+        preferences.setCircuitBreakerEnabled(newPrefs.isCircuitBreakerEnabled());
+        preferences.setCircuitBreakerFallback(newPrefs.isCircuitBreakerFallback());
+        preferences.setCircuitBreakerSlowCallMs(newPrefs.getCircuitBreakerSlowCallMs());
         PreferencesManager.savePreferences(preferences);
     }
 }
\ No newline at end of file
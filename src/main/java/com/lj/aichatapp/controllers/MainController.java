@@ -16,10 +16,12 @@ import com.lj.aichatapp.models.Message;
 import com.lj.aichatapp.models.MessageRole;
 import com.lj.aichatapp.models.UserPreferences;
 import com.lj.aichatapp.service.ChatService;
+import com.lj.aichatapp.service.ai.CircuitBreaker;
 import com.lj.aichatapp.utils.FxUtils;
 import com.lj.aichatapp.utils.Logger;
 import com.lj.aichatapp.utils.ResponseFormatter;
 import javafx.animation.KeyFrame;
+import javafx.animation.PauseTransition;
 import javafx.util.Duration;
 
 import java.io.PrintWriter;
@@ -63,9 +65,13 @@ public class MainController {
     @FXML
     public Label currentModelIndicator;
     @FXML
+    public Label circuitIndicator;
+    @FXML
     public TextField searchField;
     @FXML
     public Label charCount;
+    private long tokenCountSeq;
+    private final PauseTransition tokenCountDelay = new PauseTransition(Duration.millis(250));
     @FXML
     public VBox emptyState;
     
@@ -133,6 +139,7 @@ public class MainController {
 
         applyFontSettings();
         updateModelIndicator();
+        ctx.getAiServiceManager().getCircuitBreaker().setStateListener(() -> Platform.runLater(this::updateCircuitIndicator));
         
         btnSend.disableProperty().bind(
             Bindings.createBooleanBinding(() -> {
@@ -235,13 +242,35 @@ public class MainController {
         inputField.textProperty().addListener((obs, oldText, newText) -> {
             updateInputFieldHeight();
             if (charCount != null) {
-                int count = newText != null ? newText.length() : 0;
-                charCount.setText(count + " characters");
+                updateTokenCount(newText);
             }
         });
         inputField.widthProperty().addListener((obs, oldWidth, newWidth) -> updateInputFieldHeight());
     }
 
+    /**
+     * Counts once typing pauses, not on every keystroke.
+     */
+    private void updateTokenCount(String text) {
+        long seq = ++tokenCountSeq;
+        if (text == null || text.isEmpty()) {
+            tokenCountDelay.stop();
+            charCount.setText("");
+            return;
+        }
+        tokenCountDelay.setOnFinished(e -> countTokens(text, seq));
+        tokenCountDelay.playFromStart();
+    }
+
+    private void countTokens(String text, long seq) {
+        chatService.countTokens(text).thenAccept(tokens -> Platform.runLater(() -> {
+            // Typing may have moved on while this count ran.
+            if (seq == tokenCountSeq) {
+                charCount.setText(tokens + (tokens == 1 ? " token" : " tokens"));
+            }
+        }));
+    }
+
     private void updateInputFieldHeight() {
         Platform.runLater(() -> {
             final double MAX_HEIGHT = 150;
@@ -315,6 +344,13 @@ public class MainController {
         }
     }
     
+    private void updateCircuitIndicator() {
+        List<String> open = AppContext.getInstance().getAiServiceManager().getCircuitBreaker().describeOpenCircuits();
+        circuitIndicator.setText(String.join(" · ", open));
+        circuitIndicator.setVisible(!open.isEmpty());
+        circuitIndicator.setManaged(!open.isEmpty());
+    }
+
     private String getRelativeDate(LocalDateTime dateTime) {
         if (dateTime == null) return "";
         
@@ -400,7 +436,6 @@ public class MainController {
         }
 
         Message userMsg = new Message(MessageRole.USER, text);
-        currentConversation.addMessage(userMsg);
         addMessageToView(userMsg);
 
         setTyping(true);
@@ -434,11 +469,15 @@ public class MainController {
         );
         throttleTimeline.getKeyFrames().add(kf);
 
-        currentRequest = chatService.sendMessage(currentConversation, text, chunk -> {
+        currentRequest = chatService.sendMessage(currentConversation, userMsg, chunk -> {
             Platform.runLater(() -> {
                 currentResponse.append(chunk);
             });
-        });
+        }, status -> Platform.runLater(() -> {
+            if (isGenerating) {
+                typingIndicator.setText(status == null || status.isBlank() ? "iTutor is responding..." : status);
+            }
+        }));
         
         Platform.runLater(() -> throttleTimeline.playFromStart());
         
@@ -466,7 +505,8 @@ public class MainController {
                         FxUtils.fadeIn(bubble);
                     }
                     
-                    chatService.saveAiResponse(currentConversation, resp);
+                    Message saved = chatService.saveAiResponse(currentConversation, resp);
+                    attachPinMenu(bubble, saved);
                     scrollToBottom();
                 }
                 currentRequest = null;
@@ -510,6 +550,7 @@ public class MainController {
             bubbleNode.setStyle("-fx-alignment: center-left;");
         }
 
+        attachPinMenu(bubbleNode, m);
         messagesBox.getChildren().add(bubbleNode);
         
         Platform.runLater(() -> {
@@ -519,6 +560,17 @@ public class MainController {
         FxUtils.fadeIn(bubbleNode);
     }
 
+    /**
+     * Lets the user pin a message so it is always kept in the model's context.
+     */
+    private void attachPinMenu(Node bubbleNode, Message message) {
+        MenuItem pinItem = new MenuItem();
+        ContextMenu menu = new ContextMenu(pinItem);
+        menu.setOnShowing(e -> pinItem.setText(message.isPinned() ? "Unpin from context" : "Pin to context"));
+        pinItem.setOnAction(e -> chatService.setPinned(message, !message.isPinned()));
+        bubbleNode.setOnContextMenuRequested(e -> menu.show(bubbleNode, e.getScreenX(), e.getScreenY()));
+    }
+
     @FXML
     public void onOpenSettings() {
         try {
@@ -625,7 +677,11 @@ public class MainController {
         if (msg == null) msg = "";
         
         // Enhance message detection logic
-        if (msg.contains("429") || msg.toLowerCase().contains("limit")) {
+        if (cause instanceof CircuitBreaker.CircuitOpenException) {
+            showFriendlyError("Provider Unavailable",
+                msg + "\n\n" +
+                "Add an Ollama model in Settings to have it answer meanwhile, or switch to a different provider.", cause);
+        } else if (msg.contains("429") || msg.toLowerCase().contains("limit")) {
             showFriendlyError("Usage Limit Reached", 
                 "You have reached your usage limit with the AI provider.\n\n" +
                 "Please check your API plan or try switching to a different model/provider in Settings.", cause);
@@ -1,9 +1,14 @@
 package com.lj.aichatapp.controllers;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lj.aichatapp.context.AppContext;
+import com.lj.aichatapp.models.ModelInfo;
+import com.lj.aichatapp.models.SpeedProfile;
+import com.lj.aichatapp.models.UpstreamStats;
 import com.lj.aichatapp.models.UserPreferences;
 import com.lj.aichatapp.infrastructure.preferences.PreferencesManager;
+import com.lj.aichatapp.service.ai.providers.OllamaTuning;
+import com.lj.aichatapp.service.ai.providers.OpenRouterRouting;
+import com.lj.aichatapp.utils.FutureUtils;
 import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.fxml.FXML;
@@ -13,10 +18,6 @@ import javafx.scene.text.Font;
 import javafx.stage.Stage;
 import org.kordamp.ikonli.javafx.FontIcon;
 
-import java.net.URI;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
@@ -44,6 +45,8 @@ public class SettingsController {
     @FXML
     private TextField ollamaHost;
     @FXML
+    private TextField ollamaHostsField;
+    @FXML
     private PasswordField openRouterKeyField;
     @FXML
     private TextField openRouterKeyText;
@@ -56,6 +59,70 @@ public class SettingsController {
     @FXML
     private ToggleButton groqToggle;
     @FXML
+    private CheckBox ollamaPreloadCheck;
+    @FXML
+    private CheckBox ollamaContextReuseCheck;
+    @FXML
+    private TextField ollamaKeepAliveField;
+    @FXML
+    private ChoiceBox<String> ollamaProfileChoice;
+    @FXML
+    private Label calibrationLabel;
+    @FXML
+    private TextField contextBudgetField;
+    @FXML
+    private TextField contextReserveField;
+    @FXML
+    private CheckBox summaryCheck;
+    @FXML
+    private TextField summaryThresholdField;
+    @FXML
+    private CheckBox tokenizerDownloadCheck;
+    @FXML
+    private CheckBox responseCacheCheck;
+    @FXML
+    private CheckBox hedgingCheck;
+    @FXML
+    private ChoiceBox<String> hedgeProviderChoice;
+    @FXML
+    private TextField hedgeModelField;
+    @FXML
+    private TextField hedgeDelayField;
+    @FXML
+    private CheckBox autoRouteCloudCheck;
+    @FXML
+    private TextField autoRouteMaxTtftField;
+    @FXML
+    private TextField autoRouteMaxErrorField;
+    @FXML
+    private TextField streamFirstTokenTimeoutField;
+    @FXML
+    private TextField streamIdleTimeoutField;
+    @FXML
+    private TextField streamRetriesField;
+    @FXML
+    private CheckBox circuitBreakerCheck;
+    @FXML
+    private CheckBox circuitBreakerFallbackCheck;
+    @FXML
+    private TextField circuitBreakerSlowCallField;
+    @FXML
+    private VBox speedProfileCard;
+    @FXML
+    private Label speedProfileLabel;
+    @FXML
+    private ChoiceBox<String> speedSortChoice;
+    @FXML
+    private TextField onlyProvidersField;
+    @FXML
+    private TextField ignoredProvidersField;
+    @FXML
+    private TextField fallbackModelsField;
+    @FXML
+    private CheckBox allowFallbacksCheck;
+    @FXML
+    private Label speedStatsLabel;
+    @FXML
     private VBox generalSection;
     @FXML
     private VBox providersSection;
@@ -63,8 +130,7 @@ public class SettingsController {
     private VBox modelsSection;
 
     private UserPreferences prefs;
-    private final HttpClient httpClient = HttpClient.newHttpClient();
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    private String speedProfileModel;
 
     @FXML
     public void initialize() {
@@ -72,8 +138,17 @@ public class SettingsController {
         fontFamilyCombo.setItems(FXCollections.observableArrayList(Font.getFamilies()));
 
         // Populate providers
-        providerChoice.setItems(FXCollections.observableArrayList("Ollama", "OpenRouter", "Groq"));
-        providerChoice.getSelectionModel().selectedItemProperty().addListener((obs, oldVal, newVal) -> updateModelsList(newVal));
+        providerChoice.setItems(FXCollections.observableArrayList("Ollama", "OpenRouter", "Groq", "Auto"));
+        providerChoice.getSelectionModel().selectedItemProperty().addListener((obs, oldVal, newVal) -> {
+            updateModelsList(newVal);
+            boolean openRouter = "OpenRouter".equalsIgnoreCase(newVal);
+            speedProfileCard.setVisible(openRouter);
+            speedProfileCard.setManaged(openRouter);
+            showSpeedProfile(modelsList.getSelectionModel().getSelectedItem());
+        });
+        hedgeProviderChoice.setItems(FXCollections.observableArrayList("Ollama", "OpenRouter", "Groq"));
+        ollamaProfileChoice.setItems(FXCollections.observableArrayList(OllamaTuning.PROFILES));
+        speedSortChoice.setItems(FXCollections.observableArrayList(OpenRouterRouting.PROFILES));
 
         // Bind visibility of API key fields
         bindApiKeyVisibility(openRouterKeyField, openRouterKeyText, openRouterToggle);
@@ -82,11 +157,28 @@ public class SettingsController {
         // Set up theme toggle icons
         themeToggle.selectedProperty().addListener((obs, oldVal, newVal) -> updateThemeToggleIcon(newVal));
         
+        modelsList.setCellFactory(list -> new ListCell<>() {
+            @Override
+            protected void updateItem(String model, boolean empty) {
+                super.updateItem(model, empty);
+                if (empty || model == null) {
+                    setText(null);
+                    return;
+                }
+                ModelInfo info = providerChoice.getValue() == null ? null
+                        : AppContext.getInstance().getModelCatalogService().find(providerChoice.getValue(), model);
+                String details = info != null ? info.describe() : "";
+                setText(details.isEmpty() ? model : model + "  ·  " + details);
+            }
+        });
+
         // Update current model label when selection changes
         modelsList.getSelectionModel().selectedItemProperty().addListener((obs, oldVal, newVal) -> {
             if (newVal != null) {
                 currentModelLabel.setText(newVal);
             }
+            storeSpeedProfile();
+            showSpeedProfile(newVal);
         });
         
         // Initialize sidebar navigation
@@ -143,6 +235,7 @@ public class SettingsController {
 
         providerChoice.setValue(prefs.getProvider());
         ollamaHost.setText(prefs.getOllamaHost());
+        ollamaHostsField.setText(String.join(", ", prefs.getOllamaHosts()));
         
         // Load keys safely
         String orKey = prefs.getProviderKeys().getOrDefault("openrouter", "");
@@ -152,6 +245,31 @@ public class SettingsController {
         String gKey = prefs.getProviderKeys().getOrDefault("groq", "");
         groqKeyField.setText(gKey);
         groqKeyText.setText(gKey);
+
+        responseCacheCheck.setSelected(prefs.isResponseCacheEnabled());
+        hedgingCheck.setSelected(prefs.isHedgingEnabled());
+        hedgeProviderChoice.setValue(prefs.getHedgeProvider());
+        hedgeModelField.setText(prefs.getHedgeModel());
+        hedgeDelayField.setText(String.valueOf(prefs.getHedgeDelayMs()));
+        ollamaPreloadCheck.setSelected(prefs.isOllamaPreloadEnabled());
+        ollamaContextReuseCheck.setSelected(prefs.isOllamaContextReuse());
+        ollamaKeepAliveField.setText(prefs.getOllamaKeepAlive());
+        ollamaProfileChoice.setValue(prefs.getOllamaProfile());
+        showCalibration(calibrationModel());
+        contextBudgetField.setText(String.valueOf(prefs.getContextBudgetTokens()));
+        contextReserveField.setText(String.valueOf(prefs.getContextResponseReserveTokens()));
+        summaryCheck.setSelected(prefs.isSummaryEnabled());
+        summaryThresholdField.setText(String.valueOf(prefs.getSummaryThresholdTokens()));
+        tokenizerDownloadCheck.setSelected(prefs.isTokenizerDownloadEnabled());
+        autoRouteCloudCheck.setSelected(prefs.isAutoRouteAllowCloud());
+        autoRouteMaxTtftField.setText(String.valueOf(prefs.getAutoRouteMaxTtftMs()));
+        autoRouteMaxErrorField.setText(String.valueOf(prefs.getAutoRouteMaxErrorRate()));
+        streamFirstTokenTimeoutField.setText(String.valueOf(prefs.getStreamFirstTokenTimeoutMs()));
+        streamIdleTimeoutField.setText(String.valueOf(prefs.getStreamIdleTimeoutMs()));
+        streamRetriesField.setText(String.valueOf(prefs.getStreamMaxRetries()));
+        circuitBreakerCheck.setSelected(prefs.isCircuitBreakerEnabled());
+        circuitBreakerFallbackCheck.setSelected(prefs.isCircuitBreakerFallback());
+        circuitBreakerSlowCallField.setText(String.valueOf(prefs.getCircuitBreakerSlowCallMs()));
         
         // Initial population of models list
         updateModelsList(prefs.getProvider());
@@ -164,17 +282,21 @@ public class SettingsController {
             }
         }
         
-        // Auto-fetch models for Ollama if selected, to ensure we show what's installed
-        if ("Ollama".equalsIgnoreCase(prefs.getProvider())) {
-            fetchModels(true);
-        }
+        // The list comes from the catalog cache right away; the catalog refreshes
+        // stale lists in the background and the list follows.
+        showSpeedProfile(modelsList.getSelectionModel().getSelectedItem());
+
+        AppContext.getInstance().getModelCatalogService().refreshStale().thenRun(() -> Platform.runLater(() -> {
+            if (providerChoice.getValue() != null) {
+                showCatalog(providerChoice.getValue());
+            }
+        }));
     }
 
     private void updateModelsList(String provider) {
         if (provider == null || prefs == null) return;
         
-        String key = provider.toLowerCase();
-        List<String> models = prefs.getCustomModels().getOrDefault(key, new ArrayList<>());
+        List<String> models = AppContext.getInstance().getModelCatalogService().listModels(provider);
         modelsList.setItems(FXCollections.observableArrayList(models));
     }
 
@@ -241,6 +363,131 @@ public class SettingsController {
         }
     }
     
+    @FXML
+    private void onClearResponseCache() {
+        CompletableFuture.runAsync(() -> AppContext.getInstance().getAiServiceManager().getResponseCache().clear(),
+                AppContext.getInstance().getExecutors().io());
+    }
+
+    @FXML
+    private void onCalibrateOllama() {
+        String model = calibrationModel();
+        if (model == null) {
+            calibrationLabel.setText("Add or select an Ollama model first.");
+            return;
+        }
+        calibrationLabel.setText("Calibrating " + model + "...");
+        AppContext.getInstance().getAiServiceManager().calibrateOllama(model).whenComplete((results, ex) -> Platform.runLater(() -> {
+            if (ex != null) {
+                calibrationLabel.setText("Calibration failed: " + ex.getMessage());
+                return;
+            }
+            results.forEach((profile, tps) -> prefs.getOllamaCalibration().put(model + "|" + profile, tps));
+            PreferencesManager.savePreferences(prefs);
+            showCalibration(model);
+        }));
+    }
+
+    /**
+     * The selected model when Ollama is the provider being edited, otherwise the first Ollama model.
+     */
+    private String calibrationModel() {
+        if ("ollama".equalsIgnoreCase(providerChoice.getValue())) {
+            String selected = modelsList.getSelectionModel().getSelectedItem();
+            if (selected != null) {
+                return selected;
+            }
+            if ("ollama".equalsIgnoreCase(prefs.getProvider()) && prefs.getModel() != null && !prefs.getModel().isBlank()) {
+                return prefs.getModel();
+            }
+        }
+        List<String> models = AppContext.getInstance().getModelCatalogService().listModels("ollama");
+        return models.isEmpty() ? null : models.get(0);
+    }
+
+    private void showCalibration(String model) {
+        if (model == null) {
+            calibrationLabel.setText("");
+            return;
+        }
+        StringBuilder text = new StringBuilder();
+        for (String profile : OllamaTuning.PROFILES) {
+            Double tps = prefs.getOllamaCalibration().get(model + "|" + profile);
+            if (tps != null) {
+                text.append(text.length() == 0 ? model + ": " : ", ").append(String.format("%s %.1f tok/s", profile, tps));
+            }
+        }
+        calibrationLabel.setText(text.toString());
+    }
+
+    /**
+     * Shows the speed profile and measured upstream speeds of an OpenRouter model.
+     */
+    private void showSpeedProfile(String model) {
+        speedProfileModel = "OpenRouter".equalsIgnoreCase(providerChoice.getValue()) ? model : null;
+        boolean editable = speedProfileModel != null;
+        for (Control control : List.of(speedSortChoice, onlyProvidersField, ignoredProvidersField, fallbackModelsField, allowFallbacksCheck)) {
+            control.setDisable(!editable);
+        }
+        if (!editable) {
+            speedProfileLabel.setText("Speed Profile");
+            speedStatsLabel.setText("Select a model to edit its speed profile.");
+            return;
+        }
+        OpenRouterRouting routing = AppContext.getInstance().getAiServiceManager().getOpenRouterRouting();
+        SpeedProfile profile = routing.profileFor(model);
+        speedProfileLabel.setText("Speed Profile: " + model);
+        speedSortChoice.setValue(profile.getSort());
+        onlyProvidersField.setText(String.join(", ", profile.getOnlyProviders()));
+        ignoredProvidersField.setText(String.join(", ", profile.getIgnoredProviders()));
+        fallbackModelsField.setText(String.join(", ", profile.getFallbackModels()));
+        allowFallbacksCheck.setSelected(profile.isAllowFallbacks());
+
+        List<UpstreamStats> measured = routing.statsFor(model);
+        if (measured.isEmpty()) {
+            speedStatsLabel.setText("No answers measured yet.");
+            return;
+        }
+        StringBuilder text = new StringBuilder();
+        for (UpstreamStats entry : measured) {
+            text.append(text.length() == 0 ? "" : "\n").append(entry.describe());
+        }
+        String learned = routing.learnedProvider(model);
+        if (learned != null) {
+            text.append("\nAuto prefers ").append(learned);
+        }
+        speedStatsLabel.setText(text.toString());
+    }
+
+    private void storeSpeedProfile() {
+        if (speedProfileModel == null) {
+            return;
+        }
+        SpeedProfile profile = new SpeedProfile();
+        profile.setSort(speedSortChoice.getValue() != null ? speedSortChoice.getValue() : OpenRouterRouting.DEFAULT);
+        profile.setOnlyProviders(splitList(onlyProvidersField.getText()));
+        profile.setIgnoredProviders(splitList(ignoredProvidersField.getText()));
+        profile.setFallbackModels(splitList(fallbackModelsField.getText()));
+        profile.setAllowFallbacks(allowFallbacksCheck.isSelected());
+        boolean defaults = OpenRouterRouting.DEFAULT.equals(profile.getSort()) && profile.getOnlyProviders().isEmpty()
+                && profile.getIgnoredProviders().isEmpty() && profile.getFallbackModels().isEmpty() && profile.isAllowFallbacks();
+        if (defaults) {
+            prefs.getOpenRouterSpeedProfiles().remove(speedProfileModel);
+        } else {
+            prefs.getOpenRouterSpeedProfiles().put(speedProfileModel, profile);
+        }
+    }
+
+    private static List<String> splitList(String text) {
+        List<String> values = new ArrayList<>();
+        for (String value : text == null ? new String[0] : text.split(",")) {
+            if (!value.isBlank()) {
+                values.add(value.trim());
+            }
+        }
+        return values;
+    }
+
     @FXML
     private void onFetchModels() {
         fetchModels(false);
@@ -248,99 +495,51 @@ public class SettingsController {
     
     private void fetchModels(boolean silent) {
         String provider = providerChoice.getValue();
-        if (provider == null) return;
-        
-        CompletableFuture.runAsync(() -> {
-            try {
-                List<String> fetchedModels = new ArrayList<>();
-                String url = "";
-                String authHeader = null;
-                
-                switch (provider.toLowerCase()) {
-                    case "ollama":
-                        url = (ollamaHost.getText().endsWith("/") ? ollamaHost.getText() : ollamaHost.getText() + "/") + "api/tags";
-                        break;
-                    case "openrouter":
-                        url = "https://openrouter.ai/api/v1/models";
-                        break;
-                    case "groq":
-                        url = "https://api.groq.com/openai/v1/models";
-                        authHeader = "Bearer " + groqKeyField.getText();
-                        break;
-                }
-                
-                if (url.isEmpty()) return;
-                
-                HttpRequest.Builder builder = HttpRequest.newBuilder().uri(URI.create(url));
-                if (authHeader != null) {
-                    builder.header("Authorization", authHeader);
-                }
-                
-                HttpResponse<String> response = httpClient.send(builder.build(), HttpResponse.BodyHandlers.ofString());
-                
-                if (response.statusCode() == 200) {
-                    JsonNode jsonRoot = objectMapper.readTree(response.body());
-                    if (provider.equalsIgnoreCase("ollama")) {
-                        if (jsonRoot.has("models")) {
-                            jsonRoot.get("models").forEach(node -> fetchedModels.add(node.get("name").asText()));
-                        }
-                    } else {
-                        // OpenRouter and Groq follow OpenAI format
-                        if (jsonRoot.has("data")) {
-                            jsonRoot.get("data").forEach(node -> fetchedModels.add(node.get("id").asText()));
-                        }
-                    }
-                    
-                    Platform.runLater(() -> {
-                        if (!fetchedModels.isEmpty()) {
-                            String pKey = provider.toLowerCase();
-                            List<String> currentModels = prefs.getCustomModels().computeIfAbsent(pKey, k -> new ArrayList<>());
-                            
-                            // For Ollama, we want to REPLACE the list to ensure it matches installed models exactly
-                            if (pKey.equals("ollama")) {
-                                currentModels.clear();
-                                currentModels.addAll(fetchedModels);
-                            } else {
-                                // For others, merge
-                                for (String m : fetchedModels) {
-                                    if (!currentModels.contains(m)) {
-                                        currentModels.add(m);
-                                    }
-                                }
-                            }
-                            
-                            updateModelsList(provider);
-                            if (!silent) {
-                                Alert alert = new Alert(Alert.AlertType.INFORMATION, "Successfully fetched " + fetchedModels.size() + " models.");
-                                alert.initOwner(root.getScene().getWindow());
-                                alert.show();
-                            }
-                        }
-                    });
-                } else {
-                    if (!silent) {
-                        Platform.runLater(() -> {
-                            Alert alert = new Alert(Alert.AlertType.ERROR, "Failed to fetch models. Status: " + response.statusCode());
+        if (provider == null || "auto".equalsIgnoreCase(provider)) return;
+
+        String apiKey = "groq".equalsIgnoreCase(provider) ? groqKeyField.getText() : null;
+        List<String> hosts = new ArrayList<>();
+        hosts.add(ollamaHost.getText());
+        hosts.addAll(splitList(ollamaHostsField.getText()));
+        AppContext.getInstance().getModelCatalogService().refresh(provider, hosts, apiKey)
+                .whenComplete((catalog, ex) -> Platform.runLater(() -> {
+                    if (ex != null) {
+                        if (!silent) {
+                            Alert alert = new Alert(Alert.AlertType.ERROR, "Error fetching models: " + FutureUtils.unwrap(ex).getMessage());
                             alert.initOwner(root.getScene().getWindow());
                             alert.show();
-                        });
+                        }
+                        return;
                     }
-                }
-                
-            } catch (Exception e) {
-                if (!silent) {
-                    Platform.runLater(() -> {
-                        Alert alert = new Alert(Alert.AlertType.ERROR, "Error fetching models: " + e.getMessage());
+                    int fetched = showCatalog(provider);
+                    if (!silent && fetched > 0) {
+                        Alert alert = new Alert(Alert.AlertType.INFORMATION, "Successfully fetched " + fetched + " models.");
                         alert.initOwner(root.getScene().getWindow());
                         alert.show();
-                    });
-                }
+                    }
+                }));
+    }
+
+    /**
+     * Shows the user's models of {@code provider} together with its cached
+     * catalog, keeping the selection, and returns the number of catalog entries.
+     */
+    private int showCatalog(String provider) {
+        int size = AppContext.getInstance().getModelCatalogService().getModels(provider).size();
+        if (provider.equalsIgnoreCase(providerChoice.getValue())) {
+            String selected = modelsList.getSelectionModel().getSelectedItem();
+            updateModelsList(provider);
+            if (selected != null && modelsList.getItems().contains(selected)) {
+                modelsList.getSelectionModel().select(selected);
             }
-        });
+        }
+        return size;
     }
 
     @FXML
     private void onSave() {
+        String previousTarget = warmUpFingerprint();
+        storeSpeedProfile();
         prefs.setTheme(themeToggle.isSelected() ? "dark" : "light");
         prefs.setFontSize(fontSizeSpinner.getValue());
         prefs.setFontFamily(fontFamilyCombo.getValue());
@@ -353,6 +552,7 @@ public class SettingsController {
         }
 
         prefs.setOllamaHost(ollamaHost.getText());
+        prefs.setOllamaHosts(splitList(ollamaHostsField.getText()));
         
         // Get key from the field, ensuring we get the latest value
         String orKey = openRouterKeyField.getText();
@@ -361,10 +561,65 @@ public class SettingsController {
         prefs.getProviderKeys().put("openrouter", orKey);
         prefs.getProviderKeys().put("groq", gKey);
 
+        prefs.setResponseCacheEnabled(responseCacheCheck.isSelected());
+        prefs.setHedgingEnabled(hedgingCheck.isSelected());
+        prefs.setHedgeProvider(hedgeProviderChoice.getValue() != null ? hedgeProviderChoice.getValue() : "");
+        prefs.setHedgeModel(hedgeModelField.getText() != null ? hedgeModelField.getText().trim() : "");
+        prefs.setHedgeDelayMs(parseLong(hedgeDelayField.getText(), 0));
+        prefs.setAutoRouteAllowCloud(autoRouteCloudCheck.isSelected());
+        prefs.setAutoRouteMaxTtftMs(parseLong(autoRouteMaxTtftField.getText(), 0));
+        prefs.setAutoRouteMaxErrorRate(parseRate(autoRouteMaxErrorField.getText(), 0.5));
+        prefs.setStreamFirstTokenTimeoutMs(parseLong(streamFirstTokenTimeoutField.getText(), 120_000));
+        prefs.setStreamIdleTimeoutMs(parseLong(streamIdleTimeoutField.getText(), 30_000));
+        prefs.setStreamMaxRetries((int) Math.min(10, parseLong(streamRetriesField.getText(), 2)));
+        prefs.setCircuitBreakerEnabled(circuitBreakerCheck.isSelected());
+        prefs.setCircuitBreakerFallback(circuitBreakerFallbackCheck.isSelected());
+        prefs.setCircuitBreakerSlowCallMs(parseLong(circuitBreakerSlowCallField.getText(), 30_000));
+        prefs.setOllamaPreloadEnabled(ollamaPreloadCheck.isSelected());
+        prefs.setOllamaContextReuse(ollamaContextReuseCheck.isSelected());
+        prefs.setOllamaKeepAlive(ollamaKeepAliveField.getText() != null ? ollamaKeepAliveField.getText().trim() : "");
+        prefs.setContextBudgetTokens((int) Math.min(Integer.MAX_VALUE, parseLong(contextBudgetField.getText(), 0)));
+        prefs.setContextResponseReserveTokens((int) Math.min(Integer.MAX_VALUE, parseLong(contextReserveField.getText(), 1024)));
+        prefs.setSummaryEnabled(summaryCheck.isSelected());
+        prefs.setSummaryThresholdTokens((int) Math.min(Integer.MAX_VALUE, parseLong(summaryThresholdField.getText(), 1500)));
+        prefs.setTokenizerDownloadEnabled(tokenizerDownloadCheck.isSelected());
+        if (ollamaProfileChoice.getValue() != null) {
+            prefs.setOllamaProfile(ollamaProfileChoice.getValue());
+        }
+
         PreferencesManager.savePreferences(prefs);
+        if (!previousTarget.equals(warmUpFingerprint())) {
+            AppContext.getInstance().getAiServiceManager().warmUp();
+        }
         closeWindow();
     }
 
+    /**
+     * Everything that decides which provider endpoint and model the next message
+     * goes to; a change means the new target should be pre-connected and preloaded.
+     */
+    private String warmUpFingerprint() {
+        return String.join("|", String.valueOf(prefs.getProvider()), String.valueOf(prefs.getModel()),
+                String.valueOf(prefs.getOllamaHost()), String.valueOf(prefs.getOllamaKeepAlive()), String.valueOf(prefs.getOllamaProfile()),
+                String.valueOf(prefs.isOllamaPreloadEnabled()), String.valueOf(prefs.getProviderKeys()));
+    }
+
+    private static long parseLong(String text, long fallback) {
+        try {
+            return Math.max(0, Long.parseLong(text.trim()));
+        } catch (Exception e) {
+            return fallback;
+        }
+    }
+
+    private static double parseRate(String text, double fallback) {
+        try {
+            return Math.min(1.0, Math.max(0.0, Double.parseDouble(text.trim())));
+        } catch (Exception e) {
+            return fallback;
+        }
+    }
+
     @FXML
     private void onCancel() {
         closeWindow();
@@ -0,0 +1,201 @@
+package com.lj.aichatapp.infrastructure.concurrent;
+
+import com.lj.aichatapp.utils.Logger;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The application's thread pools, so that no blocking work lands on the
+ * ForkJoin common pool:
+ * <ul>
+ *     <li>{@link #network()} runs the shared HttpClient's callbacks, including SSE decoding,</li>
+ *     <li>{@link #stream()} runs blocking reads of response bodies, on virtual threads
+ *     when the JDK has them (disable with {@code -Daichatapp.virtualThreads=false}),</li>
+ *     <li>{@link #io()} runs database and file access,</li>
+ *     <li>{@link #cpu()} runs tokenizing and other formatting work.</li>
+ * </ul>
+ * Every pool is bounded in threads and queue length and reports its queue depth
+ * and active task count.
+ */
+public class AppExecutors {
+
+    public static final String NETWORK = "network";
+    public static final String STREAM = "stream";
+    public static final String IO = "io";
+    public static final String CPU = "cpu";
+
+    private static final long SHUTDOWN_TIMEOUT_MS = 2000;
+    private static final int MAX_STREAMS = 64;
+
+    private static AppExecutors instance;
+
+    private final Map<String, Pool> pools = new LinkedHashMap<>();
+    private final boolean virtualStreams;
+
+    private AppExecutors() {
+        int cores = Runtime.getRuntime().availableProcessors();
+        pools.put(NETWORK, new Pool(NETWORK, platformPool("ai-http", 8, 1024)));
+
+        ExecutorService virtual = Boolean.parseBoolean(System.getProperty("aichatapp.virtualThreads", "true"))
+                ? virtualThreadPool("ai-stream-") : null;
+        this.virtualStreams = virtual != null;
+        pools.put(STREAM, new Pool(STREAM, virtual != null ? virtual : platformPool("ai-stream", 16, 256), MAX_STREAMS));
+
+        pools.put(IO, new Pool(IO, platformPool("app-io", 2, 1024)));
+        pools.put(CPU, new Pool(CPU, platformPool("app-cpu", Math.max(1, cores - 1), 256)));
+        Logger.info("Stream reads run on " + (virtualStreams ? "virtual threads" : "platform threads"));
+    }
+
+    public static synchronized AppExecutors getInstance() {
+        if (instance == null) {
+            instance = new AppExecutors();
+        }
+        return instance;
+    }
+
+    public Executor network() {
+        return pools.get(NETWORK);
+    }
+
+    public Executor stream() {
+        return pools.get(STREAM);
+    }
+
+    public Executor io() {
+        return pools.get(IO);
+    }
+
+    public Executor cpu() {
+        return pools.get(CPU);
+    }
+
+    public boolean isVirtualStreams() {
+        return virtualStreams;
+    }
+
+    public int getQueueDepth(String pool) {
+        return pools.get(pool).queued.get();
+    }
+
+    public int getActiveCount(String pool) {
+        return pools.get(pool).active.get();
+    }
+
+    /**
+     * Stops accepting work, gives running tasks a moment to finish and then
+     * interrupts whatever is left.
+     */
+    public void shutdown() {
+        for (Pool pool : pools.values()) {
+            pool.delegate.shutdown();
+        }
+        long deadline = System.currentTimeMillis() + SHUTDOWN_TIMEOUT_MS;
+        for (Pool pool : pools.values()) {
+            try {
+                long remaining = Math.max(0, deadline - System.currentTimeMillis());
+                if (!pool.delegate.awaitTermination(remaining, TimeUnit.MILLISECONDS)) {
+                    pool.delegate.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                pool.delegate.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static ExecutorService platformPool(String name, int threads, int queueCapacity) {
+        AtomicInteger counter = new AtomicInteger();
+        ThreadFactory threadFactory = r -> {
+            Thread t = new Thread(r, name + "-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), threadFactory);
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    /**
+     * Virtual thread per task executor, looked up reflectively because the app
+     * still targets Java 11. Returns {@code null} when the running JDK has no
+     * (or only preview) virtual threads.
+     */
+    private static ExecutorService virtualThreadPool(String prefix) {
+        try {
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, prefix, 0L);
+            ThreadFactory factory = (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+            return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class).invoke(null, factory);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Counts queued and running tasks of a pool, and optionally caps how many
+     * run at once for executors that have no bound of their own.
+     */
+    private static final class Pool implements Executor {
+        private final String name;
+        private final ExecutorService delegate;
+        private final Semaphore permits;
+        private final AtomicInteger queued = new AtomicInteger();
+        private final AtomicInteger active = new AtomicInteger();
+
+        private Pool(String name, ExecutorService delegate) {
+            this(name, delegate, 0);
+        }
+
+        private Pool(String name, ExecutorService delegate, int maxConcurrent) {
+            this.name = name;
+            this.delegate = delegate;
+            this.permits = maxConcurrent > 0 && !(delegate instanceof ThreadPoolExecutor) ? new Semaphore(maxConcurrent) : null;
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            queued.incrementAndGet();
+            try {
+                delegate.execute(() -> run(task));
+            } catch (RejectedExecutionException e) {
+                queued.decrementAndGet();
+                throw new RejectedExecutionException("The " + name + " pool is saturated or shut down", e);
+            }
+        }
+
+        private void run(Runnable task) {
+            try {
+                if (permits != null) {
+                    permits.acquire();
+                }
+            } catch (InterruptedException e) {
+                queued.decrementAndGet();
+                Thread.currentThread().interrupt();
+                return;
+            }
+            queued.decrementAndGet();
+            active.incrementAndGet();
+            try {
+                task.run();
+            } finally {
+                active.decrementAndGet();
+                if (permits != null) {
+                    permits.release();
+                }
+            }
+        }
+    }
+}
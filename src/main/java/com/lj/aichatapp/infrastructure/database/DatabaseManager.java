@@ -49,13 +49,35 @@ public class DatabaseManager {
                         "role TEXT, " +
                         "content TEXT, " +
                         "timestamp TEXT, " +
+                        "pinned INTEGER DEFAULT 0, " +
                         "FOREIGN KEY(conversation_id) REFERENCES conversations(id) ON DELETE CASCADE)");
 
+                ensureColumn(conn, "messages", "pinned", "INTEGER DEFAULT 0");
+
                 stmt.execute("CREATE TABLE IF NOT EXISTS prompts (" +
                         "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
                         "title TEXT, " +
                         "text TEXT)");
 
+                stmt.execute("CREATE TABLE IF NOT EXISTS response_cache (" +
+                        "cache_key TEXT PRIMARY KEY, " +
+                        "provider TEXT, " +
+                        "model TEXT, " +
+                        "response TEXT, " +
+                        "created_at INTEGER, " +
+                        "last_access INTEGER, " +
+                        "hits INTEGER DEFAULT 0)");
+
+                stmt.execute("CREATE INDEX IF NOT EXISTS idx_response_cache_last_access ON response_cache(last_access)");
+
+                stmt.execute("CREATE TABLE IF NOT EXISTS conversation_summaries (" +
+                        "conversation_id INTEGER PRIMARY KEY, " +
+                        "summary TEXT, " +
+                        "covered_message_id INTEGER, " +
+                        "covered_count INTEGER, " +
+                        "updated_at INTEGER, " +
+                        "FOREIGN KEY(conversation_id) REFERENCES conversations(id) ON DELETE CASCADE)");
+
                 seedInitialPrompts(conn);
                 conn.commit();
             } catch (SQLException e) {
@@ -69,6 +91,23 @@ public class DatabaseManager {
         }
     }
 
+    /**
+     * Adds a column to a table created by an older version of the app.
+     */
+    private void ensureColumn(Connection conn, String table, String column, String definition) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA table_info(" + table + ")")) {
+            while (rs.next()) {
+                if (column.equalsIgnoreCase(rs.getString("name"))) {
+                    return;
+                }
+            }
+        }
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("ALTER TABLE " + table + " ADD COLUMN " + column + " " + definition);
+        }
+    }
+
     private void seedInitialPrompts(Connection conn) throws SQLException {
         String sqlCheck = "SELECT COUNT(*) FROM prompts";
         try (Statement checkStmt = conn.createStatement();
@@ -0,0 +1,80 @@
+package com.lj.aichatapp.infrastructure.http;
+
+import com.lj.aichatapp.infrastructure.concurrent.AppExecutors;
+import com.lj.aichatapp.utils.Logger;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Owns the single {@link HttpClient} shared by every AI provider so that
+ * connections, TLS sessions and DNS lookups survive across chat turns.
+ */
+public class HttpClientManager {
+
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(10);
+    private static final Duration PRECONNECT_TIMEOUT = Duration.ofSeconds(5);
+
+    private static HttpClientManager instance;
+
+    private final HttpClient client;
+
+    private HttpClientManager() {
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(CONNECT_TIMEOUT)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .executor(AppExecutors.getInstance().network())
+                .build();
+    }
+
+    public static synchronized HttpClientManager getInstance() {
+        if (instance == null) {
+            instance = new HttpClientManager();
+        }
+        return instance;
+    }
+
+    public HttpClient getClient() {
+        return client;
+    }
+
+    /**
+     * Opens a connection to the origin of the given URL in the background so the
+     * first real request finds a pooled, already-negotiated connection.
+     */
+    public CompletableFuture<Void> preconnect(String url) {
+        if (url == null || url.isBlank()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        try {
+            URI target = URI.create(url);
+            URI origin = new URI(target.getScheme(), null, target.getHost(), target.getPort(), "/", null, null);
+            HttpRequest.Builder builder = HttpRequest.newBuilder()
+                    .uri(origin)
+                    .timeout(PRECONNECT_TIMEOUT)
+                    .method("HEAD", HttpRequest.BodyPublishers.noBody());
+            if ("http".equalsIgnoreCase(origin.getScheme())) {
+                // Plain-text hosts (local Ollama) do not speak h2c; skip the upgrade round trip.
+                builder.version(HttpClient.Version.HTTP_1_1);
+            }
+
+            long start = System.nanoTime();
+            return client.sendAsync(builder.build(), HttpResponse.BodyHandlers.discarding())
+                    .thenAccept(resp -> Logger.info(String.format("Pre-connected to %s (%s) in %d ms",
+                            origin, resp.version(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start))))
+                    .exceptionally(ex -> {
+                        Logger.info("Pre-connect to " + origin + " failed: " + ex.getMessage());
+                        return null;
+                    });
+        } catch (Exception e) {
+            Logger.info("Pre-connect to " + url + " skipped: " + e.getMessage());
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.lj.aichatapp.models;
+
+public class CachedResponse {
+    private String cacheKey;
+    private String provider;
+    private String model;
+    private String response;
+    private long createdAt;
+    private long lastAccess;
+    private int hits;
+
+    public CachedResponse() {
+    }
+
+    public CachedResponse(String cacheKey, String provider, String model, String response, long createdAt) {
+        this.cacheKey = cacheKey;
+        this.provider = provider;
+        this.model = model;
+        this.response = response;
+        this.createdAt = createdAt;
+        this.lastAccess = createdAt;
+    }
+
+    public String getCacheKey() {
+        return cacheKey;
+    }
+
+    public void setCacheKey(String cacheKey) {
+        this.cacheKey = cacheKey;
+    }
+
+    public String getProvider() {
+        return provider;
+    }
+
+    public void setProvider(String provider) {
+        this.provider = provider;
+    }
+
+    public String getModel() {
+        return model;
+    }
+
+    public void setModel(String model) {
+        this.model = model;
+    }
+
+    public String getResponse() {
+        return response;
+    }
+
+    public void setResponse(String response) {
+        this.response = response;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(long createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public long getLastAccess() {
+        return lastAccess;
+    }
+
+    public void setLastAccess(long lastAccess) {
+        this.lastAccess = lastAccess;
+    }
+
+    public int getHits() {
+        return hits;
+    }
+
+    public void setHits(int hits) {
+        this.hits = hits;
+    }
+}
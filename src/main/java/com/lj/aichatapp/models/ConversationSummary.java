@@ -0,0 +1,64 @@
+package com.lj.aichatapp.models;
+
+/**
+ * Running summary of the older part of a conversation. Covers every message up
+ * to and including {@code coveredMessageId}.
+ */
+public class ConversationSummary {
+    private int conversationId;
+    private String summary;
+    private long coveredMessageId;
+    private int coveredCount;
+    private long updatedAt;
+
+    public ConversationSummary() {
+    }
+
+    public ConversationSummary(int conversationId, String summary, long coveredMessageId, int coveredCount, long updatedAt) {
+        this.conversationId = conversationId;
+        this.summary = summary;
+        this.coveredMessageId = coveredMessageId;
+        this.coveredCount = coveredCount;
+        this.updatedAt = updatedAt;
+    }
+
+    public int getConversationId() {
+        return conversationId;
+    }
+
+    public void setConversationId(int conversationId) {
+        this.conversationId = conversationId;
+    }
+
+    public String getSummary() {
+        return summary;
+    }
+
+    public void setSummary(String summary) {
+        this.summary = summary;
+    }
+
+    public long getCoveredMessageId() {
+        return coveredMessageId;
+    }
+
+    public void setCoveredMessageId(long coveredMessageId) {
+        this.coveredMessageId = coveredMessageId;
+    }
+
+    public int getCoveredCount() {
+        return coveredCount;
+    }
+
+    public void setCoveredCount(int coveredCount) {
+        this.coveredCount = coveredCount;
+    }
+
+    public long getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(long updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+}
@@ -12,6 +12,7 @@ public class Message {
     private MessageRole role;
     private String content;
     private Instant timestamp;
+    private boolean pinned;
 
     public Message() {
         // Jackson
@@ -56,4 +57,15 @@ public class Message {
     public void setTimestamp(Instant t) {
         this.timestamp = t;
     }
+
+    /**
+     * Pinned messages are always sent to the model, however long the conversation gets.
+     */
+    public boolean isPinned() {
+        return pinned;
+    }
+
+    public void setPinned(boolean pinned) {
+        this.pinned = pinned;
+    }
 }
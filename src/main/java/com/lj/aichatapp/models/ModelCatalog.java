@@ -0,0 +1,73 @@
+package com.lj.aichatapp.models;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cached model list of one provider, with the validators needed to refresh it
+ * conditionally.
+ */
+public class ModelCatalog {
+    private String provider;
+    private String source;
+    private String etag;
+    private String lastModified;
+    private long fetchedAt;
+    private List<ModelInfo> models = new ArrayList<>();
+
+    public ModelCatalog() {
+    }
+
+    public ModelCatalog(String provider, String source) {
+        this.provider = provider;
+        this.source = source;
+    }
+
+    public String getProvider() {
+        return provider;
+    }
+
+    public void setProvider(String provider) {
+        this.provider = provider;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public void setSource(String source) {
+        this.source = source;
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    public void setEtag(String etag) {
+        this.etag = etag;
+    }
+
+    public String getLastModified() {
+        return lastModified;
+    }
+
+    public void setLastModified(String lastModified) {
+        this.lastModified = lastModified;
+    }
+
+    public long getFetchedAt() {
+        return fetchedAt;
+    }
+
+    public void setFetchedAt(long fetchedAt) {
+        this.fetchedAt = fetchedAt;
+    }
+
+    public List<ModelInfo> getModels() {
+        return models;
+    }
+
+    public void setModels(List<ModelInfo> models) {
+        this.models = models;
+    }
+}
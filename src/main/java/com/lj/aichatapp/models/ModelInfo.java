@@ -0,0 +1,79 @@
+package com.lj.aichatapp.models;
+
+/**
+ * One entry of a provider's model list. Prices are in USD per million tokens;
+ * unknown values are 0 for the context length and -1 for prices.
+ */
+public class ModelInfo {
+    private String id;
+    private int contextLength;
+    private double promptPrice = -1;
+    private double completionPrice = -1;
+    private boolean free;
+
+    public ModelInfo() {
+    }
+
+    public ModelInfo(String id) {
+        this.id = id;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public int getContextLength() {
+        return contextLength;
+    }
+
+    public void setContextLength(int contextLength) {
+        this.contextLength = contextLength;
+    }
+
+    public double getPromptPrice() {
+        return promptPrice;
+    }
+
+    public void setPromptPrice(double promptPrice) {
+        this.promptPrice = promptPrice;
+    }
+
+    public double getCompletionPrice() {
+        return completionPrice;
+    }
+
+    public void setCompletionPrice(double completionPrice) {
+        this.completionPrice = completionPrice;
+    }
+
+    public boolean isFree() {
+        return free;
+    }
+
+    public void setFree(boolean free) {
+        this.free = free;
+    }
+
+    /**
+     * Short summary for model lists, e.g. {@code 128k ctx · $0.15/$0.60 per 1M}.
+     */
+    public String describe() {
+        StringBuilder sb = new StringBuilder();
+        if (contextLength > 0) {
+            sb.append(contextLength >= 1024 ? contextLength / 1024 + "k" : String.valueOf(contextLength)).append(" ctx");
+        }
+        String price = free ? "free"
+                : promptPrice >= 0 && completionPrice >= 0 ? String.format("$%.2f/$%.2f per 1M", promptPrice, completionPrice) : null;
+        if (price != null) {
+            if (sb.length() > 0) {
+                sb.append(" · ");
+            }
+            sb.append(price);
+        }
+        return sb.toString();
+    }
+}
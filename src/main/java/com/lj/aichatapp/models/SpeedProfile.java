@@ -0,0 +1,66 @@
+package com.lj.aichatapp.models;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * How OpenRouter should pick the upstream provider for one model. Provider
+ * and model names are OpenRouter's, e.g. {@code Chutes} or
+ * {@code meta-llama/llama-3.3-70b-instruct:free}.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class SpeedProfile {
+    private String sort = "default";
+    private List<String> onlyProviders = new ArrayList<>();
+    private List<String> ignoredProviders = new ArrayList<>();
+    private boolean allowFallbacks = true;
+    private List<String> fallbackModels = new ArrayList<>();
+
+    public String getSort() {
+        return sort;
+    }
+
+    public void setSort(String sort) {
+        this.sort = sort;
+    }
+
+    public List<String> getOnlyProviders() {
+        return onlyProviders;
+    }
+
+    public void setOnlyProviders(List<String> onlyProviders) {
+        this.onlyProviders = onlyProviders;
+    }
+
+    public List<String> getIgnoredProviders() {
+        return ignoredProviders;
+    }
+
+    public void setIgnoredProviders(List<String> ignoredProviders) {
+        this.ignoredProviders = ignoredProviders;
+    }
+
+    /**
+     * Whether OpenRouter may use other upstreams when the preferred ones fail.
+     */
+    public boolean isAllowFallbacks() {
+        return allowFallbacks;
+    }
+
+    public void setAllowFallbacks(boolean allowFallbacks) {
+        this.allowFallbacks = allowFallbacks;
+    }
+
+    /**
+     * Models to try, in order, when the model itself is unavailable.
+     */
+    public List<String> getFallbackModels() {
+        return fallbackModels;
+    }
+
+    public void setFallbackModels(List<String> fallbackModels) {
+        this.fallbackModels = fallbackModels;
+    }
+}
@@ -0,0 +1,77 @@
+package com.lj.aichatapp.models;
+
+/**
+ * Measured speed of one model on one OpenRouter upstream provider. Rates are
+ * exponentially weighted so the latest responses count most.
+ */
+public class UpstreamStats {
+    private String model;
+    private String provider;
+    private int samples;
+    private double tokensPerSecond;
+    private double firstTokenMs;
+    private long lastUsed;
+
+    public UpstreamStats() {
+    }
+
+    public UpstreamStats(String model, String provider) {
+        this.model = model;
+        this.provider = provider;
+    }
+
+    public String getModel() {
+        return model;
+    }
+
+    public void setModel(String model) {
+        this.model = model;
+    }
+
+    public String getProvider() {
+        return provider;
+    }
+
+    public void setProvider(String provider) {
+        this.provider = provider;
+    }
+
+    public int getSamples() {
+        return samples;
+    }
+
+    public void setSamples(int samples) {
+        this.samples = samples;
+    }
+
+    public double getTokensPerSecond() {
+        return tokensPerSecond;
+    }
+
+    public void setTokensPerSecond(double tokensPerSecond) {
+        this.tokensPerSecond = tokensPerSecond;
+    }
+
+    public double getFirstTokenMs() {
+        return firstTokenMs;
+    }
+
+    public void setFirstTokenMs(double firstTokenMs) {
+        this.firstTokenMs = firstTokenMs;
+    }
+
+    public long getLastUsed() {
+        return lastUsed;
+    }
+
+    public void setLastUsed(long lastUsed) {
+        this.lastUsed = lastUsed;
+    }
+
+    /**
+     * Short summary for settings, e.g. {@code Chutes 84.2 tok/s, first token 900 ms (12 answers)}.
+     */
+    public String describe() {
+        return String.format("%s %.1f tok/s, first token %.0f ms (%d answers)", provider, tokensPerSecond, firstTokenMs, samples);
+    }
+}
@@ -15,8 +15,39 @@ public class UserPreferences {
     private String provider = "Ollama";
     private String model = "default";
     private String ollamaHost = "http://localhost:11434";
+    private List<String> ollamaHosts = new ArrayList<>();
     private Map<String, String> providerKeys = new HashMap<>();
+    private Map<String, String> providerBaseUrls = new HashMap<>();
     private Map<String, List<String>> customModels = new HashMap<>();
+    private Map<String, SpeedProfile> openRouterSpeedProfiles = new HashMap<>();
+    private boolean responseCacheEnabled = false;
+    private int responseCacheTtlHours = 24;
+    private int responseCacheMaxEntries = 500;
+    private boolean hedgingEnabled = false;
+    private String hedgeProvider = "";
+    private String hedgeModel = "";
+    private long hedgeDelayMs = 0;
+    private boolean autoRouteAllowCloud = true;
+    private long autoRouteMaxTtftMs = 0;
+    private double autoRouteMaxErrorRate = 0.5;
+    private List<String> autoRouteModels = new ArrayList<>();
+    private Map<String, Integer> providerConcurrency = new HashMap<>();
+    private String ollamaKeepAlive = "30m";
+    private boolean ollamaPreloadEnabled = true;
+    private String ollamaProfile = "auto";
+    private boolean ollamaContextReuse = false;
+    private Map<String, Double> ollamaCalibration = new HashMap<>();
+    private int contextBudgetTokens = 0;
+    private int contextResponseReserveTokens = 1024;
+    private boolean summaryEnabled = true;
+    private int summaryThresholdTokens = 1500;
+    private boolean tokenizerDownloadEnabled = false;
+    private long streamFirstTokenTimeoutMs = 120_000;
+    private long streamIdleTimeoutMs = 30_000;
+    private int streamMaxRetries = 2;
+    private boolean circuitBreakerEnabled = true;
+    private boolean circuitBreakerFallback = true;
+    private long circuitBreakerSlowCallMs = 30_000;
     
     // This prompt defines the core behavior of the AI. It is not user-editable.
     private final String systemPrompt = "You are an academic assistant named iTutor. Your sole purpose is to help users with their academic tasks, such as learning, research, generating study materials, and answering educational questions. Do not engage in casual conversation or any requests outside of this academic scope. If a user asks for something non-academic, politely decline and remind them of your purpose.";
@@ -92,6 +123,28 @@ public class UserPreferences {
         this.ollamaHost = ollamaHost;
     }
 
+    /**
+     * Further Ollama hosts to spread requests over, besides {@link #getOllamaHost()}.
+     */
+    public List<String> getOllamaHosts() {
+        return ollamaHosts;
+    }
+
+    public void setOllamaHosts(List<String> ollamaHosts) {
+        this.ollamaHosts = ollamaHosts;
+    }
+
+    /**
+     * OpenRouter routing per model id; models without an entry use the "auto" profile.
+     */
+    public Map<String, SpeedProfile> getOpenRouterSpeedProfiles() {
+        return openRouterSpeedProfiles;
+    }
+
+    public void setOpenRouterSpeedProfiles(Map<String, SpeedProfile> openRouterSpeedProfiles) {
+        this.openRouterSpeedProfiles = openRouterSpeedProfiles;
+    }
+
     public Map<String, String> getProviderKeys() {
         return providerKeys;
     }
@@ -100,6 +153,18 @@ public class UserPreferences {
         this.providerKeys = providerKeys;
     }
 
+    /**
+     * API base URLs (e.g. {@code http://localhost:8089/v1}) that replace the
+     * default endpoint of a cloud provider, keyed by lowercase provider name.
+     */
+    public Map<String, String> getProviderBaseUrls() {
+        return providerBaseUrls;
+    }
+
+    public void setProviderBaseUrls(Map<String, String> providerBaseUrls) {
+        this.providerBaseUrls = providerBaseUrls;
+    }
+
     public Map<String, List<String>> getCustomModels() {
         return customModels;
     }
@@ -108,6 +173,281 @@ public class UserPreferences {
         this.customModels = customModels;
     }
 
+    public boolean isResponseCacheEnabled() {
+        return responseCacheEnabled;
+    }
+
+    public void setResponseCacheEnabled(boolean responseCacheEnabled) {
+        this.responseCacheEnabled = responseCacheEnabled;
+    }
+
+    public int getResponseCacheTtlHours() {
+        return responseCacheTtlHours;
+    }
+
+    public void setResponseCacheTtlHours(int responseCacheTtlHours) {
+        this.responseCacheTtlHours = responseCacheTtlHours;
+    }
+
+    public int getResponseCacheMaxEntries() {
+        return responseCacheMaxEntries;
+    }
+
+    public void setResponseCacheMaxEntries(int responseCacheMaxEntries) {
+        this.responseCacheMaxEntries = responseCacheMaxEntries;
+    }
+
+    public boolean isHedgingEnabled() {
+        return hedgingEnabled;
+    }
+
+    public void setHedgingEnabled(boolean hedgingEnabled) {
+        this.hedgingEnabled = hedgingEnabled;
+    }
+
+    public String getHedgeProvider() {
+        return hedgeProvider;
+    }
+
+    public void setHedgeProvider(String hedgeProvider) {
+        this.hedgeProvider = hedgeProvider;
+    }
+
+    public String getHedgeModel() {
+        return hedgeModel;
+    }
+
+    public void setHedgeModel(String hedgeModel) {
+        this.hedgeModel = hedgeModel;
+    }
+
+    /**
+     * Delay before a hedge request is sent; 0 derives it from the observed p95
+     * time-to-first-token of the primary provider and model.
+     */
+    public long getHedgeDelayMs() {
+        return hedgeDelayMs;
+    }
+
+    public void setHedgeDelayMs(long hedgeDelayMs) {
+        this.hedgeDelayMs = hedgeDelayMs;
+    }
+
+    public boolean isAutoRouteAllowCloud() {
+        return autoRouteAllowCloud;
+    }
+
+    public void setAutoRouteAllowCloud(boolean autoRouteAllowCloud) {
+        this.autoRouteAllowCloud = autoRouteAllowCloud;
+    }
+
+    /**
+     * Upper bound on the learned time-to-first-token of an "Auto" candidate; 0 disables the limit.
+     */
+    public long getAutoRouteMaxTtftMs() {
+        return autoRouteMaxTtftMs;
+    }
+
+    public void setAutoRouteMaxTtftMs(long autoRouteMaxTtftMs) {
+        this.autoRouteMaxTtftMs = autoRouteMaxTtftMs;
+    }
+
+    public double getAutoRouteMaxErrorRate() {
+        return autoRouteMaxErrorRate;
+    }
+
+    public void setAutoRouteMaxErrorRate(double autoRouteMaxErrorRate) {
+        this.autoRouteMaxErrorRate = autoRouteMaxErrorRate;
+    }
+
+    /**
+     * Optional allow-list of "provider|model" entries the "Auto" provider may pick from.
+     * Empty means every configured model of every usable provider.
+     */
+    public List<String> getAutoRouteModels() {
+        return autoRouteModels;
+    }
+
+    public void setAutoRouteModels(List<String> autoRouteModels) {
+        this.autoRouteModels = autoRouteModels;
+    }
+
+    /**
+     * Maximum number of simultaneous requests per provider, keyed by provider id.
+     * Providers without an entry use the scheduler's defaults.
+     */
+    public Map<String, Integer> getProviderConcurrency() {
+        return providerConcurrency;
+    }
+
+    public void setProviderConcurrency(Map<String, Integer> providerConcurrency) {
+        this.providerConcurrency = providerConcurrency;
+    }
+
+    /**
+     * How long Ollama keeps the model in memory after a request, in Ollama's
+     * duration syntax ("30m", "1h") or seconds; "-1" keeps it loaded, "0" unloads at once.
+     */
+    public String getOllamaKeepAlive() {
+        return ollamaKeepAlive;
+    }
+
+    public void setOllamaKeepAlive(String ollamaKeepAlive) {
+        this.ollamaKeepAlive = ollamaKeepAlive;
+    }
+
+    /**
+     * Continue conversations from the context Ollama returns instead of resending the history.
+     */
+    public boolean isOllamaContextReuse() {
+        return ollamaContextReuse;
+    }
+
+    public void setOllamaContextReuse(boolean ollamaContextReuse) {
+        this.ollamaContextReuse = ollamaContextReuse;
+    }
+
+    public boolean isOllamaPreloadEnabled() {
+        return ollamaPreloadEnabled;
+    }
+
+    public void setOllamaPreloadEnabled(boolean ollamaPreloadEnabled) {
+        this.ollamaPreloadEnabled = ollamaPreloadEnabled;
+    }
+
+    /**
+     * Ollama tuning profile: "auto", "low-latency", "high-throughput" or "default".
+     */
+    public String getOllamaProfile() {
+        return ollamaProfile;
+    }
+
+    public void setOllamaProfile(String ollamaProfile) {
+        this.ollamaProfile = ollamaProfile;
+    }
+
+    /**
+     * Last calibration results in tokens per second, keyed by "model|profile".
+     */
+    public Map<String, Double> getOllamaCalibration() {
+        return ollamaCalibration;
+    }
+
+    public void setOllamaCalibration(Map<String, Double> ollamaCalibration) {
+        this.ollamaCalibration = ollamaCalibration;
+    }
+
+    /**
+     * Maximum prompt size in tokens; 0 uses the model's full context length.
+     */
+    public int getContextBudgetTokens() {
+        return contextBudgetTokens;
+    }
+
+    public void setContextBudgetTokens(int contextBudgetTokens) {
+        this.contextBudgetTokens = contextBudgetTokens;
+    }
+
+    public int getContextResponseReserveTokens() {
+        return contextResponseReserveTokens;
+    }
+
+    public void setContextResponseReserveTokens(int contextResponseReserveTokens) {
+        this.contextResponseReserveTokens = contextResponseReserveTokens;
+    }
+
+    public boolean isSummaryEnabled() {
+        return summaryEnabled;
+    }
+
+    public void setSummaryEnabled(boolean summaryEnabled) {
+        this.summaryEnabled = summaryEnabled;
+    }
+
+    /**
+     * Unsummarized older turns must add up to this many tokens before a new summary is written.
+     */
+    public int getSummaryThresholdTokens() {
+        return summaryThresholdTokens;
+    }
+
+    public void setSummaryThresholdTokens(int summaryThresholdTokens) {
+        this.summaryThresholdTokens = summaryThresholdTokens;
+    }
+
+    /**
+     * Whether the llama3 tokenizer vocabulary may be downloaded for exact token counts.
+     */
+    public boolean isTokenizerDownloadEnabled() {
+        return tokenizerDownloadEnabled;
+    }
+
+    public void setTokenizerDownloadEnabled(boolean tokenizerDownloadEnabled) {
+        this.tokenizerDownloadEnabled = tokenizerDownloadEnabled;
+    }
+
+    /**
+     * How long a request may wait for its first token; generous by default
+     * because Ollama may have to load the model first. 0 disables the check.
+     */
+    public long getStreamFirstTokenTimeoutMs() {
+        return streamFirstTokenTimeoutMs;
+    }
+
+    public void setStreamFirstTokenTimeoutMs(long streamFirstTokenTimeoutMs) {
+        this.streamFirstTokenTimeoutMs = streamFirstTokenTimeoutMs;
+    }
+
+    /**
+     * Longest gap allowed between two tokens of a streaming answer. 0 disables the check.
+     */
+    public long getStreamIdleTimeoutMs() {
+        return streamIdleTimeoutMs;
+    }
+
+    public void setStreamIdleTimeoutMs(long streamIdleTimeoutMs) {
+        this.streamIdleTimeoutMs = streamIdleTimeoutMs;
+    }
+
+    public int getStreamMaxRetries() {
+        return streamMaxRetries;
+    }
+
+    public void setStreamMaxRetries(int streamMaxRetries) {
+        this.streamMaxRetries = streamMaxRetries;
+    }
+
+    public boolean isCircuitBreakerEnabled() {
+        return circuitBreakerEnabled;
+    }
+
+    public void setCircuitBreakerEnabled(boolean circuitBreakerEnabled) {
+        this.circuitBreakerEnabled = circuitBreakerEnabled;
+    }
+
+    /**
+     * Whether requests to an unavailable cloud model are answered by the first
+     * local Ollama model instead of failing.
+     */
+    public boolean isCircuitBreakerFallback() {
+        return circuitBreakerFallback;
+    }
+
+    public void setCircuitBreakerFallback(boolean circuitBreakerFallback) {
+        this.circuitBreakerFallback = circuitBreakerFallback;
+    }
+
+    /**
+     * First-token time above which a call counts as failed. 0 only counts errors.
+     */
+    public long getCircuitBreakerSlowCallMs() {
+        return circuitBreakerSlowCallMs;
+    }
+
+    public void setCircuitBreakerSlowCallMs(long circuitBreakerSlowCallMs) {
+        this.circuitBreakerSlowCallMs = circuitBreakerSlowCallMs;
+    }
+
     public String getSystemPrompt() {
         return systemPrompt;
     }
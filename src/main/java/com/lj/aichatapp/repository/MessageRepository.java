@@ -8,4 +8,5 @@ public interface MessageRepository {
     void save(int conversationId, Message message);
     List<Message> findByConversationId(int conversationId);
     void deleteByConversationId(int conversationId);
+    void setPinned(String messageId, boolean pinned);
 }
\ No newline at end of file
@@ -0,0 +1,12 @@
+package com.lj.aichatapp.repository;
+
+import com.lj.aichatapp.models.CachedResponse;
+
+public interface ResponseCacheRepository {
+    CachedResponse find(String cacheKey);
+    void save(CachedResponse entry);
+    void recordHit(String cacheKey, long accessedAt);
+    void deleteOlderThan(long createdBefore);
+    void trimToSize(int maxEntries);
+    void clear();
+}
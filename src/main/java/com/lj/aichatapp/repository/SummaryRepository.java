@@ -0,0 +1,9 @@
+package com.lj.aichatapp.repository;
+
+import com.lj.aichatapp.models.ConversationSummary;
+
+public interface SummaryRepository {
+    ConversationSummary findByConversationId(int conversationId);
+    void save(ConversationSummary summary);
+    void deleteByConversationId(int conversationId);
+}
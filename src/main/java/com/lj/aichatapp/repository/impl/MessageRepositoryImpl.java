@@ -8,6 +8,7 @@ import com.lj.aichatapp.repository.MessageRepository;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.Statement;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
@@ -22,15 +23,22 @@ public class MessageRepositoryImpl implements MessageRepository {
 
     @Override
     public void save(int conversationId, Message message) {
-        String sql = "INSERT INTO messages(conversation_id, role, content, timestamp) VALUES(?, ?, ?, ?)";
+        String sql = "INSERT INTO messages(conversation_id, role, content, timestamp, pinned) VALUES(?, ?, ?, ?, ?)";
         try (Connection conn = dbManager.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+             PreparedStatement pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
 
             pstmt.setInt(1, conversationId);
             pstmt.setString(2, message.getRole().name());
             pstmt.setString(3, message.getContent());
             pstmt.setString(4, LocalDateTime.now().toString());
+            pstmt.setInt(5, message.isPinned() ? 1 : 0);
             pstmt.executeUpdate();
+
+            try (ResultSet keys = pstmt.getGeneratedKeys()) {
+                if (keys.next()) {
+                    message.setId(String.valueOf(keys.getLong(1)));
+                }
+            }
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -39,7 +47,7 @@ public class MessageRepositoryImpl implements MessageRepository {
     @Override
     public List<Message> findByConversationId(int conversationId) {
         List<Message> list = new ArrayList<>();
-        String sql = "SELECT role, content FROM messages WHERE conversation_id = ? ORDER BY id ASC";
+        String sql = "SELECT id, role, content, pinned FROM messages WHERE conversation_id = ? ORDER BY id ASC";
         try (Connection conn = dbManager.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
 
@@ -48,7 +56,10 @@ public class MessageRepositoryImpl implements MessageRepository {
                 while (rs.next()) {
                     MessageRole role = MessageRole.valueOf(rs.getString("role"));
                     String content = rs.getString("content");
-                    list.add(new Message(role, content));
+                    Message message = new Message(role, content);
+                    message.setId(String.valueOf(rs.getLong("id")));
+                    message.setPinned(rs.getInt("pinned") != 0);
+                    list.add(message);
                 }
             }
         } catch (Exception e) {
@@ -68,4 +79,23 @@ public class MessageRepositoryImpl implements MessageRepository {
             e.printStackTrace();
         }
     }
-}
\ No newline at end of file
+
+    @Override
+    public void setPinned(String messageId, boolean pinned) {
+        long id;
+        try {
+            id = Long.parseLong(messageId);
+        } catch (NumberFormatException e) {
+            return; // not saved yet
+        }
+        String sql = "UPDATE messages SET pinned = ? WHERE id = ?";
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, pinned ? 1 : 0);
+            pstmt.setLong(2, id);
+            pstmt.executeUpdate();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+}
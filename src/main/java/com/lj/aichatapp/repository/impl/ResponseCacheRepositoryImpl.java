@@ -0,0 +1,112 @@
+package com.lj.aichatapp.repository.impl;
+
+import com.lj.aichatapp.infrastructure.database.DatabaseManager;
+import com.lj.aichatapp.models.CachedResponse;
+import com.lj.aichatapp.repository.ResponseCacheRepository;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+public class ResponseCacheRepositoryImpl implements ResponseCacheRepository {
+
+    private final DatabaseManager dbManager;
+
+    public ResponseCacheRepositoryImpl(DatabaseManager dbManager) {
+        this.dbManager = dbManager;
+    }
+
+    @Override
+    public CachedResponse find(String cacheKey) {
+        String sql = "SELECT cache_key, provider, model, response, created_at, last_access, hits FROM response_cache WHERE cache_key = ?";
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            pstmt.setString(1, cacheKey);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    CachedResponse entry = new CachedResponse();
+                    entry.setCacheKey(rs.getString("cache_key"));
+                    entry.setProvider(rs.getString("provider"));
+                    entry.setModel(rs.getString("model"));
+                    entry.setResponse(rs.getString("response"));
+                    entry.setCreatedAt(rs.getLong("created_at"));
+                    entry.setLastAccess(rs.getLong("last_access"));
+                    entry.setHits(rs.getInt("hits"));
+                    return entry;
+                }
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    @Override
+    public void save(CachedResponse entry) {
+        String sql = "INSERT OR REPLACE INTO response_cache(cache_key, provider, model, response, created_at, last_access, hits) VALUES(?, ?, ?, ?, ?, ?, ?)";
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            pstmt.setString(1, entry.getCacheKey());
+            pstmt.setString(2, entry.getProvider());
+            pstmt.setString(3, entry.getModel());
+            pstmt.setString(4, entry.getResponse());
+            pstmt.setLong(5, entry.getCreatedAt());
+            pstmt.setLong(6, entry.getLastAccess());
+            pstmt.setInt(7, entry.getHits());
+            pstmt.executeUpdate();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public void recordHit(String cacheKey, long accessedAt) {
+        String sql = "UPDATE response_cache SET last_access = ?, hits = hits + 1 WHERE cache_key = ?";
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setLong(1, accessedAt);
+            pstmt.setString(2, cacheKey);
+            pstmt.executeUpdate();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public void deleteOlderThan(long createdBefore) {
+        String sql = "DELETE FROM response_cache WHERE created_at < ?";
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setLong(1, createdBefore);
+            pstmt.executeUpdate();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public void trimToSize(int maxEntries) {
+        String sql = "DELETE FROM response_cache WHERE cache_key NOT IN " +
+                "(SELECT cache_key FROM response_cache ORDER BY last_access DESC LIMIT ?)";
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, maxEntries);
+            pstmt.executeUpdate();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public void clear() {
+        try (Connection conn = dbManager.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("DELETE FROM response_cache");
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.lj.aichatapp.repository.impl;
+
+import com.lj.aichatapp.infrastructure.database.DatabaseManager;
+import com.lj.aichatapp.models.ConversationSummary;
+import com.lj.aichatapp.repository.SummaryRepository;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+
+public class SummaryRepositoryImpl implements SummaryRepository {
+
+    private final DatabaseManager dbManager;
+
+    public SummaryRepositoryImpl(DatabaseManager dbManager) {
+        this.dbManager = dbManager;
+    }
+
+    @Override
+    public ConversationSummary findByConversationId(int conversationId) {
+        String sql = "SELECT conversation_id, summary, covered_message_id, covered_count, updated_at FROM conversation_summaries WHERE conversation_id = ?";
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            pstmt.setInt(1, conversationId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    return new ConversationSummary(
+                            rs.getInt("conversation_id"),
+                            rs.getString("summary"),
+                            rs.getLong("covered_message_id"),
+                            rs.getInt("covered_count"),
+                            rs.getLong("updated_at"));
+                }
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    @Override
+    public void save(ConversationSummary summary) {
+        String sql = "INSERT OR REPLACE INTO conversation_summaries(conversation_id, summary, covered_message_id, covered_count, updated_at) VALUES(?, ?, ?, ?, ?)";
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            pstmt.setInt(1, summary.getConversationId());
+            pstmt.setString(2, summary.getSummary());
+            pstmt.setLong(3, summary.getCoveredMessageId());
+            pstmt.setInt(4, summary.getCoveredCount());
+            pstmt.setLong(5, summary.getUpdatedAt());
+            pstmt.executeUpdate();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public void deleteByConversationId(int conversationId) {
+        String sql = "DELETE FROM conversation_summaries WHERE conversation_id = ?";
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, conversationId);
+            pstmt.executeUpdate();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+}
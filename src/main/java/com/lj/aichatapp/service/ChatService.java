@@ -1,12 +1,16 @@
 package com.lj.aichatapp.service;
 
+import com.lj.aichatapp.infrastructure.concurrent.AppExecutors;
 import com.lj.aichatapp.models.Conversation;
+import com.lj.aichatapp.models.ConversationSummary;
 import com.lj.aichatapp.models.Message;
 import com.lj.aichatapp.models.MessageRole;
 import com.lj.aichatapp.models.UserPreferences;
 import com.lj.aichatapp.repository.ConversationRepository;
 import com.lj.aichatapp.repository.MessageRepository;
+import com.lj.aichatapp.repository.SummaryRepository;
 import com.lj.aichatapp.service.ai.AIServiceManager;
+import com.lj.aichatapp.service.ai.ChatRequest;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -15,19 +19,31 @@ import java.util.function.Consumer;
 
 public class ChatService {
 
+    private static final long COUNTING_MODEL_TTL_MS = 30_000;
+
     private final AIServiceManager aiServiceManager;
     private final ConversationRepository conversationRepository;
     private final MessageRepository messageRepository;
     private final UserPreferences preferences;
+    private final ContextWindowManager contextWindowManager;
+    private final ConversationSummarizer summarizer;
+    private volatile ContextWindowManager.Window lastWindow;
+    private volatile CountingModel countingModel;
 
     public ChatService(AIServiceManager aiServiceManager, 
                        ConversationRepository conversationRepository,
                        MessageRepository messageRepository,
-                       UserPreferences preferences) {
+                       SummaryRepository summaryRepository,
+                       ModelCatalogService modelCatalogService,
+                       UserPreferences preferences,
+                       AppExecutors executors) {
         this.aiServiceManager = aiServiceManager;
         this.conversationRepository = conversationRepository;
         this.messageRepository = messageRepository;
         this.preferences = preferences;
+        this.contextWindowManager = new ContextWindowManager(preferences, modelCatalogService, executors.cpu());
+        aiServiceManager.setContextBudget(contextWindowManager::budgetFor);
+        this.summarizer = new ConversationSummarizer(aiServiceManager, summaryRepository, contextWindowManager, preferences, executors.io());
     }
 
     public Conversation createNewConversation(String title) {
@@ -42,10 +58,13 @@ public class ChatService {
         if (conversation.getId() > 0) {
             List<Message> messages = messageRepository.findByConversationId(conversation.getId());
             conversation.setMessages(messages);
+            summarizer.load(conversation.getId());
         }
     }
 
     public void deleteConversation(int id) {
+        aiServiceManager.invalidateConversation(id);
+        summarizer.forget(id);
         messageRepository.deleteByConversationId(id);
         conversationRepository.delete(id);
     }
@@ -66,33 +85,107 @@ public class ChatService {
     }
 
     public CompletableFuture<String> sendMessage(Conversation conversation, String userInput, Consumer<String> onChunkReceived) {
-        Message userMessage = new Message(MessageRole.USER, userInput);
+        return sendMessage(conversation, new Message(MessageRole.USER, userInput), onChunkReceived, null);
+    }
+
+    public CompletableFuture<String> sendMessage(Conversation conversation, Message userMessage, Consumer<String> onChunkReceived,
+                                                 Consumer<String> onStatus) {
         conversation.addMessage(userMessage);
 
         if (conversation.getId() > 0) {
             messageRepository.save(conversation.getId(), userMessage);
         }
 
-        List<Message> conversationWithSystemPrompt = new ArrayList<>();
-        conversationWithSystemPrompt.add(new Message(MessageRole.SYSTEM, preferences.getSystemPrompt()));
-        conversationWithSystemPrompt.addAll(conversation.getMessages());
+        ChatRequest target = aiServiceManager.resolveTarget();
+        String model = target.getModel();
+        countingModel = new CountingModel(selection(), model);
+        String systemPrompt = preferences.getSystemPrompt();
+        List<Message> history = conversation.getMessages();
+
+        ConversationSummary summary = summarizer.get(conversation.getId());
+        if (summary != null) {
+            systemPrompt = systemPrompt + "\n\nSummary of the earlier conversation:\n" + summary.getSummary();
+            history = new ArrayList<>();
+            for (Message message : conversation.getMessages()) {
+                if (message.isPinned() || !ConversationSummarizer.isCovered(summary, message)) {
+                    history.add(message);
+                }
+            }
+        }
+        ContextWindowManager.Window window = contextWindowManager.build(target.getProvider(), model, systemPrompt, history);
+        lastWindow = window;
+
+        ChatRequest request = new ChatRequest(conversation.getId(), window.getMessages(), model);
+        request.setProvider(target.getProvider());
+        request.setPromptTokens(window.getTokens());
+        request.setStatusListener(onStatus);
+        return aiServiceManager.send(request, onChunkReceived);
+    }
+
+    /**
+     * The context window of the most recent message, for reporting how much history was left out.
+     */
+    public ContextWindowManager.Window getLastWindow() {
+        return lastWindow;
+    }
+
+    public ContextWindowManager getContextWindowManager() {
+        return contextWindowManager;
+    }
+
+    /**
+     * Counts {@code text} for the model the next message will most likely go
+     * to. The model is resolved at most every {@value #COUNTING_MODEL_TTL_MS} ms
+     * so counting while typing does not consult the router each time.
+     */
+    public CompletableFuture<Integer> countTokens(String text) {
+        String selection = selection();
+        CountingModel cached = countingModel;
+        if (cached == null || !cached.selection.equals(selection)
+                || System.currentTimeMillis() - cached.resolvedAt > COUNTING_MODEL_TTL_MS) {
+            cached = new CountingModel(selection, aiServiceManager.resolveTarget().getModel());
+            countingModel = cached;
+        }
+        return contextWindowManager.getTokenCounter().countAsync(cached.model, text);
+    }
+
+    private String selection() {
+        return preferences.getProvider() + "|" + preferences.getModel();
+    }
 
-        return aiServiceManager.send(conversationWithSystemPrompt, preferences.getModel(), onChunkReceived);
+    public void setPinned(Message message, boolean pinned) {
+        message.setPinned(pinned);
+        messageRepository.setPinned(message.getId(), pinned);
     }
 
-    public void saveAiResponse(Conversation conversation, String response) {
+    public Message saveAiResponse(Conversation conversation, String response) {
         Message aiMessage = new Message(MessageRole.ASSISTANT, response);
         conversation.addMessage(aiMessage);
 
         if (conversation.getId() > 0) {
             messageRepository.save(conversation.getId(), aiMessage);
         }
+        summarizer.maybeSummarize(conversation);
+        return aiMessage;
     }
 
     public void clearConversation(Conversation conversation) {
         conversation.clear();
+        aiServiceManager.invalidateConversation(conversation.getId());
+        summarizer.forget(conversation.getId());
         if (conversation.getId() > 0) {
             messageRepository.deleteByConversationId(conversation.getId());
         }
     }
-}
\ No newline at end of file
+
+    private static final class CountingModel {
+        private final String selection;
+        private final String model;
+        private final long resolvedAt = System.currentTimeMillis();
+
+        private CountingModel(String selection, String model) {
+            this.selection = selection;
+            this.model = model;
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package com.lj.aichatapp.service;
+
+import com.lj.aichatapp.models.Message;
+import com.lj.aichatapp.models.MessageRole;
+import com.lj.aichatapp.models.UserPreferences;
+import com.lj.aichatapp.service.ai.ProviderRegistry;
+import com.lj.aichatapp.service.ai.providers.OllamaTuning;
+import com.lj.aichatapp.service.tokenizer.TokenCounter;
+import com.lj.aichatapp.utils.Logger;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Chooses which part of a conversation is sent to the model. The request always
+ * holds the system prompt, the pinned messages (the first user message and any
+ * message the user pinned) and the latest message; the remaining budget is
+ * filled with the most recent turns. Prompt size, and with it latency and cost,
+ * therefore stays flat however long the conversation gets.
+ */
+public class ContextWindowManager {
+
+    private static final int DEFAULT_CONTEXT_LENGTH = 4096;
+    private static final int MESSAGE_OVERHEAD_TOKENS = 4;
+    private static final Pattern CONTEXT_SUFFIX = Pattern.compile("(\\d+)(k)?$");
+
+    private static final Map<String, Integer> CONTEXT_LENGTHS = new LinkedHashMap<>();
+
+    static {
+        CONTEXT_LENGTHS.put("llama3.1", 131072);
+        CONTEXT_LENGTHS.put("llama3.2", 131072);
+        CONTEXT_LENGTHS.put("llama-3.1", 131072);
+        CONTEXT_LENGTHS.put("llama3", 8192);
+        CONTEXT_LENGTHS.put("llama2", 4096);
+        CONTEXT_LENGTHS.put("mixtral", 32768);
+        CONTEXT_LENGTHS.put("mistral", 32768);
+        CONTEXT_LENGTHS.put("gemma2", 8192);
+        CONTEXT_LENGTHS.put("gemma", 8192);
+        CONTEXT_LENGTHS.put("phi3", 4096);
+        CONTEXT_LENGTHS.put("qwen2", 32768);
+        CONTEXT_LENGTHS.put("deepseek", 65536);
+    }
+
+    private final UserPreferences prefs;
+    private final ModelCatalogService modelCatalog;
+    private final TokenCounter tokenCounter;
+
+    public ContextWindowManager(UserPreferences prefs, ModelCatalogService modelCatalog, Executor cpu) {
+        this.prefs = prefs;
+        this.modelCatalog = modelCatalog;
+        this.tokenCounter = new TokenCounter(prefs, cpu);
+    }
+
+    public TokenCounter getTokenCounter() {
+        return tokenCounter;
+    }
+
+    /**
+     * Context length of {@code model}. A size suffix in the model name
+     * ({@code llama3-8b-8192}, {@code mixtral-8x7b-32768}, {@code ...-32k}) wins
+     * over the table of known model families.
+     */
+    public static int contextLength(String model) {
+        if (model == null || model.isBlank()) {
+            return DEFAULT_CONTEXT_LENGTH;
+        }
+        String name = model.toLowerCase(Locale.ROOT);
+        int colon = name.lastIndexOf(':');
+        String base = colon > 0 && !name.endsWith(":free") ? name.substring(0, colon) : name.replace(":free", "");
+
+        Matcher matcher = CONTEXT_SUFFIX.matcher(base);
+        if (matcher.find() && base.charAt(Math.max(0, matcher.start() - 1)) == '-') {
+            int value = Integer.parseInt(matcher.group(1));
+            int length = matcher.group(2) != null ? value * 1024 : value;
+            if (length >= 1024) {
+                return length;
+            }
+        }
+
+        String family = base.substring(base.lastIndexOf('/') + 1);
+        for (Map.Entry<String, Integer> entry : CONTEXT_LENGTHS.entrySet()) {
+            if (family.startsWith(entry.getKey())) {
+                return entry.getValue();
+            }
+        }
+        return DEFAULT_CONTEXT_LENGTH;
+    }
+
+    public int estimateTokens(String model, Message message) {
+        return tokenCounter.count(model, message) + MESSAGE_OVERHEAD_TOKENS;
+    }
+
+    /**
+     * Prompt budget for {@code model} on {@code provider}: the configured budget,
+     * capped by what the model can hold once room for the answer is reserved.
+     * The context length the provider's model list reports wins over the name
+     * based guess, and for Ollama the {@code num_ctx} the tuning profile sends
+     * caps both.
+     */
+    public int budgetFor(String provider, String model) {
+        int known = modelCatalog != null ? modelCatalog.contextLength(model) : 0;
+        int length = known > 0 ? known : contextLength(model);
+        if (ProviderRegistry.OLLAMA.equals(ProviderRegistry.normalize(provider))) {
+            int limit = OllamaTuning.contextLimit(prefs.getOllamaProfile());
+            if (limit > 0) {
+                length = Math.min(length, limit);
+            }
+        }
+        int available = Math.max(1024, length - prefs.getContextResponseReserveTokens());
+        int configured = prefs.getContextBudgetTokens();
+        return configured > 0 ? Math.min(configured, available) : available;
+    }
+
+    public Window build(String provider, String model, String systemPrompt, List<Message> history) {
+        int budget = budgetFor(provider, model);
+        int count = history.size();
+        boolean[] keep = new boolean[count];
+        int used = 0;
+
+        Message system = systemPrompt == null || systemPrompt.isBlank() ? null : new Message(MessageRole.SYSTEM, systemPrompt);
+        if (system != null) {
+            used += estimateTokens(model, system);
+        }
+        if (count > 0) {
+            keep[count - 1] = true;
+            used += estimateTokens(model, history.get(count - 1));
+        }
+
+        // Pinned messages, oldest first so the earliest context survives if the budget is tight.
+        boolean firstUserSeen = false;
+        for (int i = 0; i < count - 1; i++) {
+            Message message = history.get(i);
+            boolean firstUser = !firstUserSeen && message.getRole() == MessageRole.USER;
+            firstUserSeen |= message.getRole() == MessageRole.USER;
+            if (firstUser || message.isPinned()) {
+                int tokens = estimateTokens(model, message);
+                if (used + tokens <= budget) {
+                    keep[i] = true;
+                    used += tokens;
+                }
+            }
+        }
+
+        // Most recent turns, stopping at the first one that does not fit.
+        for (int i = count - 2; i >= 0; i--) {
+            if (keep[i]) {
+                continue;
+            }
+            int tokens = estimateTokens(model, history.get(i));
+            if (used + tokens > budget) {
+                break;
+            }
+            keep[i] = true;
+            used += tokens;
+        }
+
+        List<Message> messages = new ArrayList<>(count + 1);
+        if (system != null) {
+            messages.add(system);
+        }
+        int droppedMessages = 0;
+        int droppedTokens = 0;
+        for (int i = 0; i < count; i++) {
+            if (keep[i]) {
+                messages.add(history.get(i));
+            } else {
+                droppedMessages++;
+                droppedTokens += estimateTokens(model, history.get(i));
+            }
+        }
+
+        Window window = new Window(messages, used, budget, droppedMessages, droppedTokens);
+        if (droppedMessages > 0) {
+            Logger.info(String.format("Context for %s: sending %d of %d messages (~%d of %d tokens), dropped %d messages (~%d tokens)",
+                    model, count - droppedMessages, count, used, budget, droppedMessages, droppedTokens));
+        }
+        return window;
+    }
+
+    public static class Window {
+        private final List<Message> messages;
+        private final int tokens;
+        private final int budget;
+        private final int droppedMessages;
+        private final int droppedTokens;
+
+        public Window(List<Message> messages, int tokens, int budget, int droppedMessages, int droppedTokens) {
+            this.messages = messages;
+            this.tokens = tokens;
+            this.budget = budget;
+            this.droppedMessages = droppedMessages;
+            this.droppedTokens = droppedTokens;
+        }
+
+        public List<Message> getMessages() {
+            return messages;
+        }
+
+        public int getTokens() {
+            return tokens;
+        }
+
+        public int getBudget() {
+            return budget;
+        }
+
+        public int getDroppedMessages() {
+            return droppedMessages;
+        }
+
+        public int getDroppedTokens() {
+            return droppedTokens;
+        }
+    }
+}
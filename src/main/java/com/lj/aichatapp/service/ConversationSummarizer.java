@@ -0,0 +1,187 @@
+package com.lj.aichatapp.service;
+
+import com.lj.aichatapp.models.Conversation;
+import com.lj.aichatapp.models.ConversationSummary;
+import com.lj.aichatapp.models.Message;
+import com.lj.aichatapp.models.MessageRole;
+import com.lj.aichatapp.models.UserPreferences;
+import com.lj.aichatapp.repository.SummaryRepository;
+import com.lj.aichatapp.service.ai.AIServiceManager;
+import com.lj.aichatapp.service.ai.ChatRequest;
+import com.lj.aichatapp.service.ai.RequestPriority;
+import com.lj.aichatapp.utils.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * Folds the older turns of long conversations into a running summary. Once the
+ * turns not yet covered by the summary pass a token threshold, a
+ * {@link RequestPriority#BATCH} request merges them into the previous summary;
+ * the latest turns are always left alone. A pass only takes as many turns as
+ * fit the model's prompt budget, so the earliest turns are not cut off by the
+ * context window; the next pass picks up where it stopped. The interactive
+ * send path only reads the in-memory summary and never waits for a
+ * summarization.
+ */
+public class ConversationSummarizer {
+
+    private static final int KEEP_RECENT_MESSAGES = 6;
+    private static final int PROMPT_OVERHEAD_TOKENS = 32;
+    private static final String INSTRUCTIONS =
+            "You maintain a running summary of a tutoring conversation between a student and a tutor. "
+            + "Merge the new turns into the existing summary. Keep the subject, what the student has "
+            + "already learned, open questions, mistakes to revisit and any preferences the student stated. "
+            + "Be concise and factual. Answer with the updated summary only.";
+
+    private final AIServiceManager aiServiceManager;
+    private final SummaryRepository repository;
+    private final ContextWindowManager contextWindowManager;
+    private final UserPreferences prefs;
+    private final Executor io;
+    private final Map<Integer, ConversationSummary> summaries = new ConcurrentHashMap<>();
+    private final Set<Integer> running = ConcurrentHashMap.newKeySet();
+
+    public ConversationSummarizer(AIServiceManager aiServiceManager, SummaryRepository repository,
+                                  ContextWindowManager contextWindowManager, UserPreferences prefs, Executor io) {
+        this.aiServiceManager = aiServiceManager;
+        this.repository = repository;
+        this.contextWindowManager = contextWindowManager;
+        this.prefs = prefs;
+        this.io = io;
+    }
+
+    public void load(int conversationId) {
+        ConversationSummary summary = repository.findByConversationId(conversationId);
+        if (summary != null) {
+            summaries.put(conversationId, summary);
+        } else {
+            summaries.remove(conversationId);
+        }
+    }
+
+    public ConversationSummary get(int conversationId) {
+        return summaries.get(conversationId);
+    }
+
+    /**
+     * Drops the summary, and the result of any summarization still running.
+     */
+    public void forget(int conversationId) {
+        summaries.remove(conversationId);
+        running.remove(conversationId);
+        repository.deleteByConversationId(conversationId);
+    }
+
+    public static boolean isCovered(ConversationSummary summary, Message message) {
+        long id = numericId(message);
+        return summary != null && id > 0 && id <= summary.getCoveredMessageId();
+    }
+
+    public void maybeSummarize(Conversation conversation) {
+        int conversationId = conversation.getId();
+        if (!prefs.isSummaryEnabled() || conversationId <= 0) {
+            return;
+        }
+        summarize(conversationId, new ArrayList<>(conversation.getMessages()));
+    }
+
+    private void summarize(int conversationId, List<Message> messages) {
+        int end = messages.size() - KEEP_RECENT_MESSAGES;
+        if (end <= 0) {
+            return;
+        }
+
+        ChatRequest target = aiServiceManager.resolveTarget();
+        String model = target.getModel();
+        ConversationSummary current = summaries.get(conversationId);
+        int fixed = contextWindowManager.estimateTokens(model, new Message(MessageRole.SYSTEM, INSTRUCTIONS))
+                + (current != null ? contextWindowManager.getTokenCounter().count(model, current.getSummary()) : 0)
+                + PROMPT_OVERHEAD_TOKENS;
+        int room = contextWindowManager.budgetFor(target.getProvider(), model) - fixed;
+        List<Message> fresh = new ArrayList<>();
+        int tokens = 0;
+        int pending = 0;
+        boolean full = false;
+        for (Message message : messages.subList(0, end)) {
+            if (numericId(message) > 0 && !isCovered(current, message)) {
+                int size = contextWindowManager.estimateTokens(model, message);
+                pending += size;
+                // Turns that do not fit wait for the next pass; the first one is always taken.
+                if (!full && (fresh.isEmpty() || tokens + size <= room)) {
+                    fresh.add(message);
+                    tokens += size;
+                } else {
+                    full = true;
+                }
+            }
+        }
+        if (fresh.isEmpty() || pending < prefs.getSummaryThresholdTokens()) {
+            return;
+        }
+        if (!running.add(conversationId)) {
+            return;
+        }
+
+        List<Message> prompt = new ArrayList<>();
+        prompt.add(new Message(MessageRole.SYSTEM, INSTRUCTIONS));
+        prompt.add(new Message(MessageRole.USER, buildPrompt(current, fresh)));
+        ChatRequest request = new ChatRequest(ChatRequest.NO_CONVERSATION, prompt, model);
+        request.setProvider(target.getProvider());
+        request.setPriority(RequestPriority.BATCH);
+        request.setPromptTokens(fixed + tokens);
+
+        long coveredId = numericId(fresh.get(fresh.size() - 1));
+        int coveredCount = (current != null ? current.getCoveredCount() : 0) + fresh.size();
+        int foldedTokens = tokens;
+        boolean more = full;
+
+        aiServiceManager.send(request, null).whenComplete((text, ex) -> {
+            if (!running.remove(conversationId)) {
+                return;
+            }
+            if (ex != null) {
+                Logger.error("Summarizing conversation " + conversationId + " failed", ex);
+                return;
+            }
+            if (text == null || text.isBlank()) {
+                return;
+            }
+            ConversationSummary updated = new ConversationSummary(conversationId, text.trim(), coveredId, coveredCount, System.currentTimeMillis());
+            summaries.put(conversationId, updated);
+            CompletableFuture.runAsync(() -> repository.save(updated), io);
+            Logger.info(String.format("Summarized %d messages (~%d tokens) of conversation %d into ~%d tokens%s",
+                    fresh.size(), foldedTokens, conversationId, contextWindowManager.getTokenCounter().count(model, updated.getSummary()),
+                    more ? ", more to fold" : ""));
+            if (more && prefs.isSummaryEnabled()) {
+                summarize(conversationId, messages);
+            }
+        });
+    }
+
+    private static String buildPrompt(ConversationSummary current, List<Message> fresh) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Existing summary:\n");
+        sb.append(current != null ? current.getSummary() : "(none yet)");
+        sb.append("\n\nNew turns:\n");
+        for (Message message : fresh) {
+            sb.append(message.getRole() == MessageRole.USER ? "Student: " : "Tutor: ");
+            sb.append(message.getContent()).append("\n\n");
+        }
+        sb.append("Write the updated summary.");
+        return sb.toString();
+    }
+
+    private static long numericId(Message message) {
+        try {
+            return message.getId() == null ? -1 : Long.parseLong(message.getId());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,415 @@
+package com.lj.aichatapp.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lj.aichatapp.infrastructure.http.HttpClientManager;
+import com.lj.aichatapp.infrastructure.preferences.PreferencesManager;
+import com.lj.aichatapp.models.ModelCatalog;
+import com.lj.aichatapp.models.ModelInfo;
+import com.lj.aichatapp.models.UserPreferences;
+import com.lj.aichatapp.service.ai.ProviderRegistry;
+import com.lj.aichatapp.utils.FutureUtils;
+import com.lj.aichatapp.utils.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Model lists of every provider, cached in {@code model_catalog.json} so the
+ * settings screen can show them without a network round trip. Lists are
+ * refreshed in the background once older than their TTL, with
+ * {@code If-None-Match} / {@code If-Modified-Since} so an unchanged list costs
+ * a 304 instead of the full (for OpenRouter, several hundred KB) download.
+ * The Ollama list covers every configured host.
+ *
+ * <p>The catalog only lists what providers offer; the user's own entries stay
+ * in {@link UserPreferences#getCustomModels()} and are listed first.
+ */
+public class ModelCatalogService {
+
+    private static final String CATALOG_FILE_NAME = "model_catalog.json";
+    private static final long LOCAL_TTL_MS = TimeUnit.MINUTES.toMillis(1);
+    private static final long CLOUD_TTL_MS = TimeUnit.HOURS.toMillis(12);
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(20);
+
+    private final UserPreferences prefs;
+    private final Executor io;
+    private final HttpClient http;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Map<String, ModelCatalog> catalogs = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<ModelCatalog>> inFlight = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService refreshTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "model-catalog-refresh");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public ModelCatalogService(UserPreferences prefs, Executor io) {
+        this.prefs = prefs;
+        this.io = io;
+        this.http = HttpClientManager.getInstance().getClient();
+        load();
+    }
+
+    /**
+     * Cached models of {@code provider}; never blocks.
+     */
+    public List<ModelInfo> getModels(String provider) {
+        ModelCatalog catalog = catalogs.get(ProviderRegistry.normalize(provider));
+        return catalog != null ? catalog.getModels() : List.of();
+    }
+
+    /**
+     * What settings offers for {@code provider}: the user's own entries, then
+     * every catalog model not among them.
+     */
+    public List<String> listModels(String provider) {
+        Set<String> ids = new LinkedHashSet<>(customModels(provider));
+        for (ModelInfo info : getModels(provider)) {
+            ids.add(info.getId());
+        }
+        return new ArrayList<>(ids);
+    }
+
+    /**
+     * Models the auto router and the circuit breaker may pick: the user's own
+     * entries and, for Ollama, every installed model. Cloud catalogs list
+     * hundreds of models, so only the user's entries count there.
+     */
+    public List<String> routableModels(String provider) {
+        if (!ProviderRegistry.OLLAMA.equals(ProviderRegistry.normalize(provider))) {
+            return customModels(provider);
+        }
+        return listModels(provider);
+    }
+
+    private List<String> customModels(String provider) {
+        List<String> custom = prefs.getCustomModels().get(ProviderRegistry.normalize(provider));
+        return custom != null ? custom : List.of();
+    }
+
+    public ModelInfo find(String provider, String model) {
+        for (ModelInfo info : getModels(provider)) {
+            if (info.getId().equals(model)) {
+                return info;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Context length reported by any provider for {@code model}, or 0 if unknown.
+     */
+    public int contextLength(String model) {
+        for (ModelCatalog catalog : catalogs.values()) {
+            for (ModelInfo info : catalog.getModels()) {
+                if (info.getId().equals(model) && info.getContextLength() > 0) {
+                    return info.getContextLength();
+                }
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Refreshes stale lists now and then every {@code LOCAL_TTL_MS}, the shortest
+     * TTL, until {@link #shutdown()}.
+     */
+    public void startRefreshing() {
+        refreshTimer.scheduleWithFixedDelay(() -> {
+            try {
+                refreshStale();
+            } catch (RuntimeException e) {
+                Logger.error("Failed to refresh model lists", e);
+            }
+        }, 0, LOCAL_TTL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    public void shutdown() {
+        refreshTimer.shutdownNow();
+    }
+
+    /**
+     * Refreshes, in parallel, every configured provider whose list is older than its TTL.
+     */
+    public CompletableFuture<Void> refreshStale() {
+        List<CompletableFuture<ModelCatalog>> refreshes = new ArrayList<>();
+        for (String provider : List.of(ProviderRegistry.OLLAMA, ProviderRegistry.OPENROUTER, ProviderRegistry.GROQ)) {
+            if (isConfigured(provider) && isStale(provider)) {
+                refreshes.add(refresh(provider, null, null).exceptionally(ex -> null));
+            }
+        }
+        return CompletableFuture.allOf(refreshes.toArray(new CompletableFuture<?>[0]));
+    }
+
+    /**
+     * Fetches the model list of {@code provider} if it changed since the cached copy.
+     * {@code ollamaHosts} and {@code apiKey} override the saved preferences when not null,
+     * so settings can refresh with values that are not saved yet.
+     */
+    public CompletableFuture<ModelCatalog> refresh(String provider, List<String> ollamaHosts, String apiKey) {
+        String key = ProviderRegistry.normalize(provider);
+        List<String> urls = ProviderRegistry.OLLAMA.equals(key)
+                ? ollamaUrls(ollamaHosts != null ? ollamaHosts : ProviderRegistry.ollamaHostUrls(prefs))
+                : List.of(modelsUrl(key, null));
+        String token = apiKey != null ? apiKey : prefs.getProviderKeys().get(key);
+        String flightKey = key + "|" + String.join(",", urls);
+        CompletableFuture<ModelCatalog> running = inFlight.get(flightKey);
+        if (running != null) {
+            return running;
+        }
+        CompletableFuture<ModelCatalog> future;
+        try {
+            future = urls.size() == 1 ? fetch(key, urls.get(0), token) : fetchAll(key, urls);
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        inFlight.put(flightKey, future);
+        future.whenComplete((r, ex) -> inFlight.remove(flightKey, future));
+        return future;
+    }
+
+    private CompletableFuture<ModelCatalog> fetch(String provider, String url, String apiKey) {
+        ModelCatalog cached = catalogs.get(provider);
+        boolean conditional = cached != null && url.equals(cached.getSource());
+
+        HttpRequest.Builder builder = HttpRequest.newBuilder()
+                .uri(URI.create(url))
+                .timeout(REQUEST_TIMEOUT)
+                .header("Accept", "application/json")
+                .header("Accept-Encoding", "gzip")
+                .GET();
+        if (ProviderRegistry.OLLAMA.equals(provider)) {
+            builder.version(HttpClient.Version.HTTP_1_1);
+        }
+        if (apiKey != null && !apiKey.isBlank()) {
+            builder.header("Authorization", "Bearer " + apiKey);
+        }
+        if (conditional && cached.getEtag() != null) {
+            builder.header("If-None-Match", cached.getEtag());
+        }
+        if (conditional && cached.getLastModified() != null) {
+            builder.header("If-Modified-Since", cached.getLastModified());
+        }
+
+        long start = System.nanoTime();
+        return http.sendAsync(builder.build(), HttpResponse.BodyHandlers.ofInputStream())
+                .thenApplyAsync(resp -> {
+                    try (InputStream body = decoded(resp)) {
+                        long now = System.currentTimeMillis();
+                        if (resp.statusCode() == 304 && conditional) {
+                            cached.setFetchedAt(now);
+                            save();
+                            return cached;
+                        }
+                        ModelCatalog catalog = new ModelCatalog(provider, url);
+                        catalog.setModels(read(provider, resp, body));
+                        catalog.setEtag(resp.headers().firstValue("etag").orElse(null));
+                        catalog.setLastModified(resp.headers().firstValue("last-modified").orElse(null));
+                        catalog.setFetchedAt(now);
+                        catalogs.put(provider, catalog);
+                        save();
+                        Logger.info(String.format("Fetched %d %s models in %d ms", catalog.getModels().size(), provider,
+                                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+                        return catalog;
+                    } catch (IOException e) {
+                        throw new RuntimeException(e.getMessage(), e);
+                    }
+                }, io);
+    }
+
+    /**
+     * Ollama with several hosts: the union of the models installed on every
+     * host that answers. The refresh only fails when none does.
+     */
+    private CompletableFuture<ModelCatalog> fetchAll(String provider, List<String> urls) {
+        long start = System.nanoTime();
+        List<CompletableFuture<List<ModelInfo>>> lists = new ArrayList<>();
+        for (String url : urls) {
+            HttpRequest request = HttpRequest.newBuilder()
+                    .uri(URI.create(url))
+                    .timeout(REQUEST_TIMEOUT)
+                    .header("Accept", "application/json")
+                    .version(HttpClient.Version.HTTP_1_1)
+                    .GET()
+                    .build();
+            lists.add(http.sendAsync(request, HttpResponse.BodyHandlers.ofInputStream())
+                    .thenApplyAsync(resp -> {
+                        try (InputStream body = decoded(resp)) {
+                            return read(provider, resp, body);
+                        } catch (IOException e) {
+                            throw new CompletionException(e);
+                        }
+                    }, io)
+                    .exceptionally(ex -> {
+                        Throwable cause = FutureUtils.unwrap(ex);
+                        Logger.info("Could not list the models of " + url + ": "
+                                + (cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName()));
+                        return null;
+                    }));
+        }
+        return CompletableFuture.allOf(lists.toArray(new CompletableFuture<?>[0])).thenApply(v -> {
+            Map<String, ModelInfo> merged = new LinkedHashMap<>();
+            int answered = 0;
+            for (CompletableFuture<List<ModelInfo>> list : lists) {
+                List<ModelInfo> models = list.join();
+                if (models == null) {
+                    continue;
+                }
+                answered++;
+                for (ModelInfo info : models) {
+                    merged.putIfAbsent(info.getId(), info);
+                }
+            }
+            if (answered == 0) {
+                throw new CompletionException(new IOException("None of the " + urls.size() + " Ollama hosts answered"));
+            }
+            ModelCatalog catalog = new ModelCatalog(provider, String.join(",", urls));
+            catalog.setModels(new ArrayList<>(merged.values()));
+            catalog.setFetchedAt(System.currentTimeMillis());
+            catalogs.put(provider, catalog);
+            save();
+            Logger.info(String.format("Fetched %d %s models from %d of %d hosts in %d ms", catalog.getModels().size(), provider,
+                    answered, urls.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+            return catalog;
+        });
+    }
+
+    private List<ModelInfo> read(String provider, HttpResponse<InputStream> resp, InputStream body) throws IOException {
+        if (resp.statusCode() < 200 || resp.statusCode() >= 300) {
+            throw new IOException("Failed to fetch models. Status: " + resp.statusCode());
+        }
+        return parse(provider, mapper.readTree(body));
+    }
+
+    private static InputStream decoded(HttpResponse<InputStream> resp) throws IOException {
+        boolean gzip = resp.headers().firstValue("content-encoding").map(v -> v.equalsIgnoreCase("gzip")).orElse(false);
+        return gzip ? new GZIPInputStream(resp.body()) : resp.body();
+    }
+
+    private static List<ModelInfo> parse(String provider, JsonNode root) {
+        List<ModelInfo> models = new ArrayList<>();
+        if (ProviderRegistry.OLLAMA.equals(provider)) {
+            for (JsonNode node : root.path("models")) {
+                models.add(new ModelInfo(node.path("name").asText()));
+            }
+            return models;
+        }
+        for (JsonNode node : root.path("data")) {
+            ModelInfo info = new ModelInfo(node.path("id").asText());
+            int context = node.path("context_length").asInt(node.path("context_window").asInt(0));
+            info.setContextLength(context);
+            JsonNode pricing = node.path("pricing");
+            if (pricing.isObject()) {
+                // OpenRouter quotes USD per token as strings.
+                info.setPromptPrice(perMillion(pricing.path("prompt")));
+                info.setCompletionPrice(perMillion(pricing.path("completion")));
+            }
+            info.setFree(info.getId().endsWith(":free") || (info.getPromptPrice() == 0 && info.getCompletionPrice() == 0));
+            models.add(info);
+        }
+        return models;
+    }
+
+    private static double perMillion(JsonNode price) {
+        try {
+            return price.isMissingNode() ? -1 : Double.parseDouble(price.asText()) * 1_000_000;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private boolean isConfigured(String provider) {
+        if (ProviderRegistry.OLLAMA.equals(provider)) {
+            for (String host : ProviderRegistry.ollamaHostUrls(prefs)) {
+                if (host != null && !host.isBlank()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        if (ProviderRegistry.GROQ.equals(provider)) {
+            String key = prefs.getProviderKeys().get(provider);
+            return key != null && !key.isBlank();
+        }
+        return true;
+    }
+
+    private boolean isStale(String provider) {
+        ModelCatalog catalog = catalogs.get(provider);
+        long ttl = ProviderRegistry.OLLAMA.equals(provider) ? LOCAL_TTL_MS : CLOUD_TTL_MS;
+        return catalog == null || System.currentTimeMillis() - catalog.getFetchedAt() > ttl;
+    }
+
+    /**
+     * {@code /api/tags} of every distinct, non-blank host, or of the blank host
+     * when there is none so the refresh fails the usual way.
+     */
+    private List<String> ollamaUrls(List<String> hosts) {
+        Set<String> urls = new LinkedHashSet<>();
+        for (String host : hosts) {
+            if (host != null && !host.isBlank()) {
+                urls.add(modelsUrl(ProviderRegistry.OLLAMA, host.trim().replaceAll("/+$", "")));
+            }
+        }
+        if (urls.isEmpty()) {
+            urls.add(modelsUrl(ProviderRegistry.OLLAMA, ""));
+        }
+        return new ArrayList<>(urls);
+    }
+
+    private String modelsUrl(String provider, String ollamaHost) {
+        if (ProviderRegistry.OLLAMA.equals(provider)) {
+            String host = ollamaHost == null ? "" : ollamaHost.trim();
+            return (host.endsWith("/") ? host : host + "/") + "api/tags";
+        }
+        return ProviderRegistry.baseUrl(prefs, provider) + "/models";
+    }
+
+    private synchronized void save() {
+        try {
+            PreferencesManager.ensureAppDirectory();
+            mapper.writeValue(catalogFile(), catalogs);
+        } catch (IOException e) {
+            Logger.error("Failed to save model catalog", e);
+        }
+    }
+
+    private void load() {
+        File file = catalogFile();
+        if (!file.exists()) {
+            return;
+        }
+        try {
+            Map<String, ModelCatalog> loaded = mapper.readValue(file, new TypeReference<Map<String, ModelCatalog>>() {});
+            catalogs.putAll(loaded);
+        } catch (IOException e) {
+            Logger.error("Failed to load model catalog", e);
+        }
+    }
+
+    private static File catalogFile() {
+        return PreferencesManager.getAppDirectory().resolve(CATALOG_FILE_NAME).toFile();
+    }
+}
@@ -21,8 +21,39 @@ public class SettingsService {
         preferences.setProvider(newPrefs.getProvider());
         preferences.setModel(newPrefs.getModel());
         preferences.setOllamaHost(newPrefs.getOllamaHost());
+        preferences.setOllamaHosts(newPrefs.getOllamaHosts());
         preferences.setProviderKeys(newPrefs.getProviderKeys());
+        preferences.setProviderBaseUrls(newPrefs.getProviderBaseUrls());
         preferences.setCustomModels(newPrefs.getCustomModels());
+        preferences.setOpenRouterSpeedProfiles(newPrefs.getOpenRouterSpeedProfiles());
+        preferences.setResponseCacheEnabled(newPrefs.isResponseCacheEnabled());
+        preferences.setResponseCacheTtlHours(newPrefs.getResponseCacheTtlHours());
+        preferences.setResponseCacheMaxEntries(newPrefs.getResponseCacheMaxEntries());
+        preferences.setHedgingEnabled(newPrefs.isHedgingEnabled());
+        preferences.setHedgeProvider(newPrefs.getHedgeProvider());
+        preferences.setHedgeModel(newPrefs.getHedgeModel());
+        preferences.setHedgeDelayMs(newPrefs.getHedgeDelayMs());
+        preferences.setAutoRouteAllowCloud(newPrefs.isAutoRouteAllowCloud());
+        preferences.setAutoRouteMaxTtftMs(newPrefs.getAutoRouteMaxTtftMs());
+        preferences.setAutoRouteMaxErrorRate(newPrefs.getAutoRouteMaxErrorRate());
+        preferences.setAutoRouteModels(newPrefs.getAutoRouteModels());
+        preferences.setProviderConcurrency(newPrefs.getProviderConcurrency());
+        preferences.setOllamaKeepAlive(newPrefs.getOllamaKeepAlive());
+        preferences.setOllamaPreloadEnabled(newPrefs.isOllamaPreloadEnabled());
+        preferences.setOllamaContextReuse(newPrefs.isOllamaContextReuse());
+        preferences.setOllamaProfile(newPrefs.getOllamaProfile());
+        preferences.setOllamaCalibration(newPrefs.getOllamaCalibration());
+        preferences.setContextBudgetTokens(newPrefs.getContextBudgetTokens());
+        preferences.setContextResponseReserveTokens(newPrefs.getContextResponseReserveTokens());
+        preferences.setSummaryEnabled(newPrefs.isSummaryEnabled());
+        preferences.setSummaryThresholdTokens(newPrefs.getSummaryThresholdTokens());
+        preferences.setTokenizerDownloadEnabled(newPrefs.isTokenizerDownloadEnabled());
+        preferences.setStreamFirstTokenTimeoutMs(newPrefs.getStreamFirstTokenTimeoutMs());
+        preferences.setStreamIdleTimeoutMs(newPrefs.getStreamIdleTimeoutMs());
+        preferences.setStreamMaxRetries(newPrefs.getStreamMaxRetries());
+        preferences.setCircuitBreakerEnabled(newPrefs.isCircuitBreakerEnabled());
+        preferences.setCircuitBreakerFallback(newPrefs.isCircuitBreakerFallback());
+        preferences.setCircuitBreakerSlowCallMs(newPrefs.getCircuitBreakerSlowCallMs());
     }
 
     public String getTheme() {
@@ -7,5 +7,9 @@ import java.util.function.Consumer;
 
 public interface AIService {
 
-    CompletableFuture<String> send(List<Message> messages, String model, Consumer<String> onChunk);
-}
\ No newline at end of file
+    CompletableFuture<String> send(ChatRequest request, Consumer<String> onChunk);
+
+    default CompletableFuture<String> send(List<Message> messages, String model, Consumer<String> onChunk) {
+        return send(new ChatRequest(ChatRequest.NO_CONVERSATION, messages, model), onChunk);
+    }
+}
@@ -1,69 +1,268 @@
 package com.lj.aichatapp.service.ai;
 
+import com.lj.aichatapp.infrastructure.concurrent.AppExecutors;
 import com.lj.aichatapp.models.Message;
 import com.lj.aichatapp.models.MessageRole;
 import com.lj.aichatapp.models.UserPreferences;
-import com.lj.aichatapp.service.ai.providers.GroqService;
-import com.lj.aichatapp.service.ai.providers.OllamaService;
-import com.lj.aichatapp.service.ai.providers.OpenRouterService;
+import com.lj.aichatapp.service.ai.providers.OpenRouterRouting;
+import com.lj.aichatapp.utils.Durations;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
 public class AIServiceManager {
 
+    private static final long MIN_KEEP_ALIVE_REFRESH_MS = 60_000;
+    private static final long MAX_KEEP_ALIVE_REFRESH_MS = 10 * 60_000;
+
     private final UserPreferences prefs;
+    private final ProviderRegistry registry;
+    private final ResponseCache responseCache;
+    private final RequestCoalescer coalescer = new RequestCoalescer();
+    private final LatencyTracker latencyTracker = new LatencyTracker();
+    private final RequestHedger hedger;
+    private final LatencyRouter router;
+    private final RequestScheduler scheduler;
+    private final StreamWatchdog watchdog;
+    private final CircuitBreaker circuitBreaker;
+    private final AIService pipeline;
+    private final ScheduledExecutorService keepAliveTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "ollama-keep-alive");
+        t.setDaemon(true);
+        return t;
+    });
+    private volatile long lastKeepAlive;
 
-    public AIServiceManager(UserPreferences prefs) {
+    public AIServiceManager(UserPreferences prefs, ResponseCache responseCache, AppExecutors executors) {
         this.prefs = prefs;
+        this.registry = new ProviderRegistry(prefs, executors);
+        this.responseCache = responseCache;
+        this.hedger = new RequestHedger(prefs, latencyTracker);
+        this.router = new LatencyRouter(prefs, executors.io());
+        this.scheduler = new RequestScheduler(prefs);
+        this.watchdog = new StreamWatchdog(prefs);
+        this.circuitBreaker = new CircuitBreaker(prefs);
+
+        AIService networkStage = (request, onChunk) -> registry.get(request.getProvider())
+                .send(request, latencyTracker.measuring(request, onChunk));
+        AIService watchedStage = (request, onChunk) -> {
+            request.markDispatched();
+            return watchdog.send(request, onChunk, networkStage);
+        };
+        AIService rateLimitedStage = (request, onChunk) -> registry.getRateLimiter().send(request, onChunk, watchedStage);
+        AIService scheduledStage = (request, onChunk) -> scheduler.send(request, onChunk, rateLimitedStage);
+        AIService providerStage = (request, onChunk) -> router.record(request, onChunk, scheduledStage);
+        AIService breakerStage = (request, onChunk) -> circuitBreaker.send(request, onChunk, providerStage);
+        AIService hedgingStage = (request, onChunk) -> hedger.send(request, onChunk, breakerStage);
+        AIService coalescingStage = (request, onChunk) -> coalescer.send(request, onChunk, hedgingStage);
+        this.pipeline = (request, onChunk) -> responseCache.send(request, onChunk, coalescingStage);
     }
 
     public UserPreferences getPrefs() {
         return prefs;
     }
 
+    public ResponseCache getResponseCache() {
+        return responseCache;
+    }
+
+    public RequestHedger getHedger() {
+        return hedger;
+    }
+
+    public RequestScheduler getScheduler() {
+        return scheduler;
+    }
+
+    public LatencyRouter getRouter() {
+        return router;
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public OpenRouterRouting getOpenRouterRouting() {
+        return registry.getOpenRouterRouting();
+    }
+
+    public LatencyTracker getLatencyTracker() {
+        return latencyTracker;
+    }
+
+    public ProviderRegistry getRegistry() {
+        return registry;
+    }
+
     public AIService getProvider() {
+        return registry.get(prefs.getProvider());
+    }
+
+    public CompletableFuture<Void> warmUp() {
+        ChatRequest target = resolveTarget();
+        lastKeepAlive = System.currentTimeMillis();
+        return registry.warmUp(target.getProvider(), target.getModel());
+    }
+
+    /**
+     * Periodically renews Ollama's keep-alive for the selected model while the
+     * app is open, so it is not unloaded between messages.
+     */
+    public void startKeepAlive() {
+        keepAliveTimer.scheduleWithFixedDelay(() -> {
+            long interval = keepAliveRefreshMs();
+            if (interval <= 0 || System.currentTimeMillis() - lastKeepAlive < interval) {
+                return;
+            }
+            ChatRequest target = resolveTarget();
+            if (prefs.isOllamaPreloadEnabled() && ProviderRegistry.OLLAMA.equals(target.getProvider())) {
+                lastKeepAlive = System.currentTimeMillis();
+                registry.refreshOllama(target.getModel());
+            }
+        }, MIN_KEEP_ALIVE_REFRESH_MS, MIN_KEEP_ALIVE_REFRESH_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private long keepAliveRefreshMs() {
+        String keepAlive = prefs.getOllamaKeepAlive();
+        if (keepAlive == null || keepAlive.isBlank()) {
+            return MAX_KEEP_ALIVE_REFRESH_MS;
+        }
+        Long millis = Durations.parseMillis(keepAlive);
+        if (millis == null) {
+            try {
+                millis = Long.parseLong(keepAlive.trim()) * 1000;
+            } catch (NumberFormatException e) {
+                return MAX_KEEP_ALIVE_REFRESH_MS;
+            }
+        }
+        if (millis == 0) {
+            return 0;
+        }
+        if (millis < 0) {
+            // Loaded forever, but Ollama may have been restarted in the meantime.
+            return MAX_KEEP_ALIVE_REFRESH_MS;
+        }
+        return Math.max(MIN_KEEP_ALIVE_REFRESH_MS, Math.min(MAX_KEEP_ALIVE_REFRESH_MS, millis - MIN_KEEP_ALIVE_REFRESH_MS));
+    }
+
+    /**
+     * Provider and model the next interactive message will go to.
+     */
+    public ChatRequest resolveTarget() {
         String provider = prefs.getProvider();
-        if (provider == null) provider = "Ollama";
+        String model = prefs.getModel();
+        if (LatencyRouter.isAuto(provider)) {
+            ChatRequest choice = router.choose();
+            provider = choice != null ? choice.getProvider() : ProviderRegistry.OLLAMA;
+            model = choice != null ? choice.getModel() : null;
+        }
+        if (model == null || "default".equalsIgnoreCase(model) || model.isBlank()) {
+            model = defaultModelFor(provider);
+        }
+        ChatRequest target = new ChatRequest(ChatRequest.NO_CONVERSATION, List.of(), model);
+        target.setProvider(ProviderRegistry.normalize(provider));
+        return target;
+    }
 
-        switch (provider.toLowerCase()) {
-            case "ollama":
-                return new OllamaService(prefs);
-            case "openrouter":
-                return new OpenRouterService(prefs);
-            case "groq":
-                return new GroqService(prefs);
-            default:
-                return new OpenRouterService(prefs);
+    public CompletableFuture<Map<String, Double>> calibrateOllama(String model) {
+        return registry.calibrateOllama(model);
+    }
+
+    public void shutdown() {
+        keepAliveTimer.shutdownNow();
+        hedger.shutdown();
+        watchdog.shutdown();
+        registry.shutdown();
+        router.save();
+    }
+
+    public void invalidateConversation(int conversationId) {
+        registry.getPayloadCache().invalidate(conversationId);
+        registry.getOllamaContexts().invalidate(conversationId);
+        if (registry.getOllamaHosts() != null) {
+            registry.getOllamaHosts().forget(conversationId);
         }
     }
 
     public CompletableFuture<String> send(List<Message> conversation, String model, Consumer<String> onChunkReceived) {
-        String actualModel = model;
-        if (actualModel == null || "default".equalsIgnoreCase(actualModel) || actualModel.isBlank()) {
-            String provider = prefs.getProvider();
-            if (provider == null) provider = "OpenRouter";
-
-            switch (provider.toLowerCase()) {
-                case "groq":
-                    actualModel = "llama3-8b-8192";
-                    break;
-                case "openrouter":
-                    actualModel = "google/gemma-7b-it:free";
-                    break;
-                case "ollama":
-                default:
-                    actualModel = "llama3";
-                    break;
+        return send(new ChatRequest(ChatRequest.NO_CONVERSATION, conversation, model), onChunkReceived);
+    }
+
+    /**
+     * Lets the circuit breaker and the hedger check that a conversation fits
+     * the model they would reroute it to.
+     */
+    public void setContextBudget(ContextBudget contextBudget) {
+        circuitBreaker.setContextBudget(contextBudget);
+        hedger.setContextBudget(contextBudget);
+    }
+
+    /**
+     * Where the router and the circuit breaker find the models of a provider;
+     * by default the user's own model lists.
+     */
+    public void setModelSource(ModelSource modelSource) {
+        router.setModelSource(modelSource);
+        circuitBreaker.setModelSource(modelSource);
+    }
+
+    /**
+     * Sends {@code request} through the pipeline. A request that already names
+     * its provider (see {@link #resolveTarget()}) goes to that provider and
+     * model; otherwise the configured provider, or the router, decides.
+     */
+    public CompletableFuture<String> send(ChatRequest request, Consumer<String> onChunkReceived) {
+        String provider = request.getProvider() != null ? request.getProvider() : prefs.getProvider();
+        String actualModel = request.getModel();
+
+        if (request.getProvider() == null && LatencyRouter.isAuto(provider)) {
+            ChatRequest choice = router.choose();
+            if (choice != null) {
+                provider = choice.getProvider();
+                actualModel = choice.getModel();
+            } else {
+                provider = ProviderRegistry.OLLAMA;
+                actualModel = null;
             }
         }
+
+        if (actualModel == null || "default".equalsIgnoreCase(actualModel) || actualModel.isBlank()) {
+            actualModel = defaultModelFor(provider);
+        }
         
-        List<Message> conversationWithSystemPrompt = new ArrayList<>();
-        conversationWithSystemPrompt.add(new Message(MessageRole.SYSTEM, prefs.getSystemPrompt()));
-        conversationWithSystemPrompt.addAll(conversation);
-        
-        return getProvider().send(conversationWithSystemPrompt, actualModel, onChunkReceived);
+        List<Message> conversationWithSystemPrompt = request.getMessages();
+        if (conversationWithSystemPrompt.isEmpty() || conversationWithSystemPrompt.get(0).getRole() != MessageRole.SYSTEM) {
+            conversationWithSystemPrompt = new ArrayList<>();
+            conversationWithSystemPrompt.add(new Message(MessageRole.SYSTEM, prefs.getSystemPrompt()));
+            conversationWithSystemPrompt.addAll(request.getMessages());
+        }
+
+        ChatRequest resolved = new ChatRequest(request.getConversationId(), conversationWithSystemPrompt, actualModel);
+        resolved.setProvider(ProviderRegistry.normalize(provider));
+        resolved.setStatusListener(request.getStatusListener());
+        resolved.setPriority(request.getPriority());
+        resolved.setPromptTokens(request.getPromptTokens());
+
+        return pipeline.send(resolved, onChunkReceived);
+    }
+
+    private static String defaultModelFor(String provider) {
+        if (provider == null) provider = "OpenRouter";
+
+        switch (provider.toLowerCase()) {
+            case "groq":
+                return "llama3-8b-8192";
+            case "openrouter":
+                return "google/gemma-7b-it:free";
+            case "ollama":
+            default:
+                return "llama3";
+        }
     }
-}
\ No newline at end of file
+}
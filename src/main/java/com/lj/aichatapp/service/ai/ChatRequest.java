@@ -0,0 +1,131 @@
+package com.lj.aichatapp.service.ai;
+
+import com.lj.aichatapp.models.Message;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * A single chat completion request as it travels from {@code ChatService}
+ * through {@link AIServiceManager} to a provider.
+ */
+public class ChatRequest {
+
+    public static final int NO_CONVERSATION = -1;
+
+    private final int conversationId;
+    private final List<Message> messages;
+    private String provider;
+    private String model;
+    private Consumer<String> statusListener;
+    private RequestPriority priority = RequestPriority.INTERACTIVE;
+    private int promptTokens;
+    private volatile long dispatchedAt;
+    private volatile long modelLoadNanos;
+    private volatile boolean substituted;
+
+    public ChatRequest(int conversationId, List<Message> messages, String model) {
+        this.conversationId = conversationId;
+        this.messages = messages;
+        this.model = model;
+    }
+
+    public int getConversationId() {
+        return conversationId;
+    }
+
+    public List<Message> getMessages() {
+        return messages;
+    }
+
+    public String getProvider() {
+        return provider;
+    }
+
+    public void setProvider(String provider) {
+        this.provider = provider;
+    }
+
+    public String getModel() {
+        return model;
+    }
+
+    public void setModel(String model) {
+        this.model = model;
+    }
+
+    public RequestPriority getPriority() {
+        return priority;
+    }
+
+    public void setPriority(RequestPriority priority) {
+        this.priority = priority == null ? RequestPriority.INTERACTIVE : priority;
+    }
+
+    /**
+     * Estimated size of the messages in tokens, or 0 when unknown.
+     */
+    public int getPromptTokens() {
+        return promptTokens;
+    }
+
+    public void setPromptTokens(int promptTokens) {
+        this.promptTokens = promptTokens;
+    }
+
+    /**
+     * {@link System#nanoTime()} at which the request last left the local
+     * scheduler and rate limiter for the provider, or 0 while it has not.
+     * Latency measured from here is the provider's, not time spent queued.
+     */
+    public long getDispatchedAt() {
+        return dispatchedAt;
+    }
+
+    void markDispatched() {
+        dispatchedAt = System.nanoTime();
+    }
+
+    /**
+     * Time the provider reported spending on loading the model before it
+     * could answer (Ollama's {@code load_duration}), or 0.
+     */
+    public long getModelLoadNanos() {
+        return modelLoadNanos;
+    }
+
+    public void setModelLoadNanos(long modelLoadNanos) {
+        this.modelLoadNanos = modelLoadNanos;
+    }
+
+    /**
+     * Whether the answer came from another provider or model than this
+     * request names, for example a circuit breaker fallback or a winning hedge.
+     */
+    public boolean isSubstituted() {
+        return substituted;
+    }
+
+    void markSubstituted() {
+        substituted = true;
+    }
+
+    public Consumer<String> getStatusListener() {
+        return statusListener;
+    }
+
+    /**
+     * Receives short human readable progress notes (for example rate limit waits)
+     * while the request has not started streaming. {@code null} clears the note.
+     */
+    public void setStatusListener(Consumer<String> statusListener) {
+        this.statusListener = statusListener;
+    }
+
+    public void reportStatus(String status) {
+        Consumer<String> listener = statusListener;
+        if (listener != null) {
+            listener.accept(status);
+        }
+    }
+}
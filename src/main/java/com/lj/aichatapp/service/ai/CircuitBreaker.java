@@ -0,0 +1,305 @@
+package com.lj.aichatapp.service.ai;
+
+import com.lj.aichatapp.models.UserPreferences;
+import com.lj.aichatapp.service.ai.providers.ProviderHttpException;
+import com.lj.aichatapp.utils.FutureUtils;
+import com.lj.aichatapp.utils.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * One circuit per provider and model. A circuit opens when at least half of
+ * its recent calls failed or were too slow to start; while open, calls fail at
+ * once or, for cloud providers, are answered by the local Ollama model instead.
+ * After a wait (doubling on every failed probe) a single probe request is let
+ * through; its outcome closes or reopens the circuit.
+ *
+ * <p>Client errors (4xx) do not count: a bad key or a rate limit is not an outage.
+ * Neither does time the request spent queued locally or the provider spent
+ * loading a cold model: the first token is timed from dispatch, minus the
+ * reported model load time. Slow calls to Ollama are not counted at all; on a
+ * CPU-only machine a long prompt alone can take longer than the threshold,
+ * and there is no other local provider to fall back to.
+ */
+public class CircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private static final int WINDOW = 20;
+    private static final int MIN_CALLS = 5;
+    private static final double FAILURE_THRESHOLD = 0.5;
+    private static final long INITIAL_OPEN_MS = 30_000;
+    private static final long MAX_OPEN_MS = 5 * 60_000;
+
+    private final UserPreferences prefs;
+    private final Map<String, Circuit> circuits = new ConcurrentHashMap<>();
+    private volatile Runnable stateListener;
+    private volatile ContextBudget contextBudget;
+    private volatile ModelSource modelSource;
+
+    public CircuitBreaker(UserPreferences prefs) {
+        this.prefs = prefs;
+        this.modelSource = provider -> prefs.getCustomModels().getOrDefault(provider, List.of());
+    }
+
+    /**
+     * Called after every state change, on the thread that caused it.
+     */
+    public void setStateListener(Runnable stateListener) {
+        this.stateListener = stateListener;
+    }
+
+    public void setContextBudget(ContextBudget contextBudget) {
+        this.contextBudget = contextBudget;
+    }
+
+    public void setModelSource(ModelSource modelSource) {
+        this.modelSource = modelSource;
+    }
+
+    public State getState(String provider, String model) {
+        Circuit circuit = circuits.get(key(provider, model));
+        return circuit != null ? circuit.state : State.CLOSED;
+    }
+
+    /**
+     * Short description of every circuit that is not closed, e.g.
+     * {@code openrouter/x unavailable}, or an empty list.
+     */
+    public List<String> describeOpenCircuits() {
+        List<String> result = new ArrayList<>();
+        for (Map.Entry<String, Circuit> entry : circuits.entrySet()) {
+            State state = entry.getValue().state;
+            if (state != State.CLOSED) {
+                result.add(entry.getKey().replace('|', '/') + (state == State.OPEN ? " unavailable" : " recovering"));
+            }
+        }
+        return result;
+    }
+
+    public CompletableFuture<String> send(ChatRequest request, Consumer<String> onChunk, AIService next) {
+        if (!prefs.isCircuitBreakerEnabled()) {
+            return next.send(request, onChunk);
+        }
+        String key = key(request.getProvider(), request.getModel());
+        Circuit circuit = circuits.computeIfAbsent(key, k -> new Circuit());
+        if (!circuit.tryAcquire(key)) {
+            return rejected(request, onChunk, next, circuit);
+        }
+
+        long[] firstChunkAt = {0};
+        Consumer<String> observing = onChunk == null ? null : chunk -> {
+            if (firstChunkAt[0] == 0) {
+                firstChunkAt[0] = System.nanoTime();
+            }
+            onChunk.accept(chunk);
+        };
+        CompletableFuture<String> future = next.send(request, observing);
+        future.whenComplete((response, error) -> {
+            if (future.isCancelled()) {
+                circuit.release();
+                return;
+            }
+            if (error != null) {
+                circuit.record(key, isFailure(FutureUtils.unwrap(error)) ? Outcome.FAILURE : Outcome.IGNORED);
+                return;
+            }
+            long first = firstChunkAt[0] != 0 ? firstChunkAt[0] : System.nanoTime();
+            long dispatched = request.getDispatchedAt() != 0 ? request.getDispatchedAt() : first;
+            long ttftMs = TimeUnit.NANOSECONDS.toMillis(first - dispatched - request.getModelLoadNanos());
+            boolean slow = onChunk != null && !ProviderRegistry.OLLAMA.equals(request.getProvider())
+                    && prefs.getCircuitBreakerSlowCallMs() > 0 && ttftMs > prefs.getCircuitBreakerSlowCallMs();
+            circuit.record(key, slow ? Outcome.FAILURE : Outcome.SUCCESS);
+        });
+        return future;
+    }
+
+    /**
+     * Reroutes a call to an open cloud circuit to the local Ollama model, if
+     * the conversation fits that model's context, or fails it without touching
+     * the network.
+     */
+    private CompletableFuture<String> rejected(ChatRequest request, Consumer<String> onChunk, AIService next, Circuit circuit) {
+        String fallbackModel = fallbackModel();
+        boolean cloud = !ProviderRegistry.OLLAMA.equals(request.getProvider());
+        if (cloud && prefs.isCircuitBreakerFallback() && fallbackModel != null
+                && getState(ProviderRegistry.OLLAMA, fallbackModel) != State.OPEN
+                && fits(request, fallbackModel)) {
+            Logger.info(String.format("%s/%s is unavailable, answering with %s/%s",
+                    request.getProvider(), request.getModel(), ProviderRegistry.OLLAMA, fallbackModel));
+            request.markSubstituted();
+            request.reportStatus("Answering with local " + fallbackModel + " while " + request.getProvider() + " is unavailable...");
+            ChatRequest local = new ChatRequest(request.getConversationId(), request.getMessages(), fallbackModel);
+            local.setProvider(ProviderRegistry.OLLAMA);
+            local.setPriority(request.getPriority());
+            local.setPromptTokens(request.getPromptTokens());
+            local.setStatusListener(request.getStatusListener());
+            return send(local, onChunk, next);
+        }
+        long seconds;
+        synchronized (circuit) {
+            seconds = Math.max(1, TimeUnit.MILLISECONDS.toSeconds(circuit.openUntil - System.currentTimeMillis()));
+        }
+        return FutureUtils.failed(new CircuitOpenException(String.format(
+                "%s/%s is failing, not sending requests to it for another %d s.", request.getProvider(), request.getModel(), seconds)));
+    }
+
+    private boolean fits(ChatRequest request, String fallbackModel) {
+        ContextBudget budget = contextBudget;
+        if (budget == null || budget.fits(request, ProviderRegistry.OLLAMA, fallbackModel)) {
+            return true;
+        }
+        Logger.info(String.format("Not falling back to %s/%s: ~%d prompt tokens exceed its context",
+                ProviderRegistry.OLLAMA, fallbackModel, request.getPromptTokens()));
+        return false;
+    }
+
+    private String fallbackModel() {
+        List<String> local = modelSource.modelsFor(ProviderRegistry.OLLAMA);
+        if (!local.isEmpty()) {
+            return local.get(0);
+        }
+        return null;
+    }
+
+    private static boolean isFailure(Throwable error) {
+        if (error instanceof CircuitOpenException) {
+            return false;
+        }
+        if (error instanceof ProviderHttpException) {
+            int status = ((ProviderHttpException) error).getStatusCode();
+            return status >= 500 || status == 408;
+        }
+        return true;
+    }
+
+    private static String key(String provider, String model) {
+        return ProviderRegistry.normalize(provider) + "|" + model;
+    }
+
+    private void changed(String key, State from, State to, String reason) {
+        Logger.info(String.format("Circuit %s: %s -> %s (%s)", key.replace('|', '/'), from, to, reason));
+        Runnable listener = stateListener;
+        if (listener != null) {
+            listener.run();
+        }
+    }
+
+    private enum Outcome { SUCCESS, FAILURE, IGNORED }
+
+    /**
+     * Raised instead of sending a request to a provider whose circuit is open.
+     */
+    public static class CircuitOpenException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public CircuitOpenException(String message) {
+            super(message);
+        }
+    }
+
+    private final class Circuit {
+        private final boolean[] failures = new boolean[WINDOW];
+        private int calls;
+        private int next;
+        private volatile State state = State.CLOSED;
+        private long openMs = INITIAL_OPEN_MS;
+        private long openUntil;
+        private boolean probing;
+
+        private boolean tryAcquire(String key) {
+            State from;
+            synchronized (this) {
+                from = state;
+                switch (state) {
+                    case CLOSED:
+                        return true;
+                    case OPEN:
+                        if (System.currentTimeMillis() < openUntil) {
+                            return false;
+                        }
+                        state = State.HALF_OPEN;
+                        probing = true;
+                        break;
+                    case HALF_OPEN:
+                    default:
+                        if (probing) {
+                            return false;
+                        }
+                        probing = true;
+                        return true;
+                }
+            }
+            changed(key, from, State.HALF_OPEN, "sending a probe request");
+            return true;
+        }
+
+        private void release() {
+            synchronized (this) {
+                if (state == State.HALF_OPEN) {
+                    probing = false;
+                }
+            }
+        }
+
+        private void record(String key, Outcome outcome) {
+            State from;
+            State to;
+            String reason;
+            synchronized (this) {
+                from = state;
+                if (state == State.HALF_OPEN) {
+                    probing = false;
+                    if (outcome == Outcome.IGNORED) {
+                        return;
+                    }
+                    if (outcome == Outcome.SUCCESS) {
+                        state = State.CLOSED;
+                        openMs = INITIAL_OPEN_MS;
+                        calls = 0;
+                        next = 0;
+                        reason = "probe succeeded";
+                    } else {
+                        openMs = Math.min(MAX_OPEN_MS, openMs * 2);
+                        open();
+                        reason = "probe failed, next probe in " + TimeUnit.MILLISECONDS.toSeconds(openMs) + " s";
+                    }
+                } else {
+                    if (outcome == Outcome.IGNORED || state == State.OPEN) {
+                        return;
+                    }
+                    failures[next] = outcome == Outcome.FAILURE;
+                    next = (next + 1) % WINDOW;
+                    calls = Math.min(WINDOW, calls + 1);
+                    int failed = 0;
+                    for (int i = 0; i < calls; i++) {
+                        if (failures[i]) {
+                            failed++;
+                        }
+                    }
+                    if (calls < MIN_CALLS || failed < calls * FAILURE_THRESHOLD) {
+                        return;
+                    }
+                    reason = String.format("%d of the last %d calls failed or were slow, probing in %d s",
+                            failed, calls, TimeUnit.MILLISECONDS.toSeconds(openMs));
+                    open();
+                }
+                to = state;
+            }
+            changed(key, from, to, reason);
+        }
+
+        private void open() {
+            state = State.OPEN;
+            openUntil = System.currentTimeMillis() + openMs;
+            calls = 0;
+            next = 0;
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.lj.aichatapp.service.ai;
+
+/**
+ * How many prompt tokens a provider and model can take, so a request can only
+ * be rerouted to a model its context window was built for.
+ */
+public interface ContextBudget {
+
+    int budgetFor(String provider, String model);
+
+    /**
+     * Whether {@code request}'s prompt fits {@code model} on {@code provider}.
+     * Requests whose size is unknown always fit.
+     */
+    default boolean fits(ChatRequest request, String provider, String model) {
+        return request.getPromptTokens() <= 0 || request.getPromptTokens() <= budgetFor(provider, model);
+    }
+}
@@ -0,0 +1,284 @@
+package com.lj.aichatapp.service.ai;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lj.aichatapp.infrastructure.preferences.PreferencesManager;
+import com.lj.aichatapp.models.UserPreferences;
+import com.lj.aichatapp.utils.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Backs the "Auto" provider option. Every provider stream feeds exponentially
+ * decayed statistics (time to first token, generation speed, error rate) per
+ * provider and model; {@link #choose()} picks the candidate with the lowest
+ * expected time to a typical answer that satisfies the user's constraints.
+ * Statistics are persisted so routing is informed right after a restart.
+ */
+public class LatencyRouter {
+
+    public static final String AUTO = "auto";
+
+    private static final String STATS_FILE_NAME = "router_stats.json";
+    private static final double ALPHA = 0.2;
+    private static final int SAVE_EVERY = 10;
+    private static final double TYPICAL_ANSWER_TOKENS = 300;
+    private static final double CHARS_PER_TOKEN = 4.0;
+
+    // Optimistic priors so that untried candidates get explored.
+    private static final double PRIOR_TTFT_MS = 1500;
+    private static final double PRIOR_TOKENS_PER_SECOND = 30;
+    // Excluded candidates get another chance once their statistics are this old.
+    private static final long RETRY_AFTER_MS = 5 * 60 * 1000;
+
+    private final UserPreferences prefs;
+    private final Executor io;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Map<String, Stats> stats = new ConcurrentHashMap<>();
+    private final AtomicInteger unsavedUpdates = new AtomicInteger();
+    private volatile String lastPick;
+    private volatile ModelSource modelSource;
+
+    public LatencyRouter(UserPreferences prefs, Executor io) {
+        this.prefs = prefs;
+        this.io = io;
+        this.modelSource = provider -> prefs.getCustomModels().getOrDefault(provider, List.of());
+        load();
+    }
+
+    public void setModelSource(ModelSource modelSource) {
+        this.modelSource = modelSource;
+    }
+
+    public static boolean isAuto(String provider) {
+        return provider != null && AUTO.equalsIgnoreCase(provider.trim());
+    }
+
+    /**
+     * Picks the best provider and model for the next request. Returns
+     * {@code null} when no candidate satisfies the constraints.
+     */
+    public ChatRequest choose() {
+        Candidate best = null;
+        double bestScore = Double.MAX_VALUE;
+        for (Candidate candidate : candidates()) {
+            Stats s = stats.get(candidate.key());
+            double ttft = s != null ? s.ttftMs : PRIOR_TTFT_MS;
+            double tps = s != null && s.tokensPerSecond > 0 ? s.tokensPerSecond : PRIOR_TOKENS_PER_SECOND;
+            double errorRate = s != null ? s.errorRate : 0;
+
+            boolean stale = s == null || System.currentTimeMillis() - s.updatedAt > RETRY_AFTER_MS;
+            if (!stale && prefs.getAutoRouteMaxTtftMs() > 0 && ttft > prefs.getAutoRouteMaxTtftMs()) {
+                continue;
+            }
+            if (!stale && errorRate > prefs.getAutoRouteMaxErrorRate()) {
+                continue;
+            }
+
+            double expectedMs = ttft + TYPICAL_ANSWER_TOKENS / tps * 1000;
+            double score = expectedMs / Math.max(0.05, 1 - errorRate);
+            if (score < bestScore) {
+                bestScore = score;
+                best = candidate;
+            }
+        }
+
+        if (best == null) {
+            return null;
+        }
+        String pick = best.key();
+        if (!pick.equals(lastPick)) {
+            lastPick = pick;
+            Logger.info(String.format("Auto router picked %s/%s (expected %.0f ms)", best.provider, best.model, bestScore));
+        }
+        ChatRequest choice = new ChatRequest(ChatRequest.NO_CONVERSATION, List.of(), best.model);
+        choice.setProvider(best.provider);
+        return choice;
+    }
+
+    /**
+     * Sends through {@code next} and folds the observed latency, speed and
+     * outcome into the statistics of the request's provider and model. Time to
+     * first token counts from {@link ChatRequest#getDispatchedAt()}, so waits
+     * in the local queue or behind a 429 do not count against the provider.
+     */
+    public CompletableFuture<String> record(ChatRequest request, Consumer<String> onChunk, AIService next) {
+        long start = System.nanoTime();
+        long[] firstChunkAt = {0};
+        Consumer<String> observing = chunk -> {
+            if (firstChunkAt[0] == 0) {
+                firstChunkAt[0] = System.nanoTime();
+            }
+            if (onChunk != null) {
+                onChunk.accept(chunk);
+            }
+        };
+
+        CompletableFuture<String> future = next.send(request, observing);
+        future.whenComplete((response, error) -> {
+            if (future.isCancelled()) {
+                return;
+            }
+            String key = request.getProvider() + "|" + request.getModel();
+            Stats s = stats.computeIfAbsent(key, k -> new Stats());
+            if (error != null) {
+                s.recordError();
+            } else {
+                long end = System.nanoTime();
+                long first = firstChunkAt[0] != 0 ? firstChunkAt[0] : end;
+                long dispatched = request.getDispatchedAt() != 0 ? request.getDispatchedAt() : start;
+                double ttftMs = (first - dispatched) / 1_000_000.0;
+                double generationSeconds = (end - first) / 1_000_000_000.0;
+                double tokens = response != null ? response.length() / CHARS_PER_TOKEN : 0;
+                double tps = generationSeconds > 0.05 ? tokens / generationSeconds : 0;
+                s.recordSuccess(ttftMs, tps);
+            }
+            if (unsavedUpdates.incrementAndGet() >= SAVE_EVERY) {
+                CompletableFuture.runAsync(this::save, io);
+            }
+        });
+        return future;
+    }
+
+    public Map<String, Stats> getStats() {
+        return stats;
+    }
+
+    public synchronized void save() {
+        unsavedUpdates.set(0);
+        try {
+            PreferencesManager.ensureAppDirectory();
+            mapper.writeValue(statsFile(), stats);
+        } catch (IOException e) {
+            Logger.error("Failed to save router statistics", e);
+        }
+    }
+
+    private void load() {
+        File file = statsFile();
+        if (!file.exists()) {
+            return;
+        }
+        try {
+            Map<String, Stats> loaded = mapper.readValue(file, new TypeReference<Map<String, Stats>>() {});
+            stats.putAll(loaded);
+        } catch (IOException e) {
+            Logger.error("Failed to load router statistics", e);
+        }
+    }
+
+    private static File statsFile() {
+        return PreferencesManager.getAppDirectory().resolve(STATS_FILE_NAME).toFile();
+    }
+
+    private List<Candidate> candidates() {
+        List<Candidate> result = new ArrayList<>();
+        List<String> allowed = prefs.getAutoRouteModels();
+        for (String provider : new String[]{ProviderRegistry.OLLAMA, ProviderRegistry.GROQ, ProviderRegistry.OPENROUTER}) {
+            boolean cloud = !ProviderRegistry.OLLAMA.equals(provider);
+            if (cloud && (!prefs.isAutoRouteAllowCloud() || prefs.getProviderKeys().getOrDefault(provider, "").isBlank())) {
+                continue;
+            }
+            for (String model : modelSource.modelsFor(provider)) {
+                Candidate candidate = new Candidate(provider, model);
+                if (allowed == null || allowed.isEmpty() || allowed.contains(candidate.key())) {
+                    result.add(candidate);
+                }
+            }
+        }
+        return result;
+    }
+
+    private static final class Candidate {
+        private final String provider;
+        private final String model;
+
+        private Candidate(String provider, String model) {
+            this.provider = provider;
+            this.model = model;
+        }
+
+        String key() {
+            return provider + "|" + model;
+        }
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Stats {
+        private double ttftMs;
+        private double tokensPerSecond;
+        private double errorRate;
+        private long samples;
+        private long updatedAt;
+
+        synchronized void recordSuccess(double ttft, double tps) {
+            ttftMs = samples == 0 ? ttft : ewma(ttftMs, ttft);
+            if (tps > 0) {
+                tokensPerSecond = tokensPerSecond == 0 ? tps : ewma(tokensPerSecond, tps);
+            }
+            errorRate = samples == 0 ? 0 : ewma(errorRate, 0);
+            samples++;
+            updatedAt = System.currentTimeMillis();
+        }
+
+        synchronized void recordError() {
+            errorRate = samples == 0 ? 1 : ewma(errorRate, 1);
+            samples++;
+            updatedAt = System.currentTimeMillis();
+        }
+
+        private static double ewma(double current, double sample) {
+            return current + ALPHA * (sample - current);
+        }
+
+        public double getTtftMs() {
+            return ttftMs;
+        }
+
+        public void setTtftMs(double ttftMs) {
+            this.ttftMs = ttftMs;
+        }
+
+        public double getTokensPerSecond() {
+            return tokensPerSecond;
+        }
+
+        public void setTokensPerSecond(double tokensPerSecond) {
+            this.tokensPerSecond = tokensPerSecond;
+        }
+
+        public double getErrorRate() {
+            return errorRate;
+        }
+
+        public void setErrorRate(double errorRate) {
+            this.errorRate = errorRate;
+        }
+
+        public long getSamples() {
+            return samples;
+        }
+
+        public void setSamples(long samples) {
+            this.samples = samples;
+        }
+
+        public long getUpdatedAt() {
+            return updatedAt;
+        }
+
+        public void setUpdatedAt(long updatedAt) {
+            this.updatedAt = updatedAt;
+        }
+    }
+}
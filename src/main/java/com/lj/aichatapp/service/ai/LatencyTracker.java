@@ -0,0 +1,75 @@
+package com.lj.aichatapp.service.ai;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Keeps a sliding window of recent time-to-first-token samples per provider and
+ * model, used to derive percentile based timeouts.
+ */
+public class LatencyTracker {
+
+    private static final int WINDOW = 50;
+    private static final int MIN_SAMPLES = 5;
+
+    private final Map<String, Window> windows = new ConcurrentHashMap<>();
+
+    public void recordFirstToken(String provider, String model, long millis) {
+        windows.computeIfAbsent(key(provider, model), k -> new Window()).add(millis);
+    }
+
+    /**
+     * Returns the given percentile (0-1) of recent first-token latencies, or
+     * {@code fallback} until enough samples have been collected.
+     */
+    public long percentile(String provider, String model, double percentile, long fallback) {
+        Window window = windows.get(key(provider, model));
+        return window != null ? window.percentile(percentile, fallback) : fallback;
+    }
+
+    /**
+     * Wraps {@code onChunk} so that the delay until its first invocation is
+     * recorded for the request's provider and model.
+     */
+    public Consumer<String> measuring(ChatRequest request, Consumer<String> onChunk) {
+        long start = System.nanoTime();
+        boolean[] seen = new boolean[1];
+        return chunk -> {
+            if (!seen[0]) {
+                seen[0] = true;
+                recordFirstToken(request.getProvider(), request.getModel(), (System.nanoTime() - start) / 1_000_000);
+            }
+            if (onChunk != null) {
+                onChunk.accept(chunk);
+            }
+        };
+    }
+
+    private static String key(String provider, String model) {
+        return provider + "|" + model;
+    }
+
+    private static final class Window {
+        private final long[] samples = new long[WINDOW];
+        private int count;
+        private int next;
+
+        synchronized void add(long value) {
+            samples[next] = value;
+            next = (next + 1) % WINDOW;
+            count = Math.min(count + 1, WINDOW);
+        }
+
+        synchronized long percentile(double percentile, long fallback) {
+            if (count < MIN_SAMPLES) {
+                return fallback;
+            }
+            long[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percentile * count) - 1;
+            return sorted[Math.max(0, Math.min(count - 1, index))];
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.lj.aichatapp.service.ai;
+
+import java.util.List;
+
+/**
+ * Models of a provider that the auto router may route to and the circuit
+ * breaker may fall back to.
+ */
+public interface ModelSource {
+
+    List<String> modelsFor(String provider);
+}
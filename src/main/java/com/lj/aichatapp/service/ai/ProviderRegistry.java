@@ -0,0 +1,262 @@
+package com.lj.aichatapp.service.ai;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.lj.aichatapp.infrastructure.concurrent.AppExecutors;
+import com.lj.aichatapp.infrastructure.http.HttpClientManager;
+import com.lj.aichatapp.models.Message;
+import com.lj.aichatapp.models.MessageRole;
+import com.lj.aichatapp.models.UserPreferences;
+import com.lj.aichatapp.service.ai.codec.PayloadCache;
+import com.lj.aichatapp.service.ai.providers.GroqService;
+import com.lj.aichatapp.service.ai.providers.OllamaContextCache;
+import com.lj.aichatapp.service.ai.providers.OllamaHostPool;
+import com.lj.aichatapp.service.ai.providers.OllamaService;
+import com.lj.aichatapp.service.ai.providers.OllamaTuning;
+import com.lj.aichatapp.service.ai.providers.OpenAiCompatibleService;
+import com.lj.aichatapp.service.ai.providers.OpenRouterRouting;
+import com.lj.aichatapp.service.ai.providers.OpenRouterService;
+import com.lj.aichatapp.utils.Logger;
+
+import java.net.http.HttpClient;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps one long-lived {@link AIService} per provider. An instance is rebuilt only
+ * when the preferences it was created from (host or API key) change.
+ */
+public class ProviderRegistry {
+
+    public static final String OLLAMA = "ollama";
+    public static final String OPENROUTER = "openrouter";
+    public static final String GROQ = "groq";
+
+    private static final String GROQ_BASE_URL = "https://api.groq.com/openai/v1";
+    private static final String OPENROUTER_BASE_URL = "https://openrouter.ai/api/v1";
+
+    private final UserPreferences prefs;
+    private final AppExecutors executors;
+    private final HttpClient http;
+    private final ObjectMapper mapper;
+    private final PayloadCache payloadCache = new PayloadCache();
+    private final OllamaContextCache ollamaContexts = new OllamaContextCache();
+    private final RateLimiter rateLimiter = new RateLimiter(request -> bucketKey(request.getProvider()));
+    private final OpenRouterRouting openRouterRouting;
+    private final Map<String, Entry> providers = new ConcurrentHashMap<>();
+    private volatile OllamaHostPool ollamaHosts;
+
+    public ProviderRegistry(UserPreferences prefs, AppExecutors executors) {
+        this.prefs = prefs;
+        this.executors = executors;
+        this.http = HttpClientManager.getInstance().getClient();
+        this.mapper = new ObjectMapper();
+        this.mapper.registerModule(new JavaTimeModule());
+        this.openRouterRouting = new OpenRouterRouting(prefs, executors.io());
+    }
+
+    public static String normalize(String provider) {
+        if (provider == null || provider.isBlank()) {
+            return OLLAMA;
+        }
+        String key = provider.toLowerCase();
+        switch (key) {
+            case OLLAMA:
+            case GROQ:
+            case OPENROUTER:
+                return key;
+            default:
+                return OPENROUTER;
+        }
+    }
+
+    /**
+     * OpenAI style API root of a cloud provider, without a trailing slash. A base
+     * URL in the preferences wins over the public endpoint, so the client can be
+     * pointed at a proxy or a local stand-in server.
+     */
+    public static String baseUrl(UserPreferences prefs, String provider) {
+        String key = normalize(provider);
+        String override = prefs.getProviderBaseUrls() != null ? prefs.getProviderBaseUrls().get(key) : null;
+        String base = override != null && !override.isBlank() ? override.trim()
+                : GROQ.equals(key) ? GROQ_BASE_URL : OPENROUTER_BASE_URL;
+        return base.endsWith("/") ? base.substring(0, base.length() - 1) : base;
+    }
+
+    public AIService get(String provider) {
+        String key = normalize(provider);
+        String fingerprint = fingerprint(key);
+        Entry entry = providers.compute(key, (k, existing) -> {
+            if (existing != null && existing.fingerprint.equals(fingerprint)) {
+                return existing;
+            }
+            if (existing != null) {
+                Logger.info("Provider configuration changed, rebuilding " + k + " client.");
+            }
+            AIService service = create(k);
+            if (service instanceof OpenAiCompatibleService) {
+                String bucket = bucketKey(k);
+                ((OpenAiCompatibleService) service).setResponseListener(
+                        (status, headers) -> rateLimiter.update(bucket, status, headers));
+            }
+            return new Entry(fingerprint, service);
+        });
+        return entry.service;
+    }
+
+    public PayloadCache getPayloadCache() {
+        return payloadCache;
+    }
+
+    public OllamaContextCache getOllamaContexts() {
+        return ollamaContexts;
+    }
+
+    public RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    public OpenRouterRouting getOpenRouterRouting() {
+        return openRouterRouting;
+    }
+
+    /**
+     * Hosts of the current Ollama client, or {@code null} before it is first used.
+     */
+    public OllamaHostPool getOllamaHosts() {
+        return ollamaHosts;
+    }
+
+    public void shutdown() {
+        rateLimiter.shutdown();
+        OllamaHostPool pool = ollamaHosts;
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    public void invalidate() {
+        providers.clear();
+        payloadCache.clear();
+        ollamaContexts.clear();
+    }
+
+    /**
+     * Pre-connects to the given provider and warms up Jackson so the
+     * first chat turn does not pay for handshakes and serializer initialization.
+     * For Ollama the model itself is loaded too, when preloading is enabled.
+     */
+    public CompletableFuture<Void> warmUp(String provider, String model) {
+        String key = normalize(provider);
+        AIService service = get(key);
+        CompletableFuture<Void> warm = CompletableFuture.runAsync(() -> {
+            try {
+                mapper.writeValueAsString(new Message(MessageRole.SYSTEM, "warm-up"));
+            } catch (Exception e) {
+                Logger.info("Jackson warm-up failed: " + e.getMessage());
+            }
+        }, executors.cpu()).thenCompose(v -> HttpClientManager.getInstance().preconnect(endpoint(key)));
+        if (service instanceof OllamaService && prefs.isOllamaPreloadEnabled() && model != null) {
+            warm = warm.thenCompose(v -> ((OllamaService) service).preload(model));
+        }
+        return warm;
+    }
+
+    /**
+     * Renews the keep-alive of the given Ollama model.
+     */
+    public CompletableFuture<Void> refreshOllama(String model) {
+        return ((OllamaService) get(OLLAMA)).preload(model);
+    }
+
+    /**
+     * Measures generation speed of {@code model} under every tuning profile, one
+     * profile at a time so the runs do not compete for the CPU.
+     */
+    public CompletableFuture<Map<String, Double>> calibrateOllama(String model) {
+        OllamaService ollama = (OllamaService) get(OLLAMA);
+        Map<String, Double> results = new LinkedHashMap<>();
+        CompletableFuture<Void> chain = CompletableFuture.completedFuture(null);
+        for (String profile : OllamaTuning.PROFILES) {
+            chain = chain.thenCompose(v -> ollama.calibrate(model, new OllamaTuning(profile)))
+                    .thenAccept(tps -> results.put(profile, tps));
+        }
+        return chain.thenApply(v -> results);
+    }
+
+    private String endpoint(String key) {
+        switch (key) {
+            case GROQ:
+            case OPENROUTER:
+                return baseUrl(prefs, key) + "/chat/completions";
+            case OLLAMA:
+            default:
+                return prefs.getOllamaHost();
+        }
+    }
+
+    /**
+     * Rate limits apply per provider and API key; the key itself is only kept as a hash.
+     */
+    private String bucketKey(String provider) {
+        String key = normalize(provider);
+        return key + "|" + Integer.toHexString(fingerprint(key).hashCode());
+    }
+
+    private String fingerprint(String key) {
+        switch (key) {
+            case OLLAMA:
+                return String.join(",", ollamaHostUrls(prefs)) + "|" + Objects.toString(prefs.getOllamaKeepAlive(), "")
+                        + "|" + Objects.toString(prefs.getOllamaProfile(), "") + "|" + prefs.isOllamaContextReuse();
+            default:
+                return Objects.toString(prefs.getProviderKeys().get(key), "") + "|" + baseUrl(prefs, key);
+        }
+    }
+
+    private AIService create(String key) {
+        switch (key) {
+            case OLLAMA:
+                OllamaHostPool previous = ollamaHosts;
+                if (previous != null) {
+                    previous.shutdown();
+                }
+                ollamaHosts = new OllamaHostPool(ollamaHostUrls(prefs), http, mapper);
+                return new OllamaService(ollamaHosts, prefs.getOllamaKeepAlive(),
+                        new OllamaTuning(prefs.getOllamaProfile()), prefs.isOllamaContextReuse() ? ollamaContexts : null,
+                        http, executors.stream(), mapper, payloadCache);
+            case GROQ:
+                return new GroqService(prefs.getProviderKeys().getOrDefault(GROQ, ""), endpoint(GROQ), http, mapper, payloadCache);
+            case OPENROUTER:
+            default:
+                return new OpenRouterService(prefs.getProviderKeys().getOrDefault(OPENROUTER, ""), endpoint(OPENROUTER), http, mapper, payloadCache,
+                        openRouterRouting);
+        }
+    }
+
+    /**
+     * The Ollama host followed by the additional hosts, as configured.
+     */
+    public static List<String> ollamaHostUrls(UserPreferences prefs) {
+        List<String> urls = new ArrayList<>();
+        urls.add(Objects.toString(prefs.getOllamaHost(), ""));
+        if (prefs.getOllamaHosts() != null) {
+            urls.addAll(prefs.getOllamaHosts());
+        }
+        return urls;
+    }
+
+    private static final class Entry {
+        private final String fingerprint;
+        private final AIService service;
+
+        private Entry(String fingerprint, AIService service) {
+            this.fingerprint = fingerprint;
+            this.service = service;
+        }
+    }
+}
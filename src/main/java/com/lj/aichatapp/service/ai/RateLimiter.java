@@ -0,0 +1,334 @@
+package com.lj.aichatapp.service.ai;
+
+import com.lj.aichatapp.models.Message;
+import com.lj.aichatapp.service.ai.providers.ProviderHttpException;
+import com.lj.aichatapp.utils.Durations;
+import com.lj.aichatapp.utils.FutureUtils;
+import com.lj.aichatapp.utils.Logger;
+
+import java.net.http.HttpHeaders;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Client side view of each provider's rate limits, kept per provider and API key.
+ * Request and token budgets are refreshed from {@code x-ratelimit-*} headers and
+ * {@code retry-after}; when a budget is exhausted (or the provider answers 429)
+ * requests wait in a FIFO queue instead of failing, and are dispatched as soon
+ * as the budget resets. Waiting requests get a countdown through
+ * {@link ChatRequest#reportStatus(String)}.
+ */
+public class RateLimiter {
+
+    private static final int MAX_RETRIES = 5;
+    private static final long INITIAL_BACKOFF_MS = 2000;
+    private static final long MAX_BACKOFF_MS = 60_000;
+    private static final long STATUS_INTERVAL_MS = 1000;
+    private static final double CHARS_PER_TOKEN = 4.0;
+
+    private final Function<ChatRequest, String> bucketKey;
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService timer;
+
+    public RateLimiter(Function<ChatRequest, String> bucketKey) {
+        this.bucketKey = bucketKey;
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "ai-rate-limit");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public CompletableFuture<String> send(ChatRequest request, Consumer<String> onChunk, AIService next) {
+        Bucket bucket = bucket(bucketKey.apply(request));
+        Pending pending = new Pending(request, onChunk, next, estimateTokens(request.getMessages()));
+        pending.result.whenComplete((r, ex) -> {
+            if (pending.result.isCancelled()) {
+                synchronized (bucket) {
+                    bucket.queue.remove(pending);
+                }
+                CompletableFuture<String> attempt = pending.attempt;
+                if (attempt != null) {
+                    attempt.cancel(true);
+                }
+            }
+        });
+
+        synchronized (bucket) {
+            bucket.queue.addLast(pending);
+        }
+        drain(bucket);
+        return pending.result;
+    }
+
+    /**
+     * Folds the rate limit headers of a provider response into its bucket.
+     */
+    public void update(String key, int statusCode, HttpHeaders headers) {
+        Bucket bucket = bucket(key);
+        synchronized (bucket) {
+            bucket.update(statusCode, headers, System.currentTimeMillis());
+        }
+        drain(bucket);
+    }
+
+    public int getQueuedCount() {
+        int count = 0;
+        for (Bucket bucket : buckets.values()) {
+            synchronized (bucket) {
+                count += bucket.queue.size();
+            }
+        }
+        return count;
+    }
+
+    public void shutdown() {
+        timer.shutdownNow();
+    }
+
+    private Bucket bucket(String key) {
+        return buckets.computeIfAbsent(key, k -> new Bucket());
+    }
+
+    private void drain(Bucket bucket) {
+        List<Pending> ready = new ArrayList<>();
+        List<Pending> waiting = new ArrayList<>();
+        long wait = 0;
+
+        synchronized (bucket) {
+            long now = System.currentTimeMillis();
+            bucket.refresh(now);
+            while (!bucket.queue.isEmpty()) {
+                Pending head = bucket.queue.peekFirst();
+                if (head.result.isDone()) {
+                    bucket.queue.pollFirst();
+                    continue;
+                }
+                wait = bucket.waitFor(head.tokens, now);
+                if (wait > 0) {
+                    break;
+                }
+                bucket.consume(head.tokens);
+                bucket.queue.pollFirst();
+                ready.add(head);
+            }
+            waiting.addAll(bucket.queue);
+            if (!waiting.isEmpty() && !bucket.drainScheduled) {
+                bucket.drainScheduled = true;
+                long delay = Math.max(1, Math.min(wait, STATUS_INTERVAL_MS));
+                timer.schedule(() -> {
+                    synchronized (bucket) {
+                        bucket.drainScheduled = false;
+                    }
+                    drain(bucket);
+                }, delay, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        for (int i = 0; i < waiting.size(); i++) {
+            Pending p = waiting.get(i);
+            String position = i == 0 ? "" : String.format(" (%d ahead)", i);
+            p.request.reportStatus(String.format("Waiting for %s rate limit%s, ~%ds",
+                    p.request.getProvider(), position, (wait + 999) / 1000));
+        }
+        for (Pending p : ready) {
+            dispatch(bucket, p);
+        }
+    }
+
+    private void dispatch(Bucket bucket, Pending pending) {
+        pending.request.reportStatus(null);
+        CompletableFuture<String> attempt = pending.next.send(pending.request, pending.onChunk);
+        pending.attempt = attempt;
+        if (pending.result.isCancelled()) {
+            attempt.cancel(true);
+            return;
+        }
+
+        attempt.whenComplete((response, error) -> {
+            if (error == null) {
+                pending.result.complete(response);
+            } else {
+                Throwable cause = FutureUtils.unwrap(error);
+                if (isRateLimited(cause) && pending.retries < MAX_RETRIES && !pending.result.isDone()) {
+                    pending.retries++;
+                    synchronized (bucket) {
+                        bucket.backOff(pending.retries, System.currentTimeMillis());
+                        bucket.queue.addFirst(pending);
+                    }
+                    Logger.info(String.format("%s returned 429, re-queued request (attempt %d of %d)",
+                            pending.request.getProvider(), pending.retries, MAX_RETRIES));
+                } else {
+                    pending.result.completeExceptionally(cause);
+                }
+            }
+            drain(bucket);
+        });
+    }
+
+    private static boolean isRateLimited(Throwable error) {
+        return error instanceof ProviderHttpException && ((ProviderHttpException) error).getStatusCode() == 429;
+    }
+
+    private static long estimateTokens(List<Message> messages) {
+        long chars = 0;
+        for (Message message : messages) {
+            if (message.getContent() != null) {
+                chars += message.getContent().length();
+            }
+        }
+        return (long) Math.ceil(chars / CHARS_PER_TOKEN);
+    }
+
+    /**
+     * Parses a reset hint into an absolute time in millis. Accepts Go style
+     * durations ({@code 1m2.5s}, {@code 250ms}), plain seconds, and epoch
+     * seconds or millis as sent by OpenRouter.
+     */
+    static long parseReset(String value, long now) {
+        if (value == null || value.isBlank()) {
+            return -1;
+        }
+        String text = value.trim();
+        Long duration = Durations.parseMillis(text);
+        if (duration != null) {
+            return now + duration;
+        }
+        try {
+            double number = Double.parseDouble(text);
+            if (number > 1e12) {
+                return (long) number;
+            }
+            if (number > 1e9) {
+                return (long) (number * 1000);
+            }
+            return now + (long) (number * 1000);
+        } catch (NumberFormatException e) {
+            // Not a number; try an HTTP date next.
+        }
+        try {
+            return ZonedDateTime.parse(text, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+        } catch (Exception e) {
+            Logger.info("Ignoring unparseable rate limit reset header: " + text);
+            return -1;
+        }
+    }
+
+    private static long parseLong(Optional<String> value) {
+        try {
+            return value.map(v -> (long) Double.parseDouble(v.trim())).orElse(-1L);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static final class Bucket {
+        // -1 means unknown: no header seen yet, or the window has reset since.
+        private long requestsRemaining = -1;
+        private long requestsResetAt;
+        private long tokensRemaining = -1;
+        private long tokensResetAt;
+        private long blockedUntil;
+        private boolean drainScheduled;
+        private final Deque<Pending> queue = new ArrayDeque<>();
+
+        void update(int statusCode, HttpHeaders headers, long now) {
+            long requests = parseLong(headers.firstValue("x-ratelimit-remaining-requests"));
+            if (requests < 0) {
+                requests = parseLong(headers.firstValue("x-ratelimit-remaining"));
+            }
+            if (requests >= 0) {
+                requestsRemaining = requests;
+                long reset = parseReset(headers.firstValue("x-ratelimit-reset-requests")
+                        .or(() -> headers.firstValue("x-ratelimit-reset")).orElse(null), now);
+                requestsResetAt = reset > 0 ? reset : now + INITIAL_BACKOFF_MS;
+            }
+
+            long tokens = parseLong(headers.firstValue("x-ratelimit-remaining-tokens"));
+            if (tokens >= 0) {
+                tokensRemaining = tokens;
+                long reset = parseReset(headers.firstValue("x-ratelimit-reset-tokens").orElse(null), now);
+                tokensResetAt = reset > 0 ? reset : now + INITIAL_BACKOFF_MS;
+            }
+
+            long retryAt = parseReset(headers.firstValue("retry-after").orElse(null), now);
+            if (retryAt > now) {
+                blockedUntil = Math.max(blockedUntil, retryAt);
+            }
+            if (statusCode == 429 && requestsRemaining < 0 && tokensRemaining < 0 && retryAt <= now) {
+                blockedUntil = Math.max(blockedUntil, now + INITIAL_BACKOFF_MS);
+            }
+        }
+
+        void refresh(long now) {
+            if (requestsRemaining >= 0 && now >= requestsResetAt) {
+                requestsRemaining = -1;
+            }
+            if (tokensRemaining >= 0 && now >= tokensResetAt) {
+                tokensRemaining = -1;
+            }
+        }
+
+        long waitFor(long tokens, long now) {
+            long wait = blockedUntil - now;
+            if (requestsRemaining == 0) {
+                wait = Math.max(wait, requestsResetAt - now);
+            }
+            if (tokensRemaining >= 0 && tokensRemaining < tokens) {
+                wait = Math.max(wait, tokensResetAt - now);
+            }
+            return Math.max(0, wait);
+        }
+
+        void consume(long tokens) {
+            if (requestsRemaining > 0) {
+                requestsRemaining--;
+            }
+            if (tokensRemaining > 0) {
+                tokensRemaining = Math.max(0, tokensRemaining - tokens);
+            }
+        }
+
+        /**
+         * Used after a 429: honours whatever the headers said, and otherwise
+         * backs off exponentially.
+         */
+        void backOff(int attempt, long now) {
+            if (waitFor(0, now) > 0) {
+                return;
+            }
+            long delay = Math.min(MAX_BACKOFF_MS, INITIAL_BACKOFF_MS << Math.min(attempt - 1, 10));
+            blockedUntil = now + delay;
+        }
+    }
+
+    private static final class Pending {
+        private final ChatRequest request;
+        private final Consumer<String> onChunk;
+        private final AIService next;
+        private final long tokens;
+        private final CompletableFuture<String> result = new CompletableFuture<>();
+        private volatile CompletableFuture<String> attempt;
+        private int retries;
+
+        private Pending(ChatRequest request, Consumer<String> onChunk, AIService next, long tokens) {
+            this.request = request;
+            this.onChunk = onChunk;
+            this.next = next;
+            this.tokens = tokens;
+        }
+    }
+}
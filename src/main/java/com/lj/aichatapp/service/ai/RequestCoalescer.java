@@ -0,0 +1,167 @@
+package com.lj.aichatapp.service.ai;
+
+import com.lj.aichatapp.utils.FutureUtils;
+import com.lj.aichatapp.utils.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Collapses identical concurrent requests (same {@link RequestKey}) into one
+ * upstream stream. A caller that arrives while the stream is running is first
+ * replayed the chunks received so far and then receives live chunks through its
+ * own consumer. Every caller gets its own future; the upstream request is only
+ * cancelled once all of them have been cancelled.
+ */
+public class RequestCoalescer {
+
+    private final Map<String, InFlight> inFlight = new ConcurrentHashMap<>();
+
+    public CompletableFuture<String> send(ChatRequest request, Consumer<String> onChunk, AIService next) {
+        String key = RequestKey.of(request);
+        while (true) {
+            InFlight existing = inFlight.get(key);
+            if (existing != null) {
+                CompletableFuture<String> attached = existing.attach(request, onChunk);
+                if (attached != null) {
+                    Logger.info("Coalesced duplicate request for " + request.getProvider() + "/" + request.getModel()
+                            + " into in-flight stream (" + existing.subscriberCount() + " subscribers).");
+                    return attached;
+                }
+                inFlight.remove(key, existing);
+                continue;
+            }
+
+            InFlight created = new InFlight(key);
+            if (inFlight.putIfAbsent(key, created) == null) {
+                CompletableFuture<String> first = created.attach(request, onChunk);
+                created.start(request, next);
+                return first;
+            }
+        }
+    }
+
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    private final class InFlight {
+        private final String key;
+        private final List<String> chunks = new ArrayList<>();
+        private final List<Subscriber> subscribers = new ArrayList<>();
+        private CompletableFuture<String> upstream;
+        private ChatRequest leader;
+        private boolean finished;
+
+        private InFlight(String key) {
+            this.key = key;
+        }
+
+        synchronized int subscriberCount() {
+            return subscribers.size();
+        }
+
+        /**
+         * Returns {@code null} when the stream has already finished and a new
+         * upstream request has to be started instead.
+         */
+        synchronized CompletableFuture<String> attach(ChatRequest request, Consumer<String> onChunk) {
+            if (finished) {
+                return null;
+            }
+            Subscriber subscriber = new Subscriber(request, onChunk);
+            if (onChunk != null) {
+                for (String chunk : chunks) {
+                    onChunk.accept(chunk);
+                }
+            }
+            subscribers.add(subscriber);
+            subscriber.future.whenComplete((r, ex) -> {
+                if (subscriber.future.isCancelled()) {
+                    detach(subscriber);
+                }
+            });
+            return subscriber.future;
+        }
+
+        void start(ChatRequest request, AIService next) {
+            synchronized (this) {
+                leader = request;
+            }
+            CompletableFuture<String> started = next.send(request, this::onChunk);
+            boolean cancelledEarly;
+            synchronized (this) {
+                upstream = started;
+                cancelledEarly = finished;
+            }
+            if (cancelledEarly) {
+                started.cancel(true);
+                return;
+            }
+            started.whenComplete(this::onUpstreamComplete);
+        }
+
+        private synchronized void onChunk(String chunk) {
+            if (finished) {
+                return;
+            }
+            chunks.add(chunk);
+            for (Subscriber subscriber : subscribers) {
+                if (subscriber.onChunk != null && !subscriber.future.isDone()) {
+                    subscriber.onChunk.accept(chunk);
+                }
+            }
+        }
+
+        private void onUpstreamComplete(String response, Throwable error) {
+            List<Subscriber> toComplete;
+            synchronized (this) {
+                finished = true;
+                toComplete = new ArrayList<>(subscribers);
+                subscribers.clear();
+            }
+            inFlight.remove(key, this);
+
+            for (Subscriber subscriber : toComplete) {
+                if (leader.isSubstituted()) {
+                    subscriber.request.markSubstituted();
+                }
+                if (error != null) {
+                    subscriber.future.completeExceptionally(FutureUtils.unwrap(error));
+                } else {
+                    subscriber.future.complete(response);
+                }
+            }
+        }
+
+        private void detach(Subscriber subscriber) {
+            CompletableFuture<String> toCancel = null;
+            synchronized (this) {
+                if (!subscribers.remove(subscriber) || finished || !subscribers.isEmpty()) {
+                    return;
+                }
+                finished = true;
+                toCancel = upstream;
+            }
+            inFlight.remove(key, this);
+            if (toCancel != null) {
+                toCancel.cancel(true);
+            }
+        }
+    }
+
+    private static final class Subscriber {
+        private final ChatRequest request;
+        private final Consumer<String> onChunk;
+        private final CompletableFuture<String> future = new CompletableFuture<>();
+
+        private Subscriber(ChatRequest request, Consumer<String> onChunk) {
+            this.request = request;
+            this.onChunk = onChunk;
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package com.lj.aichatapp.service.ai;
+
+import com.lj.aichatapp.models.UserPreferences;
+import com.lj.aichatapp.utils.FutureUtils;
+import com.lj.aichatapp.utils.Logger;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Optional hedging: if the primary request has not produced its first chunk
+ * within a p95-based delay, the same conversation is sent to a backup
+ * provider/model and whichever stream yields a token first is kept. The other
+ * attempt is cancelled, which closes its HTTP body. The delay is counted from
+ * dispatch, like the latencies it is derived from, so time the primary spends
+ * queued in the scheduler or rate limiter does not fire a backup.
+ */
+public class RequestHedger {
+
+    private static final long DEFAULT_DELAY_MS = 4000;
+    private static final long MIN_DELAY_MS = 500;
+    private static final long QUEUED_CHECK_MS = 100;
+
+    private final UserPreferences prefs;
+    private final LatencyTracker latencyTracker;
+    private final ScheduledExecutorService timer;
+    private final AtomicLong hedgesFired = new AtomicLong();
+    private final AtomicLong hedgeWins = new AtomicLong();
+    private volatile ContextBudget contextBudget;
+
+    public RequestHedger(UserPreferences prefs, LatencyTracker latencyTracker) {
+        this.prefs = prefs;
+        this.latencyTracker = latencyTracker;
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "ai-hedge-timer");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public void setContextBudget(ContextBudget contextBudget) {
+        this.contextBudget = contextBudget;
+    }
+
+    public long getHedgesFired() {
+        return hedgesFired.get();
+    }
+
+    public long getHedgeWins() {
+        return hedgeWins.get();
+    }
+
+    public CompletableFuture<String> send(ChatRequest request, Consumer<String> onChunk, AIService next) {
+        ChatRequest backupRequest = backupFor(request);
+        if (backupRequest == null) {
+            return next.send(request, onChunk);
+        }
+
+        CompletableFuture<String> result = new CompletableFuture<>();
+        AtomicReference<Attempt> winner = new AtomicReference<>();
+        Attempt primary = new Attempt("primary");
+        Attempt backup = new Attempt("backup");
+        backup.onWin = request::markSubstituted;
+        primary.other = backup;
+        backup.other = primary;
+
+        primary.start(request, next, onChunk, winner, result);
+
+        long delay = hedgeDelay(request);
+        AtomicReference<ScheduledFuture<?>> trigger = new AtomicReference<>();
+        Runnable fire = () -> {
+            // A circuit breaker fallback has already rerouted the primary.
+            if (winner.get() == null && !result.isDone() && !request.isSubstituted()) {
+                hedgesFired.incrementAndGet();
+                Logger.info(String.format("No first token from %s/%s %d ms after dispatch, hedging to %s/%s",
+                        request.getProvider(), request.getModel(), delay, backupRequest.getProvider(), backupRequest.getModel()));
+                backup.start(backupRequest, next, onChunk, winner, result);
+            }
+        };
+        arm(request, delay, fire, result, trigger);
+
+        result.whenComplete((r, ex) -> {
+            ScheduledFuture<?> pending = trigger.get();
+            if (pending != null) {
+                pending.cancel(false);
+            }
+            if (result.isCancelled()) {
+                primary.cancel();
+                backup.cancel();
+            }
+            Attempt won = winner.get();
+            if (won == backup) {
+                hedgeWins.incrementAndGet();
+            }
+            if (backup.future != null) {
+                Logger.info(String.format("Hedge finished, %s won (hedges fired=%d, hedge wins=%d)",
+                        won != null ? won.name : "neither", hedgesFired.get(), hedgeWins.get()));
+            }
+        });
+        return result;
+    }
+
+    public void shutdown() {
+        timer.shutdownNow();
+    }
+
+    /**
+     * Runs {@code fire} once the primary has been dispatched for {@code delay}
+     * ms; while it is still queued locally the clock has not started.
+     */
+    private void arm(ChatRequest request, long delay, Runnable fire, CompletableFuture<String> result,
+                     AtomicReference<ScheduledFuture<?>> trigger) {
+        if (result.isDone()) {
+            return;
+        }
+        long dispatched = request.getDispatchedAt();
+        if (dispatched == 0) {
+            trigger.set(timer.schedule(() -> arm(request, delay, fire, result, trigger), QUEUED_CHECK_MS, TimeUnit.MILLISECONDS));
+            return;
+        }
+        long remaining = delay - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - dispatched);
+        trigger.set(timer.schedule(fire, Math.max(0, remaining), TimeUnit.MILLISECONDS));
+    }
+
+    private ChatRequest backupFor(ChatRequest request) {
+        if (!prefs.isHedgingEnabled()) {
+            return null;
+        }
+        String provider = prefs.getHedgeProvider();
+        String model = prefs.getHedgeModel();
+        if (provider == null || provider.isBlank() || model == null || model.isBlank()) {
+            return null;
+        }
+        provider = ProviderRegistry.normalize(provider);
+        if (provider.equals(request.getProvider()) && model.equals(request.getModel())) {
+            return null;
+        }
+        ContextBudget budget = contextBudget;
+        if (budget != null && !budget.fits(request, provider, model)) {
+            return null;
+        }
+        ChatRequest backup = new ChatRequest(request.getConversationId(), request.getMessages(), model);
+        backup.setProvider(provider);
+        backup.setPriority(request.getPriority());
+        backup.setPromptTokens(request.getPromptTokens());
+        backup.setStatusListener(request.getStatusListener());
+        return backup;
+    }
+
+    private long hedgeDelay(ChatRequest request) {
+        long configured = prefs.getHedgeDelayMs();
+        if (configured > 0) {
+            return configured;
+        }
+        long p95 = latencyTracker.percentile(request.getProvider(), request.getModel(), 0.95, DEFAULT_DELAY_MS);
+        return Math.max(MIN_DELAY_MS, p95);
+    }
+
+    private static final class Attempt {
+        private final String name;
+        private Attempt other;
+        private Runnable onWin;
+        private volatile CompletableFuture<String> future;
+        private volatile boolean cancelled;
+
+        private Attempt(String name) {
+            this.name = name;
+        }
+
+        void start(ChatRequest request, AIService next, Consumer<String> onChunk,
+                   AtomicReference<Attempt> winner, CompletableFuture<String> result) {
+            Consumer<String> gated = chunk -> {
+                if (claim(winner) && onChunk != null) {
+                    onChunk.accept(chunk);
+                }
+            };
+            future = next.send(request, gated);
+            if (cancelled) {
+                future.cancel(true);
+                return;
+            }
+            future.whenComplete((response, error) -> {
+                if (cancelled) {
+                    return;
+                }
+                if (error == null) {
+                    // A stream that finished without any chunk still counts as an answer.
+                    if (claim(winner)) {
+                        result.complete(response);
+                    }
+                    return;
+                }
+                Attempt current = winner.get();
+                boolean otherAlive = other.future != null && !other.future.isDone() && !other.cancelled;
+                if (current == this || (current == null && !otherAlive)) {
+                    result.completeExceptionally(FutureUtils.unwrap(error));
+                }
+            });
+        }
+
+        /**
+         * Makes this attempt the winner if there is none yet; true when it is.
+         */
+        private boolean claim(AtomicReference<Attempt> winner) {
+            if (winner.compareAndSet(null, this)) {
+                other.cancel();
+                if (onWin != null) {
+                    onWin.run();
+                }
+            }
+            return winner.get() == this;
+        }
+
+        void cancel() {
+            cancelled = true;
+            CompletableFuture<String> f = future;
+            if (f != null) {
+                f.cancel(true);
+            }
+        }
+    }
+}
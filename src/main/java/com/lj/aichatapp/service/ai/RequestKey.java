@@ -0,0 +1,67 @@
+package com.lj.aichatapp.service.ai;
+
+import com.lj.aichatapp.models.Message;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.regex.Pattern;
+
+/**
+ * Canonical identity of a resolved {@link ChatRequest}: a SHA-256 over the
+ * provider, the model and the whitespace-normalized messages (including the
+ * system prompt). Two requests with the same key are expected to produce
+ * interchangeable answers.
+ */
+public final class RequestKey {
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private RequestKey() {
+    }
+
+    public static String of(ChatRequest request) {
+        MessageDigest digest = sha256();
+        update(digest, request.getProvider());
+        update(digest, request.getModel());
+        for (Message m : request.getMessages()) {
+            update(digest, m.getRole().toValue());
+            update(digest, normalize(m.getContent()));
+        }
+        return toHex(digest.digest());
+    }
+
+    static String normalize(String content) {
+        if (content == null) {
+            return "";
+        }
+        return WHITESPACE.matcher(content.trim()).replaceAll(" ");
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        byte[] bytes = (value != null ? value : "").getBytes(StandardCharsets.UTF_8);
+        digest.update((byte) (bytes.length >>> 24));
+        digest.update((byte) (bytes.length >>> 16));
+        digest.update((byte) (bytes.length >>> 8));
+        digest.update((byte) bytes.length);
+        digest.update(bytes);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        char[] out = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            out[i * 2] = HEX[(bytes[i] >> 4) & 0xF];
+            out[i * 2 + 1] = HEX[bytes[i] & 0xF];
+        }
+        return new String(out);
+    }
+}
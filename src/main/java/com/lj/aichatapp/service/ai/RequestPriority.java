@@ -0,0 +1,13 @@
+package com.lj.aichatapp.service.ai;
+
+/**
+ * Scheduling class of a {@link ChatRequest}. Lower ordinal runs first.
+ */
+public enum RequestPriority {
+    /** The user is waiting for this answer. */
+    INTERACTIVE,
+    /** Speculative work the user will probably need soon. */
+    PREFETCH,
+    /** Background jobs such as summaries, titles or quiz generation. */
+    BATCH
+}
@@ -0,0 +1,261 @@
+package com.lj.aichatapp.service.ai;
+
+import com.lj.aichatapp.models.UserPreferences;
+import com.lj.aichatapp.utils.Logger;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Admits requests to each provider in priority order. Every provider has a
+ * concurrency limit (one stream at a time for a local Ollama by default); when
+ * an {@link RequestPriority#INTERACTIVE} request finds its provider full, the
+ * lowest priority stream that is running is cancelled and re-queued so the
+ * user's message starts immediately. Waiting requests age one priority class
+ * every {@link #AGING_MS} and a request is preempted at most
+ * {@link #MAX_PREEMPTIONS} times, so background work cannot starve.
+ *
+ * <p>A preempted request is restarted from scratch, so chunk consumers of
+ * non-interactive requests may see the beginning of the answer more than once
+ * and should rely on the completed result.
+ */
+public class RequestScheduler {
+
+    private static final long AGING_MS = 10_000;
+    private static final int MAX_PREEMPTIONS = 3;
+    private static final int DEFAULT_LOCAL_CONCURRENCY = 1;
+    private static final int DEFAULT_CLOUD_CONCURRENCY = 4;
+
+    private final UserPreferences prefs;
+    private final Map<String, Lane> lanes = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicLong preemptions = new AtomicLong();
+    private final Map<RequestPriority, AtomicLong> dispatched = new EnumMap<>(RequestPriority.class);
+    private final Map<RequestPriority, AtomicLong> totalWaitMs = new EnumMap<>(RequestPriority.class);
+    private final Map<RequestPriority, AtomicLong> maxWaitMs = new EnumMap<>(RequestPriority.class);
+
+    public RequestScheduler(UserPreferences prefs) {
+        this.prefs = prefs;
+        for (RequestPriority priority : RequestPriority.values()) {
+            dispatched.put(priority, new AtomicLong());
+            totalWaitMs.put(priority, new AtomicLong());
+            maxWaitMs.put(priority, new AtomicLong());
+        }
+    }
+
+    public CompletableFuture<String> send(ChatRequest request, Consumer<String> onChunk, AIService next) {
+        Lane lane = lanes.computeIfAbsent(request.getProvider(), k -> new Lane());
+        Job job = new Job(request, onChunk, next, sequence.incrementAndGet());
+
+        job.result.whenComplete((r, ex) -> {
+            if (job.result.isCancelled()) {
+                synchronized (lane) {
+                    lane.queue.remove(job);
+                }
+                CompletableFuture<String> attempt = job.attempt;
+                if (attempt != null) {
+                    attempt.cancel(true);
+                }
+            }
+        });
+
+        Job victim = null;
+        synchronized (lane) {
+            lane.queue.add(job);
+            if (job.priority == RequestPriority.INTERACTIVE && lane.running.size() >= limit(request.getProvider())) {
+                victim = preemptionVictim(lane);
+                if (victim != null) {
+                    victim.preempted = true;
+                }
+            }
+        }
+        if (victim != null) {
+            preemptions.incrementAndGet();
+            Logger.info(String.format("Preempting %s request on %s for an interactive request",
+                    victim.priority, request.getProvider()));
+            CompletableFuture<String> attempt = victim.attempt;
+            if (attempt != null) {
+                attempt.cancel(true);
+            }
+        }
+        pump(request.getProvider(), lane);
+        return job.result;
+    }
+
+    public int getQueueDepth(RequestPriority priority) {
+        int depth = 0;
+        for (Lane lane : lanes.values()) {
+            synchronized (lane) {
+                for (Job job : lane.queue) {
+                    if (job.priority == priority) {
+                        depth++;
+                    }
+                }
+            }
+        }
+        return depth;
+    }
+
+    public int getRunningCount(String provider) {
+        Lane lane = lanes.get(provider);
+        if (lane == null) {
+            return 0;
+        }
+        synchronized (lane) {
+            return lane.running.size();
+        }
+    }
+
+    public long getAverageWaitMs(RequestPriority priority) {
+        long count = dispatched.get(priority).get();
+        return count == 0 ? 0 : totalWaitMs.get(priority).get() / count;
+    }
+
+    public long getMaxWaitMs(RequestPriority priority) {
+        return maxWaitMs.get(priority).get();
+    }
+
+    public long getPreemptions() {
+        return preemptions.get();
+    }
+
+    private int limit(String provider) {
+        Integer configured = prefs.getProviderConcurrency() != null ? prefs.getProviderConcurrency().get(provider) : null;
+        if (configured != null && configured > 0) {
+            return configured;
+        }
+        return ProviderRegistry.OLLAMA.equals(provider) ? DEFAULT_LOCAL_CONCURRENCY : DEFAULT_CLOUD_CONCURRENCY;
+    }
+
+    private static Job preemptionVictim(Lane lane) {
+        Job victim = null;
+        for (Job running : lane.running) {
+            if (running.priority == RequestPriority.INTERACTIVE || running.preempted
+                    || running.preemptions >= MAX_PREEMPTIONS) {
+                continue;
+            }
+            if (victim == null || running.priority.compareTo(victim.priority) > 0
+                    || (running.priority == victim.priority && running.startedAt > victim.startedAt)) {
+                victim = running;
+            }
+        }
+        return victim;
+    }
+
+    private void pump(String provider, Lane lane) {
+        List<Job> ready = new ArrayList<>();
+        synchronized (lane) {
+            long now = System.currentTimeMillis();
+            int limit = limit(provider);
+            // Preempted jobs still hold their slot until their stream has been torn down.
+            while (lane.running.size() < limit && !lane.queue.isEmpty()) {
+                Job best = null;
+                for (Job job : lane.queue) {
+                    if (best == null || job.compareTo(best, now) < 0) {
+                        best = job;
+                    }
+                }
+                lane.queue.remove(best);
+                if (best.result.isDone()) {
+                    continue;
+                }
+                best.startedAt = now;
+                lane.running.add(best);
+                ready.add(best);
+            }
+        }
+        for (Job job : ready) {
+            start(provider, lane, job);
+        }
+    }
+
+    private void start(String provider, Lane lane, Job job) {
+        long waited = job.startedAt - job.enqueuedAt;
+        dispatched.get(job.priority).incrementAndGet();
+        totalWaitMs.get(job.priority).addAndGet(waited);
+        maxWaitMs.get(job.priority).accumulateAndGet(waited, Math::max);
+        if (waited > 1000) {
+            Logger.info(String.format("%s request waited %d ms for %s", job.priority, waited, provider));
+        }
+
+        CompletableFuture<String> attempt = job.next.send(job.request, job.onChunk);
+        job.attempt = attempt;
+        if (job.result.isCancelled() || job.preempted) {
+            attempt.cancel(true);
+        }
+
+        attempt.whenComplete((response, error) -> {
+            boolean requeue;
+            synchronized (lane) {
+                lane.running.remove(job);
+                // A stream that managed to finish before the cancellation landed keeps its answer.
+                requeue = job.preempted && error != null && !job.result.isDone();
+                if (requeue) {
+                    job.preempted = false;
+                    job.preemptions++;
+                    job.attempt = null;
+                    job.enqueuedAt = System.currentTimeMillis();
+                    lane.queue.add(job);
+                }
+            }
+            if (!requeue) {
+                if (error != null) {
+                    job.result.completeExceptionally(error);
+                } else {
+                    job.result.complete(response);
+                }
+            }
+            pump(provider, lane);
+        });
+    }
+
+    private static final class Lane {
+        private final List<Job> queue = new ArrayList<>();
+        private final List<Job> running = new ArrayList<>();
+    }
+
+    private static final class Job {
+        private final ChatRequest request;
+        private final Consumer<String> onChunk;
+        private final AIService next;
+        private final RequestPriority priority;
+        private final long seq;
+        private long enqueuedAt = System.currentTimeMillis();
+        private final CompletableFuture<String> result = new CompletableFuture<>();
+        private volatile CompletableFuture<String> attempt;
+        private long startedAt;
+        private int preemptions;
+        private volatile boolean preempted;
+
+        private Job(ChatRequest request, Consumer<String> onChunk, AIService next, long seq) {
+            this.request = request;
+            this.onChunk = onChunk;
+            this.next = next;
+            this.priority = request.getPriority();
+            this.seq = seq;
+        }
+
+        /**
+         * Priority class raised by one step for every {@link #AGING_MS} spent waiting.
+         * An aged job never overtakes a genuinely interactive one.
+         */
+        long rank(long now) {
+            return Math.max(0, priority.ordinal() - (now - enqueuedAt) / AGING_MS);
+        }
+
+        int compareTo(Job other, long now) {
+            int byRank = Long.compare(rank(now), other.rank(now));
+            if (byRank != 0) {
+                return byRank;
+            }
+            int byPriority = priority.compareTo(other.priority);
+            return byPriority != 0 ? byPriority : Long.compare(seq, other.seq);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.lj.aichatapp.service.ai;
+
+import com.lj.aichatapp.models.CachedResponse;
+import com.lj.aichatapp.models.UserPreferences;
+import com.lj.aichatapp.repository.ResponseCacheRepository;
+import com.lj.aichatapp.utils.FutureUtils;
+import com.lj.aichatapp.utils.Logger;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Exact-match cache of complete answers, persisted in the {@code response_cache}
+ * table. Hits are replayed through the caller's chunk consumer so the UI
+ * renders them exactly like a live stream. Answers from a fallback or hedge
+ * model are not stored, since the key names the model that was asked.
+ */
+public class ResponseCache {
+
+    private static final int REPLAY_CHUNK_CHARS = 32;
+
+    private final ResponseCacheRepository repository;
+    private final UserPreferences prefs;
+    private final Executor io;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public ResponseCache(ResponseCacheRepository repository, UserPreferences prefs, Executor io) {
+        this.repository = repository;
+        this.prefs = prefs;
+        this.io = io;
+    }
+
+    public boolean isEnabled() {
+        return prefs.isResponseCacheEnabled();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public CompletableFuture<String> send(ChatRequest request, Consumer<String> onChunk, AIService next) {
+        if (!isEnabled()) {
+            return next.send(request, onChunk);
+        }
+
+        String key = RequestKey.of(request);
+        CompletableFuture<String> result = new CompletableFuture<>();
+
+        CompletableFuture.supplyAsync(() -> lookup(key), io).whenComplete((cached, lookupError) -> {
+            if (result.isDone()) {
+                return;
+            }
+            if (cached != null) {
+                Logger.info(String.format("Response cache hit for %s/%s (hits=%d, misses=%d)",
+                        request.getProvider(), request.getModel(), hits.get(), misses.get()));
+                replay(cached, onChunk);
+                result.complete(cached);
+                return;
+            }
+
+            CompletableFuture<String> upstream = next.send(request, onChunk);
+            upstream.thenAcceptAsync(response -> store(key, request, response), io);
+            FutureUtils.link(upstream, result);
+        });
+        return result;
+    }
+
+    public void clear() {
+        repository.clear();
+    }
+
+    private String lookup(String key) {
+        CachedResponse entry = repository.find(key);
+        long now = System.currentTimeMillis();
+        if (entry == null || entry.getCreatedAt() < now - ttlMillis()) {
+            misses.incrementAndGet();
+            return null;
+        }
+        repository.recordHit(key, now);
+        hits.incrementAndGet();
+        return entry.getResponse();
+    }
+
+    private void store(String key, ChatRequest request, String response) {
+        if (response == null || response.isBlank()) {
+            return;
+        }
+        if (request.isSubstituted()) {
+            Logger.info(String.format("Not caching the answer for %s/%s: another model answered it",
+                    request.getProvider(), request.getModel()));
+            return;
+        }
+        long now = System.currentTimeMillis();
+        repository.save(new CachedResponse(key, request.getProvider(), request.getModel(), response, now));
+        repository.deleteOlderThan(now - ttlMillis());
+        repository.trimToSize(Math.max(1, prefs.getResponseCacheMaxEntries()));
+    }
+
+    private long ttlMillis() {
+        return TimeUnit.HOURS.toMillis(Math.max(1, prefs.getResponseCacheTtlHours()));
+    }
+
+    private static void replay(String response, Consumer<String> onChunk) {
+        if (onChunk == null) {
+            return;
+        }
+        int length = response.length();
+        int start = 0;
+        while (start < length) {
+            int end = Math.min(length, start + REPLAY_CHUNK_CHARS);
+            if (end < length && Character.isHighSurrogate(response.charAt(end - 1))) {
+                end++;
+            }
+            onChunk.accept(response.substring(start, end));
+            start = end;
+        }
+    }
+}
@@ -0,0 +1,311 @@
+package com.lj.aichatapp.service.ai;
+
+import com.lj.aichatapp.models.Message;
+import com.lj.aichatapp.models.MessageRole;
+import com.lj.aichatapp.models.UserPreferences;
+import com.lj.aichatapp.service.ai.providers.ProviderHttpException;
+import com.lj.aichatapp.utils.FutureUtils;
+import com.lj.aichatapp.utils.Logger;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+/**
+ * Watches every attempt for a first token and, once streaming, for gaps
+ * between tokens. A stalled or dropped attempt is cancelled (which closes its
+ * connection) and retried after a jittered backoff. If part of the answer has
+ * already been shown, the retry sends it back as an assistant message, asks
+ * the model to continue, and trims whatever the continuation repeats, so the
+ * caller sees one continuous answer. Connecting is bounded separately by the
+ * shared HttpClient's connect timeout.
+ *
+ * <p>Calls without a chunk consumer (summaries, for example) are answered in
+ * one piece, so there is no token to wait for; they are only retried when
+ * they fail.
+ */
+public class StreamWatchdog {
+
+    private static final long BASE_BACKOFF_MS = 500;
+    private static final long MAX_BACKOFF_MS = 8000;
+    private static final String CONTINUE_PROMPT = "Your previous answer was cut off. Continue it exactly where it stopped, "
+            + "without repeating any of it and without any preamble.";
+
+    private final UserPreferences prefs;
+    private final ScheduledExecutorService timer;
+
+    public StreamWatchdog(UserPreferences prefs) {
+        this.prefs = prefs;
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "ai-stream-watchdog");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public CompletableFuture<String> send(ChatRequest request, Consumer<String> onChunk, AIService next) {
+        if (prefs.getStreamFirstTokenTimeoutMs() <= 0 && prefs.getStreamIdleTimeoutMs() <= 0) {
+            return next.send(request, onChunk);
+        }
+        Call call = new Call(request, onChunk, next);
+        call.start();
+        return call.result;
+    }
+
+    public void shutdown() {
+        timer.shutdownNow();
+    }
+
+    /**
+     * A stream that stopped making progress; always worth another attempt.
+     */
+    public static class StallException extends TimeoutException {
+        private static final long serialVersionUID = 1L;
+
+        public StallException(String message) {
+            super(message);
+        }
+    }
+
+    private final class Call {
+        private final ChatRequest request;
+        private final Consumer<String> onChunk;
+        private final AIService next;
+        private final CompletableFuture<String> result = new CompletableFuture<>();
+        private final StringBuilder delivered = new StringBuilder();
+        private int retries;
+        private Attempt current;
+        private ScheduledFuture<?> pendingRetry;
+
+        private Call(ChatRequest request, Consumer<String> onChunk, AIService next) {
+            this.request = request;
+            this.onChunk = onChunk;
+            this.next = next;
+            result.whenComplete((r, ex) -> {
+                if (result.isCancelled()) {
+                    synchronized (this) {
+                        if (pendingRetry != null) {
+                            pendingRetry.cancel(false);
+                        }
+                        if (current != null) {
+                            current.future.cancel(true);
+                        }
+                    }
+                }
+            });
+        }
+
+        private synchronized void start() {
+            if (result.isDone()) {
+                return;
+            }
+            String partial = delivered.toString();
+            ChatRequest attemptRequest = partial.isEmpty() ? request : resumeRequest(partial);
+            Attempt attempt = new Attempt(partial);
+            current = attempt;
+            attempt.future = next.send(attemptRequest, onChunk == null ? null : attempt::receive);
+            if (onChunk != null) {
+                attempt.watch();
+            }
+            attempt.future.whenComplete((text, ex) -> finish(attempt, text, ex));
+        }
+
+        private ChatRequest resumeRequest(String partial) {
+            List<Message> messages = new ArrayList<>(request.getMessages());
+            messages.add(new Message(MessageRole.ASSISTANT, partial));
+            messages.add(new Message(MessageRole.USER, CONTINUE_PROMPT));
+            // No conversation id: the payload no longer matches the conversation's cached prefix.
+            ChatRequest resumed = new ChatRequest(ChatRequest.NO_CONVERSATION, messages, request.getModel());
+            resumed.setProvider(request.getProvider());
+            resumed.setPriority(request.getPriority());
+            resumed.setStatusListener(request.getStatusListener());
+            return resumed;
+        }
+
+        private void finish(Attempt attempt, String text, Throwable ex) {
+            attempt.stopWatching();
+            if (result.isDone()) {
+                return;
+            }
+            Throwable cause = ex == null ? null : FutureUtils.unwrap(ex);
+            if (attempt.stall != null) {
+                cause = attempt.stall;
+            }
+            if (cause == null) {
+                if (onChunk == null) {
+                    result.complete(text);
+                } else {
+                    attempt.flush();
+                    synchronized (this) {
+                        result.complete(delivered.toString());
+                    }
+                }
+                return;
+            }
+            if (!isRetryable(cause) || retries >= prefs.getStreamMaxRetries()) {
+                result.completeExceptionally(cause);
+                return;
+            }
+
+            retries++;
+            long ceiling = Math.min(MAX_BACKOFF_MS, BASE_BACKOFF_MS << Math.min(retries - 1, 10));
+            long delay = ThreadLocalRandom.current().nextLong(ceiling / 2, ceiling + 1);
+            int shown;
+            synchronized (this) {
+                shown = delivered.length();
+            }
+            Logger.info(String.format("%s/%s: %s; retry %d/%d in %d ms%s", request.getProvider(), request.getModel(),
+                    cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName(), retries, prefs.getStreamMaxRetries(), delay,
+                    shown > 0 ? ", resuming after " + shown + " chars" : ""));
+            request.reportStatus("Connection stalled, retrying (" + retries + "/" + prefs.getStreamMaxRetries() + ")...");
+            synchronized (this) {
+                if (!result.isDone()) {
+                    pendingRetry = timer.schedule(this::start, delay, TimeUnit.MILLISECONDS);
+                }
+            }
+        }
+
+        private boolean isRetryable(Throwable cause) {
+            if (cause instanceof StallException) {
+                return true;
+            }
+            if (cause instanceof ProviderHttpException) {
+                int status = ((ProviderHttpException) cause).getStatusCode();
+                return status == 502 || status == 503 || status == 504;
+            }
+            return cause instanceof IOException;
+        }
+
+        /**
+         * One request to the provider. Chunks of a resumed attempt pass through
+         * a {@link Stitcher} before they reach the caller.
+         */
+        private final class Attempt {
+            private final Stitcher stitch;
+            private final long startedAt = System.nanoTime();
+            private volatile long lastChunkAt;
+            private volatile StallException stall;
+            private CompletableFuture<String> future;
+            private ScheduledFuture<?> check;
+
+            private Attempt(String partial) {
+                this.stitch = new Stitcher(partial);
+            }
+
+            private void receive(String chunk) {
+                boolean first = lastChunkAt == 0;
+                lastChunkAt = System.nanoTime();
+                if (stall != null || result.isDone()) {
+                    return;
+                }
+                if (first && retries > 0) {
+                    request.reportStatus(null);
+                }
+                deliver(stitch.accept(chunk));
+            }
+
+            private void flush() {
+                deliver(stitch.finish());
+            }
+
+            private void deliver(String text) {
+                if (text.isEmpty()) {
+                    return;
+                }
+                synchronized (Call.this) {
+                    delivered.append(text);
+                }
+                onChunk.accept(text);
+            }
+
+            private synchronized void watch() {
+                long limit = lastChunkAt == 0 ? prefs.getStreamFirstTokenTimeoutMs() : prefs.getStreamIdleTimeoutMs();
+                if (limit <= 0 || future.isDone()) {
+                    return;
+                }
+                long since = lastChunkAt == 0 ? startedAt : lastChunkAt;
+                long idleMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - since);
+                if (idleMs < limit) {
+                    check = timer.schedule(this::watch, limit - idleMs, TimeUnit.MILLISECONDS);
+                    return;
+                }
+                stall = new StallException(lastChunkAt == 0
+                        ? "No first token after " + idleMs + " ms"
+                        : "No tokens for " + idleMs + " ms");
+                future.cancel(true);
+            }
+
+            private synchronized void stopWatching() {
+                if (check != null) {
+                    check.cancel(false);
+                }
+            }
+        }
+    }
+
+    /**
+     * Joins a continuation onto the text that was already shown. Models asked
+     * to continue either do, repeat the last few words first, or start over;
+     * the start of the continuation is held back until it is clear which, and
+     * the repeated part is dropped.
+     */
+    static final class Stitcher {
+        private static final int DECIDE_CHARS = 48;
+        private static final int MIN_OVERLAP = 8;
+        private static final int MAX_OVERLAP = 200;
+
+        private final String partial;
+        private final StringBuilder pending = new StringBuilder();
+        private boolean decided;
+
+        Stitcher(String partial) {
+            this.partial = partial;
+            this.decided = partial.isEmpty();
+        }
+
+        String accept(String chunk) {
+            if (decided) {
+                return chunk;
+            }
+            pending.append(chunk);
+            boolean restarting = partial.startsWith(pending.toString()) && pending.length() < partial.length();
+            if (pending.length() < DECIDE_CHARS || restarting) {
+                return "";
+            }
+            return decide();
+        }
+
+        String finish() {
+            if (decided) {
+                return "";
+            }
+            if (partial.startsWith(pending.toString())) {
+                pending.setLength(0);
+            }
+            return decide();
+        }
+
+        private String decide() {
+            decided = true;
+            String text = pending.toString();
+            pending.setLength(0);
+            if (text.startsWith(partial)) {
+                return text.substring(partial.length());
+            }
+            for (int k = Math.min(MAX_OVERLAP, Math.min(partial.length(), text.length())); k >= MIN_OVERLAP; k--) {
+                if (partial.endsWith(text.substring(0, k))) {
+                    return text.substring(k);
+                }
+            }
+            return text;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.lj.aichatapp.service.ai.codec;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import com.lj.aichatapp.models.Message;
+import com.lj.aichatapp.service.ai.ChatRequest;
+
+import java.io.IOException;
+import java.net.http.HttpRequest;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Writes chat request payloads straight from the message list with a
+ * {@link JsonGenerator}, without intermediate maps, trees or strings.
+ * Encoding happens in a per-thread buffer that is reused across requests;
+ * the only allocations proportional to the history are the encoded message
+ * array kept by the {@link PayloadCache} and the final body array handed to
+ * the {@link HttpRequest.BodyPublisher}, which the client needs anyway so the
+ * body can be replayed on redirects and retries.
+ */
+public class ChatRequestEncoder {
+
+    private static final int INITIAL_BUFFER_SIZE = 16 * 1024;
+    private static final ThreadLocal<ByteArrayBuilder> BUFFERS =
+            ThreadLocal.withInitial(() -> new ByteArrayBuilder(INITIAL_BUFFER_SIZE));
+
+    private static final byte[] MESSAGES_FIELD = ",\"messages\":[".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] PAYLOAD_END = "]}".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * Writes provider specific top-level fields (options, routing hints...)
+     * into the payload object.
+     */
+    public interface FieldWriter {
+        void write(JsonGenerator generator) throws IOException;
+    }
+
+    private final JsonFactory factory;
+    private final PayloadCache payloadCache;
+
+    public ChatRequestEncoder(JsonFactory factory) {
+        this(factory, null);
+    }
+
+    public ChatRequestEncoder(JsonFactory factory, PayloadCache payloadCache) {
+        this.factory = factory;
+        this.payloadCache = payloadCache;
+    }
+
+    public HttpRequest.BodyPublisher publisher(int conversationId, String model, List<Message> messages, boolean stream, FieldWriter extraFields) throws IOException {
+        return HttpRequest.BodyPublishers.ofByteArray(encode(conversationId, model, messages, stream, extraFields));
+    }
+
+    public HttpRequest.BodyPublisher publisher(String model, List<Message> messages, boolean stream, FieldWriter extraFields) throws IOException {
+        return publisher(ChatRequest.NO_CONVERSATION, model, messages, stream, extraFields);
+    }
+
+    /**
+     * Encodes the payload with {@code messages} as its last field. For saved
+     * conversations the already-encoded message prefix is taken from the
+     * {@link PayloadCache} and only the messages added since are encoded.
+     */
+    public byte[] encode(int conversationId, String model, List<Message> messages, boolean stream, FieldWriter extraFields) throws IOException {
+        ByteArrayBuilder buffer = BUFFERS.get();
+        buffer.reset();
+        try {
+            try (JsonGenerator gen = factory.createGenerator(buffer)) {
+                gen.writeStartObject();
+                gen.writeStringField("model", model);
+                gen.writeBooleanField("stream", stream);
+                if (extraFields != null) {
+                    extraFields.write(gen);
+                }
+                gen.writeEndObject();
+            }
+            byte[] header = buffer.toByteArray();
+            buffer.reset();
+
+            byte[] elements = encodeMessages(conversationId, messages, buffer);
+
+            // Splice the messages array in place of the header's closing brace.
+            int headerLength = header.length - 1;
+            byte[] payload = new byte[headerLength + MESSAGES_FIELD.length + elements.length + PAYLOAD_END.length];
+            int pos = 0;
+            System.arraycopy(header, 0, payload, pos, headerLength);
+            pos += headerLength;
+            System.arraycopy(MESSAGES_FIELD, 0, payload, pos, MESSAGES_FIELD.length);
+            pos += MESSAGES_FIELD.length;
+            System.arraycopy(elements, 0, payload, pos, elements.length);
+            pos += elements.length;
+            System.arraycopy(PAYLOAD_END, 0, payload, pos, PAYLOAD_END.length);
+            return payload;
+        } finally {
+            buffer.reset();
+        }
+    }
+
+    private byte[] encodeMessages(int conversationId, List<Message> messages, ByteArrayBuilder buffer) throws IOException {
+        boolean cacheable = payloadCache != null && conversationId > 0;
+        PayloadCache.Entry cached = cacheable ? payloadCache.lookup(conversationId, messages) : null;
+
+        int start = 0;
+        if (cached != null && cached.getMessageCount() > 0) {
+            buffer.write(cached.getEncoded());
+            start = cached.getMessageCount();
+        }
+
+        try (JsonGenerator gen = factory.createGenerator(buffer)) {
+            gen.setRootValueSeparator(null);
+            for (int i = start; i < messages.size(); i++) {
+                if (i > 0) {
+                    gen.writeRaw(',');
+                }
+                writeMessage(gen, messages.get(i));
+            }
+        }
+        byte[] elements = buffer.toByteArray();
+
+        if (cacheable) {
+            payloadCache.store(conversationId, messages, elements);
+        }
+        return elements;
+    }
+
+    static void writeMessage(JsonGenerator gen, Message m) throws IOException {
+        gen.writeStartObject();
+        gen.writeStringField("role", m.getRole().toValue());
+        gen.writeStringField("content", m.getContent() != null ? m.getContent() : "");
+        gen.writeEndObject();
+    }
+}
@@ -0,0 +1,222 @@
+package com.lj.aichatapp.service.ai.codec;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * Decodes Ollama's newline-delimited JSON responses with a single streaming
+ * {@link JsonParser} over the response bytes. Only the fields the app uses are
+ * materialized; everything else is skipped without building a tree, and the
+ * parser's buffers are reused for every line of the stream.
+ */
+public class OllamaStreamDecoder {
+
+    private final JsonFactory factory;
+
+    public OllamaStreamDecoder(JsonFactory factory) {
+        this.factory = factory;
+    }
+
+    /**
+     * Reads objects from {@code in} until a {@code "done": true} line, end of
+     * stream or cancellation. Each non-empty content fragment is handed to
+     * {@code onChunk} (which may be {@code null}) as soon as it is parsed.
+     */
+    public Result decode(InputStream in, Consumer<String> onChunk, BooleanSupplier cancelled) throws IOException {
+        Result result = new Result();
+        try (JsonParser parser = factory.createParser(in)) {
+            JsonToken token;
+            while ((token = parser.nextToken()) != null) {
+                if (cancelled != null && cancelled.getAsBoolean()) {
+                    result.cancelled = true;
+                    break;
+                }
+                if (token != JsonToken.START_OBJECT) {
+                    parser.skipChildren();
+                    continue;
+                }
+
+                String chunk = readLine(parser, result);
+                if (chunk != null && !chunk.isEmpty()) {
+                    result.content.append(chunk);
+                    if (onChunk != null) {
+                        onChunk.accept(chunk);
+                    }
+                }
+                if (result.done) {
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    private String readLine(JsonParser parser, Result result) throws IOException {
+        String chunk = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "message":
+                    if (value == JsonToken.START_OBJECT) {
+                        chunk = readMessageContent(parser, result);
+                    } else {
+                        parser.skipChildren();
+                    }
+                    break;
+                case "response":
+                    if (value == JsonToken.VALUE_STRING) {
+                        chunk = parser.getText();
+                        result.sawContent = true;
+                    }
+                    break;
+                case "done":
+                    result.done = value == JsonToken.VALUE_TRUE;
+                    break;
+                case "done_reason":
+                    result.doneReason = value == JsonToken.VALUE_STRING ? parser.getText() : null;
+                    break;
+                case "error":
+                    throw new StreamErrorException("Ollama error: " + (value == JsonToken.VALUE_STRING ? parser.getText() : "unknown"));
+                case "total_duration":
+                    result.totalDurationNanos = readLong(parser, value);
+                    break;
+                case "load_duration":
+                    result.loadDurationNanos = readLong(parser, value);
+                    break;
+                case "prompt_eval_count":
+                    result.promptEvalCount = readLong(parser, value);
+                    break;
+                case "prompt_eval_duration":
+                    result.promptEvalDurationNanos = readLong(parser, value);
+                    break;
+                case "eval_count":
+                    result.evalCount = readLong(parser, value);
+                    break;
+                case "eval_duration":
+                    result.evalDurationNanos = readLong(parser, value);
+                    break;
+                case "context":
+                    result.context = value == JsonToken.START_ARRAY ? readIntArray(parser) : null;
+                    break;
+                default:
+                    parser.skipChildren();
+                    break;
+            }
+        }
+        return chunk;
+    }
+
+    private String readMessageContent(JsonParser parser, Result result) throws IOException {
+        String content = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if ("content".equals(field) && value == JsonToken.VALUE_STRING) {
+                content = parser.getText();
+                result.sawContent = true;
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return content;
+    }
+
+    private static int[] readIntArray(JsonParser parser) throws IOException {
+        int[] values = new int[1024];
+        int size = 0;
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY && token != null) {
+            if (token == JsonToken.VALUE_NUMBER_INT) {
+                if (size == values.length) {
+                    values = Arrays.copyOf(values, size * 2);
+                }
+                values[size++] = parser.getIntValue();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return Arrays.copyOf(values, size);
+    }
+
+    private static long readLong(JsonParser parser, JsonToken value) throws IOException {
+        return value == JsonToken.VALUE_NUMBER_INT ? parser.getLongValue() : 0L;
+    }
+
+    public static class Result {
+        private final StringBuilder content = new StringBuilder();
+        private boolean sawContent;
+        private boolean done;
+        private boolean cancelled;
+        private String doneReason;
+        private long totalDurationNanos;
+        private long loadDurationNanos;
+        private long promptEvalCount;
+        private long promptEvalDurationNanos;
+        private long evalCount;
+        private long evalDurationNanos;
+        private int[] context;
+
+        public String getContent() {
+            return content.toString();
+        }
+
+        public boolean hasContent() {
+            return sawContent;
+        }
+
+        public boolean isDone() {
+            return done;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        public String getDoneReason() {
+            return doneReason;
+        }
+
+        public long getTotalDurationNanos() {
+            return totalDurationNanos;
+        }
+
+        public long getLoadDurationNanos() {
+            return loadDurationNanos;
+        }
+
+        public long getPromptEvalCount() {
+            return promptEvalCount;
+        }
+
+        public long getPromptEvalDurationNanos() {
+            return promptEvalDurationNanos;
+        }
+
+        public long getEvalCount() {
+            return evalCount;
+        }
+
+        public long getEvalDurationNanos() {
+            return evalDurationNanos;
+        }
+
+        /**
+         * Token context returned by {@code /api/generate}, or {@code null}.
+         */
+        public int[] getContext() {
+            return context;
+        }
+
+        public double getTokensPerSecond() {
+            return evalDurationNanos > 0 ? evalCount * 1_000_000_000.0 / evalDurationNanos : 0.0;
+        }
+    }
+}
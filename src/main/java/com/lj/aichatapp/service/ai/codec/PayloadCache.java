@@ -0,0 +1,131 @@
+package com.lj.aichatapp.service.ai.codec;
+
+import com.lj.aichatapp.models.Message;
+import com.lj.aichatapp.models.MessageRole;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Remembers the already-encoded {@code messages} array of each conversation so
+ * the next turn only has to encode the messages appended since. An entry is
+ * valid for a request when the conversation's first {@code messageCount}
+ * messages still have the stored roles and contents; any edit or deletion in
+ * that prefix makes the entry be ignored and replaced. Contents are compared
+ * by reference first, and the conversation hands the same strings over every
+ * turn, so the check rarely has to look at the text itself. Memory is bounded
+ * by a total byte budget with least-recently-used eviction.
+ */
+public class PayloadCache {
+
+    private static final long DEFAULT_MAX_BYTES = 8L * 1024 * 1024;
+
+    private final long maxBytes;
+    private final LinkedHashMap<Integer, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+
+    public PayloadCache() {
+        this(DEFAULT_MAX_BYTES);
+    }
+
+    public PayloadCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the cached prefix for the conversation if it still matches the
+     * start of {@code messages}, otherwise {@code null}.
+     */
+    public synchronized Entry lookup(int conversationId, List<Message> messages) {
+        Entry entry = entries.get(conversationId);
+        if (entry == null) {
+            return null;
+        }
+        if (!entry.matches(messages)) {
+            remove(conversationId);
+            return null;
+        }
+        return entry;
+    }
+
+    public synchronized void store(int conversationId, List<Message> messages, byte[] encodedElements) {
+        if (encodedElements.length > maxBytes) {
+            remove(conversationId);
+            return;
+        }
+        Entry entry = new Entry(messages, encodedElements);
+        Entry previous = entries.put(conversationId, entry);
+        if (previous != null) {
+            totalBytes -= previous.encoded.length;
+        }
+        totalBytes += encodedElements.length;
+
+        var it = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && it.hasNext()) {
+            Map.Entry<Integer, Entry> eldest = it.next();
+            totalBytes -= eldest.getValue().encoded.length;
+            it.remove();
+        }
+    }
+
+    public synchronized void invalidate(int conversationId) {
+        remove(conversationId);
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        totalBytes = 0;
+    }
+
+    private void remove(int conversationId) {
+        Entry removed = entries.remove(conversationId);
+        if (removed != null) {
+            totalBytes -= removed.encoded.length;
+        }
+    }
+
+    public static final class Entry {
+        private final int messageCount;
+        private final MessageRole[] roles;
+        private final String[] contents;
+        private final byte[] encoded;
+
+        private Entry(List<Message> messages, byte[] encoded) {
+            this.messageCount = messages.size();
+            this.roles = new MessageRole[messageCount];
+            this.contents = new String[messageCount];
+            for (int i = 0; i < messageCount; i++) {
+                roles[i] = messages.get(i).getRole();
+                contents[i] = content(messages.get(i));
+            }
+            this.encoded = encoded;
+        }
+
+        private boolean matches(List<Message> messages) {
+            if (messageCount > messages.size()) {
+                return false;
+            }
+            for (int i = 0; i < messageCount; i++) {
+                Message m = messages.get(i);
+                String content = content(m);
+                if (roles[i] != m.getRole() || (contents[i] != content && !contents[i].equals(content))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static String content(Message m) {
+            return m.getContent() != null ? m.getContent() : "";
+        }
+
+        public int getMessageCount() {
+            return messageCount;
+        }
+
+        byte[] getEncoded() {
+            return encoded;
+        }
+    }
+}
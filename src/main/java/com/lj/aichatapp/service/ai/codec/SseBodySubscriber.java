@@ -0,0 +1,368 @@
+package com.lj.aichatapp.service.ai.codec;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+import java.util.function.Consumer;
+
+/**
+ * Incremental Server-Sent Events decoder for OpenAI-compatible chat completion
+ * streams. Frames are assembled directly from the response {@link ByteBuffer}s,
+ * multi-line {@code data:} fields are joined as the SSE spec requires, and
+ * {@code choices[0].delta.content} is pulled out with a streaming parser,
+ * along with the id, model, upstream provider and usage when a
+ * {@link StreamMetadata} is given. One
+ * buffer is requested at a time, so a slow consumer throttles the connection
+ * instead of queueing the whole response in memory.
+ */
+public class SseBodySubscriber implements HttpResponse.BodySubscriber<String> {
+
+    private static final byte[] DONE = "[DONE]".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] DATA_FIELD = "data".getBytes(StandardCharsets.US_ASCII);
+
+    private final JsonFactory factory;
+    private final Consumer<String> onChunk;
+    private final StreamMetadata metadata;
+    private final CompletableFuture<String> result = new CompletableFuture<>();
+    private final StringBuilder content = new StringBuilder();
+
+    private byte[] line = new byte[512];
+    private int lineLength;
+    private byte[] data = new byte[2048];
+    private int dataLength;
+    private boolean hasData;
+    private volatile boolean finished;
+    private volatile boolean draining;
+    private volatile Flow.Subscription subscription;
+
+    public SseBodySubscriber(JsonFactory factory, Consumer<String> onChunk) {
+        this(factory, onChunk, null);
+    }
+
+    public SseBodySubscriber(JsonFactory factory, Consumer<String> onChunk, StreamMetadata metadata) {
+        this.factory = factory;
+        this.onChunk = onChunk;
+        this.metadata = metadata;
+    }
+
+    /**
+     * Decodes successful (2xx) responses as an SSE stream and collects any other
+     * response as a plain string so callers can report the error body. When
+     * {@code owner} is cancelled the subscription is cancelled too, which closes
+     * the response body and releases the connection.
+     */
+    public static HttpResponse.BodyHandler<String> handler(JsonFactory factory, Consumer<String> onChunk, CompletableFuture<?> owner) {
+        return handler(factory, onChunk, owner, null);
+    }
+
+    public static HttpResponse.BodyHandler<String> handler(JsonFactory factory, Consumer<String> onChunk, CompletableFuture<?> owner,
+                                                           StreamMetadata metadata) {
+        return info -> {
+            if (info.statusCode() < 200 || info.statusCode() >= 300) {
+                return HttpResponse.BodySubscribers.ofString(StandardCharsets.UTF_8);
+            }
+            SseBodySubscriber subscriber = new SseBodySubscriber(factory, onChunk, metadata);
+            owner.whenComplete((r, ex) -> {
+                if (owner.isCancelled()) {
+                    subscriber.cancel();
+                }
+            });
+            return subscriber;
+        };
+    }
+
+    /**
+     * Stops decoding and cancels the underlying subscription. No chunk is
+     * delivered after this returns.
+     */
+    public void cancel() {
+        finished = true;
+        draining = false;
+        Flow.Subscription s = subscription;
+        if (s != null) {
+            s.cancel();
+        }
+        result.cancel(false);
+    }
+
+    @Override
+    public CompletionStage<String> getBody() {
+        return result;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        this.subscription = subscription;
+        if (finished) {
+            subscription.cancel();
+            return;
+        }
+        subscription.request(1);
+    }
+
+    @Override
+    public void onNext(List<ByteBuffer> items) {
+        if (finished) {
+            requestMoreOrCancel();
+            return;
+        }
+        try {
+            for (ByteBuffer buffer : items) {
+                while (buffer.hasRemaining() && !finished) {
+                    byte b = buffer.get();
+                    if (b == '\n') {
+                        processLine();
+                    } else {
+                        appendToLine(b);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            fail(e);
+        }
+        requestMoreOrCancel();
+    }
+
+    /**
+     * After {@code [DONE]} whatever follows is read and dropped, so the body
+     * ends normally and an HTTP/1.1 connection goes back to the pool; only a
+     * failed or cancelled stream gives up the connection.
+     */
+    private void requestMoreOrCancel() {
+        if (!finished || draining) {
+            subscription.request(1);
+        } else {
+            subscription.cancel();
+        }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        fail(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+        try {
+            if (lineLength > 0) {
+                processLine();
+            }
+            dispatchEvent();
+        } catch (Exception e) {
+            fail(e);
+        }
+        if (!finished) {
+            // A connection closed mid-answer; the content so far is incomplete.
+            fail(new StreamErrorException("Stream ended before [DONE]"));
+        }
+    }
+
+    private void processLine() throws IOException {
+        int length = lineLength;
+        if (length > 0 && line[length - 1] == '\r') {
+            length--;
+        }
+        lineLength = 0;
+
+        if (length == 0) {
+            dispatchEvent();
+            return;
+        }
+        if (line[0] == ':') {
+            return;
+        }
+
+        int colon = indexOf(line, length, (byte) ':');
+        int nameLength = colon < 0 ? length : colon;
+        if (nameLength != DATA_FIELD.length || !Arrays.equals(line, 0, nameLength, DATA_FIELD, 0, nameLength)) {
+            return;
+        }
+
+        int valueStart = colon < 0 ? length : colon + 1;
+        if (valueStart < length && line[valueStart] == ' ') {
+            valueStart++;
+        }
+        if (hasData) {
+            appendToData((byte) '\n');
+        }
+        for (int i = valueStart; i < length; i++) {
+            appendToData(line[i]);
+        }
+        hasData = true;
+    }
+
+    private void dispatchEvent() throws IOException {
+        if (!hasData) {
+            return;
+        }
+        int length = dataLength;
+        hasData = false;
+        dataLength = 0;
+
+        if (length == DONE.length && Arrays.equals(data, 0, length, DONE, 0, length)) {
+            finish();
+            return;
+        }
+        String chunk = extractDeltaContent(data, length);
+        if (chunk != null && !chunk.isEmpty() && !finished) {
+            if (metadata != null) {
+                metadata.markContent();
+            }
+            content.append(chunk);
+            if (onChunk != null) {
+                onChunk.accept(chunk);
+            }
+        }
+    }
+
+    private String extractDeltaContent(byte[] json, int length) throws IOException {
+        try (JsonParser parser = factory.createParser(json, 0, length)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+            String chunk = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if ("choices".equals(field) && value == JsonToken.START_ARRAY) {
+                    chunk = readFirstChoice(parser);
+                } else if ("error".equals(field)) {
+                    throw new StreamErrorException("Stream error: " + readErrorMessage(parser, value));
+                } else if (metadata != null && value == JsonToken.VALUE_STRING) {
+                    readMetadata(field, parser.getText());
+                } else if (metadata != null && "usage".equals(field) && value == JsonToken.START_OBJECT) {
+                    readUsage(parser);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            return chunk;
+        }
+    }
+
+    private String readFirstChoice(JsonParser parser) throws IOException {
+        String chunk = null;
+        boolean first = true;
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY && token != null) {
+            if (first && token == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = parser.getCurrentName();
+                    JsonToken value = parser.nextToken();
+                    if ("delta".equals(field) && value == JsonToken.START_OBJECT) {
+                        chunk = readStringField(parser, "content");
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            } else {
+                parser.skipChildren();
+            }
+            first = false;
+        }
+        return chunk;
+    }
+
+    private void readMetadata(String field, String value) {
+        switch (field) {
+            case "id":
+                metadata.setId(value);
+                break;
+            case "model":
+                metadata.setModel(value);
+                break;
+            case "provider":
+                metadata.setProvider(value);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void readUsage(JsonParser parser) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if ("prompt_tokens".equals(field) && value == JsonToken.VALUE_NUMBER_INT) {
+                metadata.setPromptTokens(parser.getIntValue());
+            } else if ("completion_tokens".equals(field) && value == JsonToken.VALUE_NUMBER_INT) {
+                metadata.setCompletionTokens(parser.getIntValue());
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private static String readStringField(JsonParser parser, String name) throws IOException {
+        String found = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if (name.equals(field) && value == JsonToken.VALUE_STRING) {
+                found = parser.getText();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return found;
+    }
+
+    private static String readErrorMessage(JsonParser parser, JsonToken value) throws IOException {
+        if (value == JsonToken.VALUE_STRING) {
+            return parser.getText();
+        }
+        if (value == JsonToken.START_OBJECT) {
+            String message = readStringField(parser, "message");
+            return message != null ? message : "unknown";
+        }
+        parser.skipChildren();
+        return "unknown";
+    }
+
+    private void appendToLine(byte b) {
+        if (lineLength == line.length) {
+            line = Arrays.copyOf(line, line.length * 2);
+        }
+        line[lineLength++] = b;
+    }
+
+    private void appendToData(byte b) {
+        if (dataLength == data.length) {
+            data = Arrays.copyOf(data, data.length * 2);
+        }
+        data[dataLength++] = b;
+    }
+
+    private static int indexOf(byte[] array, int length, byte b) {
+        for (int i = 0; i < length; i++) {
+            if (array[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void finish() {
+        finished = true;
+        draining = true;
+        if (metadata != null) {
+            metadata.markFinished();
+        }
+        result.complete(content.toString());
+    }
+
+    private void fail(Throwable t) {
+        finished = true;
+        result.completeExceptionally(t);
+    }
+}
@@ -0,0 +1,17 @@
+package com.lj.aichatapp.service.ai.codec;
+
+import java.io.IOException;
+
+/**
+ * The server answered, but the stream reported an error or ended before its
+ * final message. The connection itself worked, so this says nothing about
+ * whether the host is reachable; retrying is still worthwhile.
+ */
+public class StreamErrorException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public StreamErrorException(String message) {
+        super(message);
+    }
+}
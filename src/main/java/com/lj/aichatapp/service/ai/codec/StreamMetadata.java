@@ -0,0 +1,81 @@
+package com.lj.aichatapp.service.ai.codec;
+
+/**
+ * What an OpenAI style stream says about itself besides the answer: the
+ * generation id, the model and upstream provider that actually served it
+ * (OpenRouter may route to a fallback), token usage, and when the first and
+ * last content arrived. Filled in by {@link SseBodySubscriber}; read once the
+ * response future has completed.
+ */
+public class StreamMetadata {
+    private final long startedAt = System.nanoTime();
+    private volatile long firstContentAt;
+    private volatile long finishedAt;
+    private volatile String id;
+    private volatile String model;
+    private volatile String provider;
+    private volatile int promptTokens;
+    private volatile int completionTokens;
+
+    public long getStartedAt() {
+        return startedAt;
+    }
+
+    public long getFirstContentAt() {
+        return firstContentAt;
+    }
+
+    void markContent() {
+        if (firstContentAt == 0) {
+            firstContentAt = System.nanoTime();
+        }
+    }
+
+    public long getFinishedAt() {
+        return finishedAt;
+    }
+
+    void markFinished() {
+        finishedAt = System.nanoTime();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    void setId(String id) {
+        this.id = id;
+    }
+
+    public String getModel() {
+        return model;
+    }
+
+    void setModel(String model) {
+        this.model = model;
+    }
+
+    public String getProvider() {
+        return provider;
+    }
+
+    void setProvider(String provider) {
+        this.provider = provider;
+    }
+
+    public int getPromptTokens() {
+        return promptTokens;
+    }
+
+    void setPromptTokens(int promptTokens) {
+        this.promptTokens = promptTokens;
+    }
+
+    public int getCompletionTokens() {
+        return completionTokens;
+    }
+
+    void setCompletionTokens(int completionTokens) {
+        this.completionTokens = completionTokens;
+    }
+}
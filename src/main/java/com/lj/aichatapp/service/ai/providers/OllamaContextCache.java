@@ -0,0 +1,181 @@
+package com.lj.aichatapp.service.ai.providers;
+
+import com.lj.aichatapp.models.Message;
+import com.lj.aichatapp.models.MessageRole;
+import com.lj.aichatapp.service.ai.ChatRequest;
+import com.lj.aichatapp.service.ai.codec.OllamaStreamDecoder;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per conversation {@code context} arrays returned by Ollama's {@code /api/generate}.
+ * Sending the array back with only the new user message lets Ollama continue
+ * from the evaluated tokens instead of prefilling the whole history again.
+ *
+ * <p>A context is only reused when the messages in front of the new user
+ * message are exactly the ones it was built from: same model, same system
+ * prompt, same turns and the stored answer. Anything else (a trimmed window, a
+ * new summary, an edited system prompt, a cancelled answer) falls back to a
+ * full prefill, which then becomes the new context.
+ */
+public class OllamaContextCache {
+
+    private static final int MAX_CONVERSATIONS = 32;
+
+    private final Map<Integer, State> states = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, State> eldest) {
+            return size() > MAX_CONVERSATIONS;
+        }
+    };
+
+    /**
+     * Prepares a generate call for {@code request}, or returns {@code null} when
+     * the request cannot be expressed as one (no conversation, or the last
+     * message is not from the user).
+     */
+    public Turn begin(ChatRequest request) {
+        List<Message> messages = request.getMessages();
+        if (request.getConversationId() <= 0 || messages.isEmpty()) {
+            return null;
+        }
+        Message last = messages.get(messages.size() - 1);
+        if (last.getRole() != MessageRole.USER) {
+            return null;
+        }
+
+        List<Message> prefix = messages.subList(0, messages.size() - 1);
+        long fingerprint = fingerprint(prefix);
+        State state;
+        synchronized (states) {
+            state = states.get(request.getConversationId());
+        }
+
+        long after = extend(fingerprint, last);
+        if (state != null && state.model.equals(request.getModel())
+                && state.messageCount == prefix.size() && state.fingerprint == fingerprint) {
+            return new Turn(request.getConversationId(), request.getModel(), state.context, null, last.getContent(), after, messages.size());
+        }
+
+        String system = null;
+        int start = 0;
+        if (!prefix.isEmpty() && prefix.get(0).getRole() == MessageRole.SYSTEM) {
+            system = prefix.get(0).getContent();
+            start = 1;
+        }
+        String prompt = render(prefix.subList(start, prefix.size()), last);
+        return new Turn(request.getConversationId(), request.getModel(), null, system, prompt, after, messages.size());
+    }
+
+    /**
+     * Stores the context of a finished turn so the next message can build on it.
+     */
+    public void complete(Turn turn, OllamaStreamDecoder.Result result) {
+        // An unfinished turn keeps the previous state; its fingerprint no longer matches anyway.
+        if (!result.isDone() || result.isCancelled() || result.getContext() == null) {
+            return;
+        }
+        Message answer = new Message(MessageRole.ASSISTANT, result.getContent());
+        State state = new State(turn.model, result.getContext(), extend(turn.fingerprint, answer), turn.messageCount + 1);
+        synchronized (states) {
+            states.put(turn.conversationId, state);
+        }
+    }
+
+    public void invalidate(int conversationId) {
+        synchronized (states) {
+            states.remove(conversationId);
+        }
+    }
+
+    public void clear() {
+        synchronized (states) {
+            states.clear();
+        }
+    }
+
+    /**
+     * Earlier turns without a context to continue from are folded into the
+     * prompt as a transcript; the first turn of a conversation is sent as is.
+     */
+    private static String render(List<Message> history, Message last) {
+        if (history.isEmpty()) {
+            return last.getContent();
+        }
+        StringBuilder sb = new StringBuilder("Conversation so far:\n\n");
+        for (Message message : history) {
+            sb.append(message.getRole() == MessageRole.USER ? "User: " : "Assistant: ");
+            sb.append(message.getContent()).append("\n\n");
+        }
+        sb.append("Reply to the user's latest message:\n").append(last.getContent());
+        return sb.toString();
+    }
+
+    private static long fingerprint(List<Message> messages) {
+        long hash = 17;
+        for (Message message : messages) {
+            hash = extend(hash, message);
+        }
+        return hash;
+    }
+
+    private static long extend(long hash, Message message) {
+        String content = message.getContent();
+        hash = hash * 31 + message.getRole().ordinal();
+        hash = hash * 1_000_003 + (content == null ? 0 : content.hashCode());
+        return hash * 31 + (content == null ? 0 : content.length());
+    }
+
+    public static final class Turn {
+        private final int conversationId;
+        private final String model;
+        private final int[] context;
+        private final String system;
+        private final String prompt;
+        private final long fingerprint;
+        private final int messageCount;
+
+        private Turn(int conversationId, String model, int[] context, String system, String prompt,
+                     long fingerprint, int messageCount) {
+            this.conversationId = conversationId;
+            this.model = model;
+            this.context = context;
+            this.system = system;
+            this.prompt = prompt;
+            this.fingerprint = fingerprint;
+            this.messageCount = messageCount;
+        }
+
+        public boolean isReused() {
+            return context != null;
+        }
+
+        public int[] getContext() {
+            return context;
+        }
+
+        public String getSystem() {
+            return system;
+        }
+
+        public String getPrompt() {
+            return prompt;
+        }
+    }
+
+    private static final class State {
+        private final String model;
+        private final int[] context;
+        private final long fingerprint;
+        private final int messageCount;
+
+        private State(String model, int[] context, long fingerprint, int messageCount) {
+            this.model = model;
+            this.context = context;
+            this.fingerprint = fingerprint;
+            this.messageCount = messageCount;
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package com.lj.aichatapp.service.ai.providers;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lj.aichatapp.utils.Logger;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The Ollama hosts requests can go to. With more than one host, each is
+ * health checked in the background through {@code /api/tags} (installed
+ * models) and {@code /api/ps} (models in memory), and every request goes to
+ * <ol>
+ *     <li>the host its conversation used last, unless that host is down or
+ *     busier than the others, so the host's KV cache stays useful,</li>
+ *     <li>otherwise a healthy host that has the model loaded, then one that
+ *     has it installed, each time the one with the fewest requests in flight.</li>
+ * </ol>
+ * A single host is used as is, without any health checks.
+ */
+public class OllamaHostPool {
+
+    private static final long CHECK_INTERVAL_MS = 15_000;
+    private static final Duration CHECK_TIMEOUT = Duration.ofSeconds(3);
+    private static final int MAX_STICKY_CONVERSATIONS = 256;
+
+    private final HttpClient http;
+    private final ObjectMapper mapper;
+    private final List<Host> hosts;
+    private final Map<Integer, Host> sticky = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Host> eldest) {
+            return size() > MAX_STICKY_CONVERSATIONS;
+        }
+    };
+    private ScheduledExecutorService healthTimer;
+
+    public OllamaHostPool(List<String> urls, HttpClient http, ObjectMapper mapper) {
+        this.http = http;
+        this.mapper = mapper;
+        List<Host> list = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        for (String url : urls) {
+            String normalized = normalize(url);
+            if (!normalized.isEmpty() && seen.add(normalized)) {
+                list.add(new Host(normalized));
+            }
+        }
+        if (list.isEmpty()) {
+            // Keep the old behaviour of failing each request on the unusable host.
+            list.add(new Host(""));
+        }
+        this.hosts = Collections.unmodifiableList(list);
+        if (hosts.size() > 1) {
+            healthTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "ollama-health");
+                t.setDaemon(true);
+                return t;
+            });
+            healthTimer.scheduleWithFixedDelay(this::checkAll, 0, CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public List<Host> getHosts() {
+        return hosts;
+    }
+
+    /**
+     * Picks the host for a request and counts it as in flight until
+     * {@link #release(Host, String, boolean)}.
+     */
+    public Host acquire(int conversationId, String model) {
+        Host chosen = hosts.size() == 1 ? hosts.get(0) : choose(conversationId, model);
+        chosen.outstanding.incrementAndGet();
+        if (hosts.size() > 1 && conversationId > 0) {
+            synchronized (sticky) {
+                sticky.put(conversationId, chosen);
+            }
+        }
+        return chosen;
+    }
+
+    /**
+     * Counts a request to a host the caller picked itself, such as a preload
+     * sent to every host, as in flight.
+     */
+    public Host acquire(Host host) {
+        host.outstanding.incrementAndGet();
+        return host;
+    }
+
+    /**
+     * Hosts that are up and have {@code model} installed (or have not said),
+     * or every host when none is known to be.
+     */
+    public List<Host> hostsFor(String model) {
+        String wanted = canonical(model);
+        List<Host> candidates = new ArrayList<>();
+        for (Host host : hosts) {
+            if (host.healthy && (host.installed.isEmpty() || host.installed.contains(wanted))) {
+                candidates.add(host);
+            }
+        }
+        if (candidates.isEmpty()) {
+            // Nothing known to be up: let the request find out rather than fail it here.
+            candidates.addAll(hosts);
+        }
+        return candidates;
+    }
+
+    /**
+     * Ends a request. A failed connection marks the host down until its next
+     * successful health check; a success means the model is now loaded there.
+     */
+    public void release(Host host, String model, boolean hostFailed) {
+        host.outstanding.decrementAndGet();
+        if (hosts.size() == 1) {
+            return;
+        }
+        if (hostFailed) {
+            if (host.healthy) {
+                host.healthy = false;
+                Logger.info("Ollama host " + host.url + " failed a request, taking it out of rotation");
+            }
+        } else {
+            host.loaded.add(canonical(model));
+        }
+    }
+
+    public void forget(int conversationId) {
+        synchronized (sticky) {
+            sticky.remove(conversationId);
+        }
+    }
+
+    public void shutdown() {
+        if (healthTimer != null) {
+            healthTimer.shutdownNow();
+        }
+    }
+
+    private Host choose(int conversationId, String model) {
+        String wanted = canonical(model);
+        List<Host> candidates = hostsFor(model);
+
+        int least = Integer.MAX_VALUE;
+        for (Host host : candidates) {
+            least = Math.min(least, host.outstanding.get());
+        }
+        Host previous;
+        synchronized (sticky) {
+            previous = conversationId > 0 ? sticky.get(conversationId) : null;
+        }
+        if (previous != null && candidates.contains(previous) && previous.outstanding.get() <= least + 1) {
+            return previous;
+        }
+
+        Host best = null;
+        for (Host host : candidates) {
+            if (best == null || score(host, wanted) < score(best, wanted)) {
+                best = host;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Lower is better: a host with the model in memory beats a cold one unless
+     * it has two more requests in flight.
+     */
+    private static int score(Host host, String model) {
+        return host.outstanding.get() * 2 + (host.loaded.contains(model) ? 0 : 3);
+    }
+
+    private void checkAll() {
+        for (Host host : hosts) {
+            CompletableFuture<JsonNode> tags = get(host.url + "/api/tags");
+            CompletableFuture<JsonNode> ps = get(host.url + "/api/ps");
+            tags.thenCombine(ps, (installed, running) -> {
+                Set<String> loaded = Collections.newSetFromMap(new ConcurrentHashMap<>());
+                loaded.addAll(names(running));
+                host.installed = names(installed);
+                host.loaded = loaded;
+                if (!host.healthy) {
+                    Logger.info(String.format("Ollama host %s is up (%d models, loaded: %s)", host.url, host.installed.size(), host.loaded));
+                }
+                host.healthy = true;
+                return null;
+            }).exceptionally(ex -> {
+                if (host.healthy) {
+                    Logger.info("Ollama host " + host.url + " is down: " + ex.getMessage());
+                }
+                host.healthy = false;
+                return null;
+            });
+        }
+    }
+
+    private CompletableFuture<JsonNode> get(String url) {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(url))
+                .version(HttpClient.Version.HTTP_1_1)
+                .timeout(CHECK_TIMEOUT)
+                .GET()
+                .build();
+        return http.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray()).thenApply(resp -> {
+            if (resp.statusCode() < 200 || resp.statusCode() >= 300) {
+                throw new IllegalStateException("status " + resp.statusCode() + " from " + url);
+            }
+            try {
+                return mapper.readTree(resp.body());
+            } catch (IOException e) {
+                throw new IllegalStateException("unreadable answer from " + url, e);
+            }
+        });
+    }
+
+    private static Set<String> names(JsonNode root) {
+        Set<String> names = new HashSet<>();
+        for (JsonNode model : root.path("models")) {
+            names.add(canonical(model.path("name").asText(model.path("model").asText())));
+        }
+        return names;
+    }
+
+    /**
+     * Ollama lists {@code llama3} as {@code llama3:latest}.
+     */
+    private static String canonical(String model) {
+        if (model == null) {
+            return "";
+        }
+        return model.indexOf(':') < 0 ? model + ":latest" : model;
+    }
+
+    private static String normalize(String url) {
+        String trimmed = url == null ? "" : url.trim();
+        return trimmed.endsWith("/") ? trimmed.substring(0, trimmed.length() - 1) : trimmed;
+    }
+
+    public static final class Host {
+        private final String url;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private volatile boolean healthy = true;
+        private volatile Set<String> installed = Set.of();
+        private volatile Set<String> loaded = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+        private Host(String url) {
+            this.url = url;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public boolean isHealthy() {
+            return healthy;
+        }
+
+        public int getOutstanding() {
+            return outstanding.get();
+        }
+    }
+}
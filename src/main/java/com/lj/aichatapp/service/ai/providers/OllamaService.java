@@ -1,78 +1,111 @@
 package com.lj.aichatapp.service.ai.providers;
 
-import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ArrayNode;
-import com.fasterxml.jackson.databind.node.ObjectNode;
-import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import com.lj.aichatapp.models.Message;
-import com.lj.aichatapp.models.UserPreferences;
 import com.lj.aichatapp.service.ai.AIService;
+import com.lj.aichatapp.service.ai.ChatRequest;
+import com.lj.aichatapp.service.ai.codec.ChatRequestEncoder;
+import com.lj.aichatapp.service.ai.codec.OllamaStreamDecoder;
+import com.lj.aichatapp.service.ai.codec.PayloadCache;
+import com.lj.aichatapp.service.ai.codec.StreamErrorException;
+import com.lj.aichatapp.utils.FutureUtils;
+import com.lj.aichatapp.utils.Logger;
 
-import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 
 public class OllamaService implements AIService {
 
+    // Ollama reports a load duration of a few ms for a resident model.
+    private static final long COLD_LOAD_THRESHOLD_MS = 250;
+    private static final String CALIBRATION_PROMPT = "Explain in a few sentences why the sky is blue.";
+    private static final int CALIBRATION_TOKENS = 64;
+
     private final HttpClient http;
-    private final String baseUrl;
-    private final ObjectMapper mapper = new ObjectMapper();
-
-    public OllamaService(UserPreferences prefs) {
-        this.http = HttpClient.newHttpClient();
-        String host = prefs.getOllamaHost();
-        if (host != null && host.endsWith("/")) {
-            this.baseUrl = host.substring(0, host.length() - 1);
-        } else {
-            this.baseUrl = host;
-        }
-        this.mapper.registerModule(new JavaTimeModule());
+    private final Executor streamExecutor;
+    private final OllamaHostPool hosts;
+    private final String keepAlive;
+    private final OllamaTuning tuning;
+    private final ObjectMapper mapper;
+    private final OllamaStreamDecoder decoder;
+    private final ChatRequestEncoder encoder;
+    private final OllamaContextCache contexts;
+
+    /**
+     * @param hosts    the Ollama hosts to spread requests over
+     * @param contexts conversation contexts to continue from with {@code /api/generate},
+     *                 or {@code null} to send every turn to {@code /api/chat}
+     */
+    public OllamaService(OllamaHostPool hosts, String keepAlive, OllamaTuning tuning, OllamaContextCache contexts,
+                         HttpClient http, Executor streamExecutor, ObjectMapper mapper, PayloadCache payloadCache) {
+        this.hosts = hosts;
+        this.http = http;
+        this.streamExecutor = streamExecutor;
+        this.tuning = tuning;
+        this.contexts = contexts;
+        this.keepAlive = keepAlive == null || keepAlive.isBlank() ? null : keepAlive.trim();
+        this.mapper = mapper;
+        this.decoder = new OllamaStreamDecoder(mapper.getFactory());
+        this.encoder = new ChatRequestEncoder(mapper.getFactory(), payloadCache);
     }
 
     @Override
-    public CompletableFuture<String> send(List<Message> conversation, String model, Consumer<String> onChunkReceived) {
+    public CompletableFuture<String> send(ChatRequest request, Consumer<String> onChunkReceived) {
         if (onChunkReceived == null) {
-            return sendNonStreaming(conversation, model);
+            return sendNonStreaming(request);
         }
-        
-        try {
-            String endpoint = baseUrl + "/api/chat";
-
-            ObjectNode root = mapper.createObjectNode();
-            root.put("model", model);
-            root.put("stream", true);
 
-            ArrayNode messagesNode = root.putArray("messages");
-            for (Message m : conversation) {
-                ObjectNode msgNode = messagesNode.addObject();
-                msgNode.put("role", m.getRole().name().toLowerCase());
-                msgNode.put("content", m.getContent());
-            }
-
-            String payload = mapper.writeValueAsString(root);
+        String model = request.getModel();
+        OllamaHostPool.Host host = hosts.acquire(request.getConversationId(), model);
+        CompletableFuture<String> finalFuture = new CompletableFuture<>();
+        finalFuture.whenComplete((res, ex) -> releaseHost(host, model, finalFuture, ex));
+        try {
+            OllamaContextCache.Turn turn = contexts != null ? contexts.begin(request) : null;
+            HttpRequest.BodyPublisher body = turn != null
+                    ? HttpRequest.BodyPublishers.ofByteArray(generateTurnBody(model, turn, tuning.optionsFor(model, request.getMessages())))
+                    : encoder.publisher(request.getConversationId(), model, request.getMessages(), true, extraFields(model, request.getMessages()));
 
             HttpRequest req = HttpRequest.newBuilder()
-                    .uri(URI.create(endpoint))
+                    .uri(URI.create(host.getUrl() + (turn != null ? "/api/generate" : "/api/chat")))
+                    .version(HttpClient.Version.HTTP_1_1)
                     .header("Content-Type", "application/json")
-                    .POST(HttpRequest.BodyPublishers.ofString(payload))
+                    .POST(body)
                     .build();
 
-            CompletableFuture<String> finalFuture = new CompletableFuture<>();
+            long start = System.nanoTime();
+            AtomicLong firstChunkAt = new AtomicLong();
+            Consumer<String> timedChunk = chunk -> {
+                if (finalFuture.isCancelled()) {
+                    return;
+                }
+                firstChunkAt.compareAndSet(0, System.nanoTime());
+                onChunkReceived.accept(chunk);
+            };
+
             AtomicReference<InputStream> streamRef = new AtomicReference<>();
+            CompletableFuture<HttpResponse<InputStream>> exchange = http.sendAsync(req, HttpResponse.BodyHandlers.ofInputStream());
 
+            // Closing the body unblocks the decoder's read and releases the connection;
+            // cancelling the exchange covers a request still waiting for its headers.
             finalFuture.whenComplete((res, ex) -> {
                 if (finalFuture.isCancelled()) {
+                    exchange.cancel(true);
                     InputStream is = streamRef.get();
                     if (is != null) {
                         try {
@@ -83,7 +116,7 @@ public class OllamaService implements AIService {
                 }
             });
 
-            http.sendAsync(req, HttpResponse.BodyHandlers.ofInputStream())
+            exchange
                     .thenAccept(resp -> {
                         if (resp.statusCode() >= 200 && resp.statusCode() < 300) {
                             InputStream is = resp.body();
@@ -98,47 +131,30 @@ public class OllamaService implements AIService {
                             }
 
                             CompletableFuture.runAsync(() -> {
-                                StringBuilder fullResponse = new StringBuilder();
-                                try (BufferedReader reader = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8))) {
-                                    String line;
-                                    while ((line = reader.readLine()) != null) {
-                                        if (finalFuture.isCancelled()) {
-                                            break;
-                                        }
-                                        if (line.isBlank()) {
-                                            continue;
-                                        }
-
-                                        try {
-                                            JsonNode node = mapper.readTree(line);
-                                            String chunk = "";
-                                            if (node.has("message") && node.get("message").has("content")) {
-                                                chunk = node.get("message").get("content").asText();
-                                            } else if (node.has("response")) {
-                                                chunk = node.get("response").asText();
-                                            }
-
-                                            if (!chunk.isEmpty()) {
-                                                fullResponse.append(chunk);
-                                                onChunkReceived.accept(chunk);
-                                            }
-
-                                            if (node.has("done") && node.get("done").asBoolean()) {
-                                                break;
-                                            }
-                                        } catch (Exception e) {
-                                            System.err.println("Error parsing stream line: " + line);
-                                        }
+                                try {
+                                    OllamaStreamDecoder.Result result = decoder.decode(is, timedChunk, finalFuture::isCancelled);
+                                    if (turn != null) {
+                                        contexts.complete(turn, result);
                                     }
-
-                                    if (!finalFuture.isCancelled()) {
-                                        finalFuture.complete(fullResponse.toString());
+                                    logStats(model, result, turn);
+                                    request.setModelLoadNanos(result.getLoadDurationNanos());
+                                    logFirstToken(model, result, start, firstChunkAt.get());
+                                    if (finalFuture.isCancelled()) {
+                                        return;
+                                    }
+                                    if (!result.isDone()) {
+                                        finalFuture.completeExceptionally(new StreamErrorException("Ollama stream ended before done"));
+                                    } else {
+                                        finalFuture.complete(result.getContent());
                                     }
                                 } catch (IOException e) {
                                     if (!finalFuture.isCancelled()) {
                                         finalFuture.completeExceptionally(e);
                                     }
                                 }
+                            }, streamExecutor).exceptionally(ex -> {
+                                finalFuture.completeExceptionally(ex);
+                                return null;
                             });
                         } else {
                             try (InputStream is = resp.body()) {
@@ -153,57 +169,256 @@ public class OllamaService implements AIService {
                         finalFuture.completeExceptionally(ex);
                         return null;
                     });
-
-            return finalFuture;
         } catch (Exception e) {
-            CompletableFuture<String> failed = new CompletableFuture<>();
-            failed.completeExceptionally(e);
-            return failed;
+            // Completing the future also releases the host, e.g. after a host URL without a scheme.
+            finalFuture.completeExceptionally(e);
         }
+        return finalFuture;
     }
 
-    private CompletableFuture<String> sendNonStreaming(List<Message> conversation, String model) {
-        return CompletableFuture.supplyAsync(() -> {
-            try {
-                String endpoint = baseUrl + "/api/chat";
-
-                ObjectNode root = mapper.createObjectNode();
-                root.put("model", model);
-                root.put("stream", false);
+    private CompletableFuture<String> sendNonStreaming(ChatRequest request) {
+        String model = request.getModel();
+        CompletableFuture<String> future = new CompletableFuture<>();
+        OllamaHostPool.Host host = hosts.acquire(request.getConversationId(), model);
+        future.whenComplete((res, ex) -> releaseHost(host, model, future, ex));
+        try {
+            HttpRequest req = HttpRequest.newBuilder()
+                    .uri(URI.create(host.getUrl() + "/api/chat"))
+                    .version(HttpClient.Version.HTTP_1_1)
+                    .header("Content-Type", "application/json")
+                    .POST(encoder.publisher(request.getConversationId(), model, request.getMessages(), false, extraFields(model, request.getMessages())))
+                    .build();
 
-                ArrayNode messagesNode = root.putArray("messages");
-                for (Message m : conversation) {
-                    ObjectNode msgNode = messagesNode.addObject();
-                    msgNode.put("role", m.getRole().name().toLowerCase());
-                    msgNode.put("content", m.getContent());
+            CompletableFuture<HttpResponse<byte[]>> exchange = http.sendAsync(req, HttpResponse.BodyHandlers.ofByteArray());
+            future.whenComplete((res, ex) -> {
+                if (future.isCancelled()) {
+                    exchange.cancel(true);
                 }
+            });
+            exchange.whenComplete((resp, ex) -> {
+                if (ex != null) {
+                    Throwable cause = FutureUtils.unwrap(ex);
+                    future.completeExceptionally(new RuntimeException("Failed to communicate with Ollama: " + cause.getMessage(), cause));
+                    return;
+                }
+                if (resp.statusCode() < 200 || resp.statusCode() >= 300) {
+                    future.completeExceptionally(new RuntimeException("Ollama error: " + resp.statusCode() + " "
+                            + new String(resp.body(), StandardCharsets.UTF_8)));
+                    return;
+                }
+                try {
+                    OllamaStreamDecoder.Result result = decoder.decode(new ByteArrayInputStream(resp.body()), null, null);
+                    logStats(model, result, null);
+                    if (result.hasContent()) {
+                        future.complete(result.getContent());
+                    } else {
+                        future.completeExceptionally(new RuntimeException("Unexpected response format from Ollama"));
+                    }
+                } catch (IOException e) {
+                    future.completeExceptionally(new RuntimeException("Failed to communicate with Ollama: " + e.getMessage(), e));
+                }
+            });
+        } catch (IOException | RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Loads {@code model} into memory without generating anything, so the first
+     * chat message does not pay for the model load. Sending the request again
+     * while the model is resident just renews its keep-alive. With several
+     * hosts the model is loaded on every host that can serve it, so whichever
+     * one a conversation lands on is warm.
+     */
+    public CompletableFuture<Void> preload(String model) {
+        List<CompletableFuture<Void>> loads = new ArrayList<>();
+        for (OllamaHostPool.Host host : hosts.hostsFor(model)) {
+            loads.add(preload(hosts.acquire(host), model));
+        }
+        return CompletableFuture.allOf(loads.toArray(new CompletableFuture<?>[0]));
+    }
 
-                String payload = mapper.writeValueAsString(root);
+    private CompletableFuture<Void> preload(OllamaHostPool.Host host, String model) {
+        try {
+            HttpRequest req = HttpRequest.newBuilder()
+                    .uri(URI.create(host.getUrl() + "/api/generate"))
+                    .version(HttpClient.Version.HTTP_1_1)
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(generateBody(model, null, tuning.optionsFor(model, List.of()))))
+                    .build();
+
+            long start = System.nanoTime();
+            return http.sendAsync(req, HttpResponse.BodyHandlers.ofInputStream())
+                    .thenAccept(resp -> {
+                        try (InputStream is = resp.body()) {
+                            if (resp.statusCode() < 200 || resp.statusCode() >= 300) {
+                                Logger.info("Ollama preload of " + model + " failed with status " + resp.statusCode());
+                                return;
+                            }
+                            OllamaStreamDecoder.Result result = decoder.decode(is, null, null);
+                            long loadMs = TimeUnit.NANOSECONDS.toMillis(result.getLoadDurationNanos());
+                            if (loadMs > COLD_LOAD_THRESHOLD_MS) {
+                                Logger.info(String.format("Preloaded Ollama model %s on %s in %d ms (load %d ms, keep_alive %s)",
+                                        model, host.getUrl(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), loadMs, keepAlive));
+                            }
+                        } catch (IOException e) {
+                            Logger.info("Ollama preload of " + model + " failed: " + e.getMessage());
+                        }
+                    })
+                    .exceptionally(ex -> {
+                        Logger.info("Ollama preload of " + model + " failed: " + ex.getMessage());
+                        return null;
+                    })
+                    .whenComplete((v, ex) -> hosts.release(host, model, false));
+        } catch (IOException | RuntimeException e) {
+            hosts.release(host, model, false);
+            return CompletableFuture.failedFuture(e);
+        }
+    }
 
-                HttpRequest req = HttpRequest.newBuilder()
-                        .uri(URI.create(endpoint))
-                        .header("Content-Type", "application/json")
-                        .POST(HttpRequest.BodyPublishers.ofString(payload))
-                        .build();
+    /**
+     * Generates a short fixed answer with the given profile and returns the
+     * measured generation speed in tokens per second.
+     */
+    public CompletableFuture<Double> calibrate(String model, OllamaTuning profile) {
+        OllamaHostPool.Host host = hosts.acquire(ChatRequest.NO_CONVERSATION, model);
+        try {
+            HttpRequest req = HttpRequest.newBuilder()
+                    .uri(URI.create(host.getUrl() + "/api/generate"))
+                    .version(HttpClient.Version.HTTP_1_1)
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(generateBody(model, CALIBRATION_PROMPT,
+                            profile.optionsFor(model, List.of()).withNumPredict(CALIBRATION_TOKENS))))
+                    .build();
 
-                HttpResponse<String> resp = http.send(req, HttpResponse.BodyHandlers.ofString());
+            return http.sendAsync(req, HttpResponse.BodyHandlers.ofInputStream())
+                    .thenApply(resp -> {
+                        try (InputStream is = resp.body()) {
+                            if (resp.statusCode() < 200 || resp.statusCode() >= 300) {
+                                throw new RuntimeException("Ollama error: " + resp.statusCode() + " - "
+                                        + new String(is.readAllBytes(), StandardCharsets.UTF_8));
+                            }
+                            OllamaStreamDecoder.Result result = decoder.decode(is, null, null);
+                            Logger.info(String.format("Calibrated %s with profile %s (%s): %.1f tok/s",
+                                    model, profile.getProfile(), profile.optionsFor(model, List.of()), result.getTokensPerSecond()));
+                            return result.getTokensPerSecond();
+                        } catch (IOException e) {
+                            throw new RuntimeException("Failed to communicate with Ollama: " + e.getMessage(), e);
+                        }
+                    })
+                    .whenComplete((tps, ex) -> hosts.release(host, model, false));
+        } catch (IOException | RuntimeException e) {
+            hosts.release(host, model, false);
+            return CompletableFuture.failedFuture(e);
+        }
+    }
 
-                if (resp.statusCode() >= 200 && resp.statusCode() < 300) {
-                    JsonNode node = mapper.readTree(resp.body());
-                    
-                    if (node.has("message") && node.get("message").has("content")) {
-                        return node.get("message").get("content").asText();
-                    } else if (node.has("response")) {
-                        return node.get("response").asText();
-                    } else {
-                        throw new RuntimeException("Unexpected response format from Ollama");
-                    }
-                } else {
-                    throw new RuntimeException("Ollama error: " + resp.statusCode() + " " + resp.body());
+    /**
+     * Connection level failures (refused, reset, timed out) count against the
+     * host; error answers, streams that report an error or stop early, and
+     * cancellations do not.
+     */
+    private void releaseHost(OllamaHostPool.Host host, String model, CompletableFuture<String> future, Throwable ex) {
+        boolean hostFailed = false;
+        if (ex != null && !future.isCancelled()) {
+            for (Throwable cause = FutureUtils.unwrap(ex); cause != null; cause = cause.getCause()) {
+                if (cause instanceof StreamErrorException) {
+                    break;
+                }
+                if (cause instanceof IOException) {
+                    hostFailed = true;
+                    break;
                 }
-            } catch (IOException | InterruptedException ex) {
-                throw new RuntimeException("Failed to communicate with Ollama: " + ex.getMessage(), ex);
             }
-        });
+        }
+        hosts.release(host, model, hostFailed);
+    }
+
+    private ChatRequestEncoder.FieldWriter extraFields(String model, List<Message> messages) {
+        OllamaTuning.Options options = tuning.optionsFor(model, messages);
+        return gen -> {
+            writeKeepAlive(gen);
+            options.write(gen);
+        };
+    }
+
+    private byte[] generateBody(String model, String prompt, OllamaTuning.Options options) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+        try (JsonGenerator gen = mapper.getFactory().createGenerator(out)) {
+            gen.writeStartObject();
+            gen.writeStringField("model", model);
+            if (prompt != null) {
+                gen.writeStringField("prompt", prompt);
+            }
+            gen.writeBooleanField("stream", false);
+            writeKeepAlive(gen);
+            options.write(gen);
+            gen.writeEndObject();
+        }
+        return out.toByteArray();
+    }
+
+    private byte[] generateTurnBody(String model, OllamaContextCache.Turn turn, OllamaTuning.Options options) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(turn.getPrompt().length() + 256);
+        try (JsonGenerator gen = mapper.getFactory().createGenerator(out)) {
+            gen.writeStartObject();
+            gen.writeStringField("model", model);
+            if (turn.getSystem() != null) {
+                gen.writeStringField("system", turn.getSystem());
+            }
+            gen.writeStringField("prompt", turn.getPrompt());
+            if (turn.isReused()) {
+                int[] context = turn.getContext();
+                gen.writeFieldName("context");
+                gen.writeArray(context, 0, context.length);
+            }
+            gen.writeBooleanField("stream", true);
+            writeKeepAlive(gen);
+            options.write(gen);
+            gen.writeEndObject();
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Writes {@code keep_alive} as a number when it is plain seconds, since
+     * Ollama only accepts unit-less values in numeric form.
+     */
+    private void writeKeepAlive(JsonGenerator gen) throws IOException {
+        if (keepAlive == null) {
+            return;
+        }
+        try {
+            gen.writeNumberField("keep_alive", Long.parseLong(keepAlive));
+        } catch (NumberFormatException e) {
+            gen.writeStringField("keep_alive", keepAlive);
+        }
+    }
+
+    private void logFirstToken(String model, OllamaStreamDecoder.Result result, long start, long firstChunkAt) {
+        if (firstChunkAt == 0 || !result.isDone()) {
+            return;
+        }
+        long ttftMs = TimeUnit.NANOSECONDS.toMillis(firstChunkAt - start);
+        long loadMs = TimeUnit.NANOSECONDS.toMillis(result.getLoadDurationNanos());
+        boolean cold = loadMs > COLD_LOAD_THRESHOLD_MS;
+        Logger.info(String.format("Ollama %s first token after %d ms (%s%s)",
+                model, ttftMs, cold ? "cold, model load " : "warm", cold ? loadMs + " ms" : ""));
+    }
+
+    private void logStats(String model, OllamaStreamDecoder.Result result, OllamaContextCache.Turn turn) {
+        if (!result.isDone()) {
+            return;
+        }
+        String mode = turn == null ? "" : turn.isReused() ? " (context reused)" : " (full prefill)";
+        Logger.info(String.format("Ollama %s%s: prompt %d tokens in %d ms, load %d ms, generated %d tokens at %.1f tok/s",
+                model,
+                mode,
+                result.getPromptEvalCount(),
+                TimeUnit.NANOSECONDS.toMillis(result.getPromptEvalDurationNanos()),
+                TimeUnit.NANOSECONDS.toMillis(result.getLoadDurationNanos()),
+                result.getEvalCount(),
+                result.getTokensPerSecond()));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,188 @@
+package com.lj.aichatapp.service.ai.providers;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.lj.aichatapp.models.Message;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Turns a tuning profile into the {@code options} object of an Ollama request.
+ * "low-latency" favours a fast first token with a small context and batch,
+ * "high-throughput" favours generation speed on longer prompts, "auto" sizes
+ * threads and batch to this machine and picks {@code num_ctx} from the
+ * conversation, and "default" leaves everything to the server.
+ *
+ * <p>Ollama reloads the model whenever {@code num_ctx} changes, so the chosen
+ * context only ever grows per model and is rounded up to a power of two.
+ * Ollama drops the start of a prompt that does not fit {@code num_ctx}, so the
+ * context window is budgeted with {@link #contextLimit(String)}.
+ */
+public class OllamaTuning {
+
+    public static final String AUTO = "auto";
+    public static final String LOW_LATENCY = "low-latency";
+    public static final String HIGH_THROUGHPUT = "high-throughput";
+    public static final String DEFAULT = "default";
+    public static final List<String> PROFILES = List.of(AUTO, LOW_LATENCY, HIGH_THROUGHPUT, DEFAULT);
+
+    private static final int MIN_CONTEXT = 2048;
+    private static final int RESPONSE_HEADROOM_TOKENS = 1024;
+    private static final double CHARS_PER_TOKEN = 4.0;
+    private static final long GB = 1024L * 1024 * 1024;
+
+    private static final int PHYSICAL_CORES = detectPhysicalCores();
+    private static final long TOTAL_MEMORY = detectTotalMemory();
+
+    private final String profile;
+    private final Map<String, Integer> contextByModel = new ConcurrentHashMap<>();
+
+    public OllamaTuning(String profile) {
+        this.profile = profile == null || !PROFILES.contains(profile) ? DEFAULT : profile;
+    }
+
+    public String getProfile() {
+        return profile;
+    }
+
+    public Options optionsFor(String model, List<Message> messages) {
+        int threads = PHYSICAL_CORES;
+        switch (profile) {
+            case LOW_LATENCY:
+                return new Options(MIN_CONTEXT, threads, 128, null);
+            case HIGH_THROUGHPUT:
+                return new Options(Math.min(4096, maxContext()), threads, 512, null);
+            case AUTO:
+                return new Options(contextFor(model, estimateTokens(messages)), threads, autoBatch(), null);
+            case DEFAULT:
+            default:
+                return Options.NONE;
+        }
+    }
+
+    /**
+     * The largest {@code num_ctx} {@code profile} sends, or 0 when the server's
+     * own setting applies.
+     */
+    public static int contextLimit(String profile) {
+        if (profile == null) {
+            return 0;
+        }
+        switch (profile) {
+            case LOW_LATENCY:
+                return MIN_CONTEXT;
+            case HIGH_THROUGHPUT:
+                return Math.min(4096, maxContext());
+            case AUTO:
+                return maxContext();
+            default:
+                return 0;
+        }
+    }
+
+    private int contextFor(String model, long promptTokens) {
+        long needed = promptTokens + RESPONSE_HEADROOM_TOKENS;
+        int size = MIN_CONTEXT;
+        while (size < needed && size < maxContext()) {
+            size *= 2;
+        }
+        return contextByModel.merge(model, size, Math::max);
+    }
+
+    /**
+     * Rough upper bound for the KV cache on CPU-only machines.
+     */
+    private static int maxContext() {
+        if (TOTAL_MEMORY <= 0 || TOTAL_MEMORY < 8 * GB) {
+            return 4096;
+        }
+        if (TOTAL_MEMORY < 16 * GB) {
+            return 8192;
+        }
+        if (TOTAL_MEMORY < 32 * GB) {
+            return 16384;
+        }
+        return 32768;
+    }
+
+    private static int autoBatch() {
+        if (PHYSICAL_CORES <= 4) {
+            return 128;
+        }
+        return PHYSICAL_CORES <= 8 ? 256 : 512;
+    }
+
+    private static long estimateTokens(List<Message> messages) {
+        long chars = 0;
+        for (Message message : messages) {
+            if (message.getContent() != null) {
+                chars += message.getContent().length();
+            }
+        }
+        return (long) Math.ceil(chars / CHARS_PER_TOKEN);
+    }
+
+    /**
+     * The JVM only reports logical processors; assume SMT on machines with four or more.
+     */
+    private static int detectPhysicalCores() {
+        int logical = Runtime.getRuntime().availableProcessors();
+        return logical >= 4 ? logical / 2 : logical;
+    }
+
+    private static long detectTotalMemory() {
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) os).getTotalPhysicalMemorySize();
+        }
+        return -1;
+    }
+
+    public static final class Options {
+
+        static final Options NONE = new Options(null, null, null, null);
+
+        private final Integer numCtx;
+        private final Integer numThread;
+        private final Integer numBatch;
+        private final Integer numPredict;
+
+        Options(Integer numCtx, Integer numThread, Integer numBatch, Integer numPredict) {
+            this.numCtx = numCtx;
+            this.numThread = numThread;
+            this.numBatch = numBatch;
+            this.numPredict = numPredict;
+        }
+
+        Options withNumPredict(int numPredict) {
+            return new Options(numCtx, numThread, numBatch, numPredict);
+        }
+
+        void write(JsonGenerator gen) throws IOException {
+            if (numCtx == null && numThread == null && numBatch == null && numPredict == null) {
+                return;
+            }
+            gen.writeObjectFieldStart("options");
+            writeIfSet(gen, "num_ctx", numCtx);
+            writeIfSet(gen, "num_thread", numThread);
+            writeIfSet(gen, "num_batch", numBatch);
+            writeIfSet(gen, "num_predict", numPredict);
+            gen.writeEndObject();
+        }
+
+        private static void writeIfSet(JsonGenerator gen, String name, Integer value) throws IOException {
+            if (value != null) {
+                gen.writeNumberField(name, value);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return String.format("num_ctx=%s num_thread=%s num_batch=%s num_predict=%s", numCtx, numThread, numBatch, numPredict);
+        }
+    }
+}
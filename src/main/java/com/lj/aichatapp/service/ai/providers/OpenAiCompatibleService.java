@@ -0,0 +1,125 @@
+package com.lj.aichatapp.service.ai.providers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lj.aichatapp.service.ai.AIService;
+import com.lj.aichatapp.service.ai.ChatRequest;
+import com.lj.aichatapp.service.ai.codec.ChatRequestEncoder;
+import com.lj.aichatapp.service.ai.codec.PayloadCache;
+import com.lj.aichatapp.service.ai.codec.SseBodySubscriber;
+import com.lj.aichatapp.service.ai.codec.StreamMetadata;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Shared streaming implementation for providers that expose the OpenAI
+ * {@code /chat/completions} SSE protocol.
+ */
+public abstract class OpenAiCompatibleService implements AIService {
+
+    protected final HttpClient http;
+    protected final ObjectMapper mapper;
+    protected final String apiKey;
+    protected final String endpoint;
+    protected final ChatRequestEncoder encoder;
+    private volatile ResponseListener responseListener;
+
+    protected OpenAiCompatibleService(String apiKey, String endpoint, HttpClient http, ObjectMapper mapper, PayloadCache payloadCache) {
+        this.apiKey = apiKey == null ? "" : apiKey.trim();
+        this.endpoint = endpoint;
+        this.http = http;
+        this.mapper = mapper;
+        this.encoder = new ChatRequestEncoder(mapper.getFactory(), payloadCache);
+    }
+
+    /**
+     * Formats the message used when the provider answers with a non-2xx status.
+     */
+    protected abstract String formatError(int statusCode, String body);
+
+    /**
+     * Receives the status and headers of every response as soon as they arrive,
+     * before the body is streamed. Used to track provider rate limits.
+     */
+    public void setResponseListener(ResponseListener responseListener) {
+        this.responseListener = responseListener;
+    }
+
+    /**
+     * Hook for provider specific request headers.
+     */
+    protected void customizeRequest(HttpRequest.Builder builder) {
+    }
+
+    /**
+     * Hook for provider specific payload fields; {@code null} for none.
+     */
+    protected ChatRequestEncoder.FieldWriter extraFields(ChatRequest request) {
+        return null;
+    }
+
+    /**
+     * Called after a stream ended with {@code [DONE]}, with what the stream
+     * reported about itself.
+     */
+    protected void completed(ChatRequest request, StreamMetadata metadata) {
+    }
+
+    @Override
+    public CompletableFuture<String> send(ChatRequest request, Consumer<String> onChunk) {
+        CompletableFuture<String> future = new CompletableFuture<>();
+
+        try {
+            HttpRequest.Builder builder = HttpRequest.newBuilder()
+                    .uri(URI.create(endpoint))
+                    .header("Authorization", "Bearer " + apiKey)
+                    .header("Content-Type", "application/json")
+                    .header("Accept", "text/event-stream")
+                    .POST(encoder.publisher(request.getConversationId(), request.getModel(), request.getMessages(), true, extraFields(request)));
+            customizeRequest(builder);
+
+            StreamMetadata metadata = new StreamMetadata();
+            HttpResponse.BodyHandler<String> handler = SseBodySubscriber.handler(mapper.getFactory(), onChunk, future, metadata);
+            CompletableFuture<HttpResponse<String>> exchange = http.sendAsync(builder.build(), info -> {
+                ResponseListener listener = responseListener;
+                if (listener != null) {
+                    listener.onResponse(info.statusCode(), info.headers());
+                }
+                return handler.apply(info);
+            });
+            // Aborts the exchange when the caller gives up before the response headers arrived.
+            future.whenComplete((r, ex) -> {
+                if (future.isCancelled()) {
+                    exchange.cancel(true);
+                }
+            });
+            exchange.whenComplete((response, ex) -> {
+                if (ex != null) {
+                    future.completeExceptionally(ex);
+                } else if (response.statusCode() >= 200 && response.statusCode() < 300) {
+                    completed(request, metadata);
+                    future.complete(response.body());
+                } else {
+                    future.completeExceptionally(new ProviderHttpException(
+                            formatError(response.statusCode(), response.body()), response.statusCode(), response.headers()));
+                }
+            });
+
+        } catch (IOException e) {
+            future.completeExceptionally(e);
+        }
+
+        return future;
+    }
+
+    @FunctionalInterface
+    public interface ResponseListener {
+        void onResponse(int statusCode, HttpHeaders headers);
+    }
+}
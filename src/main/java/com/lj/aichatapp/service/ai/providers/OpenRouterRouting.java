@@ -0,0 +1,247 @@
+package com.lj.aichatapp.service.ai.providers;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lj.aichatapp.infrastructure.preferences.PreferencesManager;
+import com.lj.aichatapp.models.SpeedProfile;
+import com.lj.aichatapp.models.UpstreamStats;
+import com.lj.aichatapp.models.UserPreferences;
+import com.lj.aichatapp.service.ai.codec.ChatRequestEncoder;
+import com.lj.aichatapp.service.ai.codec.StreamMetadata;
+import com.lj.aichatapp.utils.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Turns a model's {@link SpeedProfile} into OpenRouter's {@code provider}
+ * routing object, and learns from every answer which upstream serves each
+ * model fastest. "default" (the default) leaves routing to OpenRouter,
+ * "throughput" and "latency" let OpenRouter sort upstreams by its own recent
+ * measurements, and "auto" leaves routing to OpenRouter until at least two
+ * upstreams have answered a few times, then puts the one with the best
+ * measured tokens per second first. Every fifth auto request is still sent
+ * unpinned so the other upstreams keep being measured, and measurements older
+ * than six hours are ignored and restarted. Measurements are kept in
+ * {@code openrouter_stats.json}.
+ */
+public class OpenRouterRouting {
+
+    public static final String AUTO = "auto";
+    public static final String THROUGHPUT = "throughput";
+    public static final String LATENCY = "latency";
+    public static final String DEFAULT = "default";
+    public static final List<String> PROFILES = List.of(AUTO, THROUGHPUT, LATENCY, DEFAULT);
+
+    private static final String STATS_FILE_NAME = "openrouter_stats.json";
+    private static final int MIN_SAMPLES = 3;
+    private static final int MIN_UPSTREAMS = 2;
+    private static final int EXPLORE_EVERY = 5;
+    private static final long MAX_AGE_MS = TimeUnit.HOURS.toMillis(6);
+    private static final double WEIGHT = 0.3;
+
+    private final UserPreferences prefs;
+    private final Executor io;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Map<String, UpstreamStats> stats = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> autoRequests = new ConcurrentHashMap<>();
+    private final AtomicBoolean savePending = new AtomicBoolean();
+
+    public OpenRouterRouting(UserPreferences prefs, Executor io) {
+        this.prefs = prefs;
+        this.io = io;
+        load();
+    }
+
+    public SpeedProfile profileFor(String model) {
+        SpeedProfile profile = prefs.getOpenRouterSpeedProfiles().get(model);
+        return profile != null ? profile : new SpeedProfile();
+    }
+
+    /**
+     * Routing fields for a request to {@code model}. Token usage is always
+     * requested so every answer can be measured.
+     */
+    public ChatRequestEncoder.FieldWriter fieldsFor(String model) {
+        SpeedProfile profile = profileFor(model);
+        String sort = PROFILES.contains(profile.getSort()) ? profile.getSort() : DEFAULT;
+        boolean sorted = THROUGHPUT.equals(sort) || LATENCY.equals(sort);
+        String learned = AUTO.equals(sort) && !explore(model) ? learnedProvider(model) : null;
+        boolean routed = sorted || learned != null || !profile.getOnlyProviders().isEmpty()
+                || !profile.getIgnoredProviders().isEmpty() || !profile.isAllowFallbacks();
+        return gen -> {
+            gen.writeObjectFieldStart("usage");
+            gen.writeBooleanField("include", true);
+            gen.writeEndObject();
+            if (!profile.getFallbackModels().isEmpty()) {
+                gen.writeArrayFieldStart("models");
+                gen.writeString(model);
+                for (String fallback : profile.getFallbackModels()) {
+                    gen.writeString(fallback);
+                }
+                gen.writeEndArray();
+            }
+            if (!routed) {
+                return;
+            }
+            gen.writeObjectFieldStart("provider");
+            if (sorted) {
+                gen.writeStringField("sort", sort);
+            }
+            if (learned != null) {
+                writeList(gen, "order", List.of(learned));
+            }
+            writeList(gen, "only", profile.getOnlyProviders());
+            writeList(gen, "ignore", profile.getIgnoredProviders());
+            if (!profile.isAllowFallbacks()) {
+                gen.writeBooleanField("allow_fallbacks", false);
+            }
+            gen.writeEndObject();
+        };
+    }
+
+    /**
+     * Whether this auto request for {@code model} goes unpinned, so OpenRouter
+     * may pick another upstream and it gets measured too.
+     */
+    private boolean explore(String model) {
+        return autoRequests.computeIfAbsent(model, k -> new AtomicInteger()).incrementAndGet() % EXPLORE_EVERY == 0;
+    }
+
+    /**
+     * The upstream with the best measured speed for {@code model} among those
+     * the profile allows, or {@code null} while fewer than two have enough
+     * recent answers to compare.
+     */
+    public String learnedProvider(String model) {
+        SpeedProfile profile = profileFor(model);
+        UpstreamStats best = null;
+        int compared = 0;
+        for (UpstreamStats entry : statsFor(model)) {
+            if (entry.getSamples() < MIN_SAMPLES || isStale(entry) || profile.getIgnoredProviders().contains(entry.getProvider())
+                    || (!profile.getOnlyProviders().isEmpty() && !profile.getOnlyProviders().contains(entry.getProvider()))) {
+                continue;
+            }
+            compared++;
+            if (best == null || entry.getTokensPerSecond() > best.getTokensPerSecond()) {
+                best = entry;
+            }
+        }
+        return best != null && compared >= MIN_UPSTREAMS ? best.getProvider() : null;
+    }
+
+    private static boolean isStale(UpstreamStats entry) {
+        return System.currentTimeMillis() - entry.getLastUsed() > MAX_AGE_MS;
+    }
+
+    /**
+     * Measurements for {@code model}, fastest upstream first.
+     */
+    public List<UpstreamStats> statsFor(String model) {
+        List<UpstreamStats> result = new ArrayList<>();
+        for (UpstreamStats entry : stats.values()) {
+            if (entry.getModel().equals(model)) {
+                result.add(entry);
+            }
+        }
+        result.sort(Comparator.comparingDouble(UpstreamStats::getTokensPerSecond).reversed());
+        return result;
+    }
+
+    /**
+     * Records which upstream answered a request for {@code model} and how fast.
+     */
+    public void record(String model, StreamMetadata metadata) {
+        String upstream = metadata.getProvider();
+        if (upstream == null || upstream.isBlank()) {
+            return;
+        }
+        String served = metadata.getModel();
+        if (served != null && !model.startsWith(served) && !served.startsWith(model)) {
+            Logger.info(String.format("OpenRouter answered %s with fallback %s via %s", model, served, upstream));
+            return;
+        }
+        long first = metadata.getFirstContentAt();
+        int tokens = metadata.getCompletionTokens();
+        long streamNanos = metadata.getFinishedAt() - first;
+        if (first == 0 || tokens < 2 || streamNanos <= 0) {
+            return;
+        }
+        long firstTokenMs = TimeUnit.NANOSECONDS.toMillis(first - metadata.getStartedAt());
+        double tokensPerSecond = (tokens - 1) / (streamNanos / 1e9);
+        UpstreamStats updated = stats.compute(model + "|" + upstream, (key, entry) -> {
+            UpstreamStats next = entry != null ? entry : new UpstreamStats(model, upstream);
+            // An old average says little about the upstream today; start over.
+            boolean firstSample = next.getSamples() == 0 || isStale(next);
+            next.setTokensPerSecond(firstSample ? tokensPerSecond : blend(next.getTokensPerSecond(), tokensPerSecond));
+            next.setFirstTokenMs(firstSample ? firstTokenMs : blend(next.getFirstTokenMs(), firstTokenMs));
+            next.setSamples(firstSample ? 1 : next.getSamples() + 1);
+            next.setLastUsed(System.currentTimeMillis());
+            return next;
+        });
+        Logger.info(String.format("OpenRouter %s via %s (%s): %d prompt + %d completion tokens, first token after %d ms, %.1f tok/s (avg %.1f)",
+                model, upstream, metadata.getId(), metadata.getPromptTokens(), tokens, firstTokenMs, tokensPerSecond,
+                updated.getTokensPerSecond()));
+        if (savePending.compareAndSet(false, true)) {
+            io.execute(() -> {
+                savePending.set(false);
+                save();
+            });
+        }
+    }
+
+    private static double blend(double average, double sample) {
+        return average + WEIGHT * (sample - average);
+    }
+
+    private static void writeList(JsonGenerator gen, String field, List<String> values) throws IOException {
+        if (values.isEmpty()) {
+            return;
+        }
+        gen.writeArrayFieldStart(field);
+        for (String value : values) {
+            gen.writeString(value);
+        }
+        gen.writeEndArray();
+    }
+
+    private synchronized void save() {
+        try {
+            PreferencesManager.ensureAppDirectory();
+            mapper.writeValue(statsFile(), new ArrayList<>(stats.values()));
+        } catch (IOException e) {
+            Logger.error("Failed to save OpenRouter stats", e);
+        }
+    }
+
+    private void load() {
+        File file = statsFile();
+        if (!file.exists()) {
+            return;
+        }
+        try {
+            List<UpstreamStats> loaded = mapper.readValue(file, new TypeReference<List<UpstreamStats>>() {});
+            for (UpstreamStats entry : loaded) {
+                if (entry.getModel() != null && entry.getProvider() != null) {
+                    stats.put(entry.getModel() + "|" + entry.getProvider(), entry);
+                }
+            }
+        } catch (IOException e) {
+            Logger.error("Failed to load OpenRouter stats", e);
+        }
+    }
+
+    private static File statsFile() {
+        return PreferencesManager.getAppDirectory().resolve(STATS_FILE_NAME).toFile();
+    }
+}
@@ -0,0 +1,29 @@
+package com.lj.aichatapp.service.ai.providers;
+
+import java.net.http.HttpHeaders;
+
+/**
+ * Raised when a provider answers with a non-2xx status. Keeps the status code
+ * and response headers so callers can react to rate limits and retry hints.
+ */
+public class ProviderHttpException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int statusCode;
+    private final HttpHeaders headers;
+
+    public ProviderHttpException(String message, int statusCode, HttpHeaders headers) {
+        super(message);
+        this.statusCode = statusCode;
+        this.headers = headers;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public HttpHeaders getHeaders() {
+        return headers;
+    }
+}
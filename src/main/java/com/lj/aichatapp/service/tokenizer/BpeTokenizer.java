@@ -0,0 +1,119 @@
+package com.lj.aichatapp.service.tokenizer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+
+/**
+ * Byte pair encoder over a tiktoken style vocabulary ({@code <base64 token> <rank>}
+ * per line, the format llama3 ships as {@code tokenizer.model}). Byte sequences
+ * are held as ISO-8859-1 strings, one char per byte, so merges are plain
+ * substring lookups. Counts of pre-tokenized pieces are memoized because the
+ * same words repeat across a conversation.
+ */
+public class BpeTokenizer implements Tokenizer {
+
+    private static final int MAX_CACHED_PIECES = 50_000;
+
+    private final String name;
+    private final Map<String, Integer> ranks;
+    private final Map<String, Integer> pieceCache = new ConcurrentHashMap<>();
+
+    BpeTokenizer(String name, Map<String, Integer> ranks) {
+        this.name = name;
+        this.ranks = ranks;
+    }
+
+    public static BpeTokenizer load(String name, Path vocabulary) throws IOException {
+        Map<String, Integer> ranks = new HashMap<>();
+        Base64.Decoder decoder = Base64.getDecoder();
+        try (BufferedReader reader = Files.newBufferedReader(vocabulary, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int space = line.indexOf(' ');
+                if (space <= 0) {
+                    continue;
+                }
+                byte[] token = decoder.decode(line.substring(0, space));
+                int rank = Integer.parseInt(line.substring(space + 1).trim());
+                ranks.put(new String(token, StandardCharsets.ISO_8859_1), rank);
+            }
+        }
+        if (ranks.isEmpty()) {
+            throw new IOException("No tokens in " + vocabulary);
+        }
+        return new BpeTokenizer(name, ranks);
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    public int getVocabularySize() {
+        return ranks.size();
+    }
+
+    @Override
+    public int count(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        int tokens = 0;
+        Matcher matcher = PRE_TOKENIZER.matcher(text);
+        while (matcher.find()) {
+            tokens += countPiece(matcher.group());
+        }
+        return tokens;
+    }
+
+    private int countPiece(String piece) {
+        Integer cached = pieceCache.get(piece);
+        if (cached != null) {
+            return cached;
+        }
+        String bytes = new String(piece.getBytes(StandardCharsets.UTF_8), StandardCharsets.ISO_8859_1);
+        int count = ranks.containsKey(bytes) ? 1 : merge(bytes);
+        if (pieceCache.size() >= MAX_CACHED_PIECES) {
+            pieceCache.clear();
+        }
+        pieceCache.put(piece, count);
+        return count;
+    }
+
+    /**
+     * Repeatedly merges the adjacent pair with the lowest rank, starting from
+     * single bytes, and returns the number of parts left.
+     */
+    private int merge(String bytes) {
+        List<Integer> bounds = new ArrayList<>(bytes.length() + 1);
+        for (int i = 0; i <= bytes.length(); i++) {
+            bounds.add(i);
+        }
+        while (bounds.size() > 2) {
+            int best = -1;
+            int bestRank = Integer.MAX_VALUE;
+            for (int i = 0; i + 2 < bounds.size(); i++) {
+                Integer rank = ranks.get(bytes.substring(bounds.get(i), bounds.get(i + 2)));
+                if (rank != null && rank < bestRank) {
+                    bestRank = rank;
+                    best = i;
+                }
+            }
+            if (best < 0) {
+                break;
+            }
+            bounds.remove(best + 1);
+        }
+        return bounds.size() - 1;
+    }
+}
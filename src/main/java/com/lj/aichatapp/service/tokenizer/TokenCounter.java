@@ -0,0 +1,263 @@
+package com.lj.aichatapp.service.tokenizer;
+
+import com.lj.aichatapp.infrastructure.http.HttpClientManager;
+import com.lj.aichatapp.infrastructure.preferences.PreferencesManager;
+import com.lj.aichatapp.models.Message;
+import com.lj.aichatapp.models.UserPreferences;
+import com.lj.aichatapp.utils.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Token counts per model family. llama3 models are counted exactly with the
+ * vocabulary in {@code tokenizers/llama3.tiktoken} in the app directory. When
+ * none is installed and the user allowed it, tiktoken's openly published
+ * cl100k_base is downloaded there and checked against its known SHA-256:
+ * llama3's vocabulary starts with those 100k tokens at the same ranks and only
+ * adds tokens for other languages. gemma and mistral use
+ * SentencePiece with a different pre-tokenizer, so they and unknown families
+ * are estimated by {@link HeuristicTokenizer}. Counts of recent stored
+ * messages are cached by message id, so budgeting a long conversation only
+ * tokenizes text that is new.
+ */
+public class TokenCounter {
+
+    public static final String LLAMA3 = "llama3";
+    public static final String GEMMA = "gemma";
+    public static final String MISTRAL = "mistral";
+    public static final String DEFAULT = "default";
+
+    private static final String VOCABULARY_DIR = "tokenizers";
+    private static final String VOCABULARY_SUFFIX = ".tiktoken";
+    private static final int MAX_CACHED_TEXTS = 256;
+    private static final int MAX_CACHED_MESSAGES = 4096;
+    private static final String LLAMA3_VOCABULARY_URL = "https://openaipublic.blob.core.windows.net/encodings/cl100k_base.tiktoken";
+    private static final String LLAMA3_VOCABULARY_SHA256 = "223921b76ee99bde995b7ff738513eef100fb51d18c93597a113bcffe865b2a7";
+    private static final Duration DOWNLOAD_TIMEOUT = Duration.ofMinutes(2);
+
+    private final Map<String, Tokenizer> tokenizers = new ConcurrentHashMap<>();
+    private final Map<String, Cached> byMessageId = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Cached> eldest) {
+            return size() > MAX_CACHED_MESSAGES;
+        }
+    };
+    private final Map<String, Integer> byText = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+            return size() > MAX_CACHED_TEXTS;
+        }
+    };
+    private final UserPreferences prefs;
+    private final Executor executor;
+    private final AtomicBoolean downloading = new AtomicBoolean();
+
+    public TokenCounter(UserPreferences prefs, Executor executor) {
+        this.prefs = prefs;
+        this.executor = executor;
+    }
+
+    public static String familyOf(String model) {
+        if (model == null) {
+            return DEFAULT;
+        }
+        String name = model.toLowerCase(Locale.ROOT);
+        name = name.substring(name.lastIndexOf('/') + 1);
+        if (name.startsWith("llama3") || name.startsWith("llama-3")) {
+            return LLAMA3;
+        }
+        if (name.startsWith("gemma")) {
+            return GEMMA;
+        }
+        if (name.startsWith("mistral") || name.startsWith("mixtral") || name.startsWith("open-mistral")) {
+            return MISTRAL;
+        }
+        return DEFAULT;
+    }
+
+    public Tokenizer tokenizerFor(String model) {
+        String family = familyOf(model);
+        Tokenizer tokenizer = tokenizers.computeIfAbsent(family, this::load);
+        if (LLAMA3.equals(family) && tokenizer instanceof HeuristicTokenizer && prefs.isTokenizerDownloadEnabled()) {
+            download(family, vocabularyPath(family));
+        }
+        return tokenizer;
+    }
+
+    public int count(String model, String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        String key = familyOf(model) + '\u0000' + text;
+        synchronized (byText) {
+            Integer cached = byText.get(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        int tokens = tokenizerFor(model).count(text);
+        synchronized (byText) {
+            byText.put(key, tokens);
+        }
+        return tokens;
+    }
+
+    /**
+     * Count for a message; stored messages are cached by id and recounted only
+     * when their content changed.
+     */
+    public int count(String model, Message message) {
+        String content = message.getContent();
+        if (message.getId() == null) {
+            return count(model, content);
+        }
+        String family = familyOf(model);
+        String key = family + '\u0000' + message.getId();
+        int length = content == null ? 0 : content.length();
+        int hash = content == null ? 0 : content.hashCode();
+
+        Cached cached;
+        synchronized (byMessageId) {
+            cached = byMessageId.get(key);
+        }
+        if (cached != null && cached.length == length && cached.hash == hash) {
+            return cached.tokens;
+        }
+        int tokens = content == null ? 0 : tokenizerFor(model).count(content);
+        synchronized (byMessageId) {
+            byMessageId.put(key, new Cached(length, hash, tokens));
+        }
+        return tokens;
+    }
+
+    /**
+     * Counts on a background thread. The result is cached like {@link #count(String, String)},
+     * so sending the text that was just counted does not tokenize it again.
+     */
+    public CompletableFuture<Integer> countAsync(String model, String text) {
+        return CompletableFuture.supplyAsync(() -> count(model, text), executor);
+    }
+
+    private Tokenizer load(String family) {
+        Path vocabulary = vocabularyPath(family);
+        if (LLAMA3.equals(family) && Files.isRegularFile(vocabulary)) {
+            try {
+                BpeTokenizer tokenizer = BpeTokenizer.load(family, vocabulary);
+                Logger.info(String.format("Loaded %s tokenizer with %d tokens", family, tokenizer.getVocabularySize()));
+                return tokenizer;
+            } catch (Exception e) {
+                Logger.error("Failed to load tokenizer vocabulary " + vocabulary, e);
+            }
+        }
+        return new HeuristicTokenizer(family, MISTRAL.equals(family) ? 3.5 : 4.0);
+    }
+
+    private static Path vocabularyPath(String family) {
+        return PreferencesManager.getAppDirectory().resolve(VOCABULARY_DIR).resolve(family + VOCABULARY_SUFFIX);
+    }
+
+    /**
+     * Fetches the vocabulary in the background; until it is installed the
+     * family is estimated, afterwards cached counts are dropped so they are
+     * recounted exactly.
+     */
+    private void download(String family, Path vocabulary) {
+        if (!downloading.compareAndSet(false, true)) {
+            return;
+        }
+        Path part = vocabulary.resolveSibling(vocabulary.getFileName() + ".part");
+        try {
+            Files.createDirectories(vocabulary.getParent());
+        } catch (IOException e) {
+            Logger.error("Failed to create " + vocabulary.getParent(), e);
+            return;
+        }
+        Logger.info("Downloading " + family + " tokenizer vocabulary from " + LLAMA3_VOCABULARY_URL);
+        HttpRequest request = HttpRequest.newBuilder(URI.create(LLAMA3_VOCABULARY_URL)).timeout(DOWNLOAD_TIMEOUT).GET().build();
+        HttpClientManager.getInstance().getClient().sendAsync(request, HttpResponse.BodyHandlers.ofFile(part))
+                .thenApplyAsync(response -> install(family, response, vocabulary), executor)
+                .whenComplete((tokenizer, ex) -> {
+                    if (ex != null) {
+                        Logger.error("Failed to download the " + family + " tokenizer vocabulary, estimating token counts", ex);
+                        try {
+                            Files.deleteIfExists(part);
+                        } catch (IOException ignored) {
+                        }
+                        return;
+                    }
+                    tokenizers.put(family, tokenizer);
+                    synchronized (byText) {
+                        byText.clear();
+                    }
+                    synchronized (byMessageId) {
+                        byMessageId.clear();
+                    }
+                    Logger.info(String.format("Installed %s tokenizer with %d tokens", family, tokenizer.getVocabularySize()));
+                });
+    }
+
+    private static BpeTokenizer install(String family, HttpResponse<Path> response, Path vocabulary) {
+        try {
+            if (response.statusCode() != 200) {
+                throw new IOException("HTTP " + response.statusCode());
+            }
+            String sha256 = sha256(response.body());
+            if (!LLAMA3_VOCABULARY_SHA256.equals(sha256)) {
+                throw new IOException("Unexpected SHA-256 " + sha256 + " of the download");
+            }
+            BpeTokenizer tokenizer = BpeTokenizer.load(family, response.body());
+            Files.move(response.body(), vocabulary, StandardCopyOption.REPLACE_EXISTING);
+            return tokenizer;
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    private static String sha256(Path file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+        try (InputStream in = Files.newInputStream(file)) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return String.format("%064x", new BigInteger(1, digest.digest()));
+    }
+
+    private static final class Cached {
+        private final int length;
+        private final int hash;
+        private final int tokens;
+
+        private Cached(int length, int hash, int tokens) {
+            this.length = length;
+            this.hash = hash;
+            this.tokens = tokens;
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.lj.aichatapp.service.tokenizer;
+
+import java.util.regex.Pattern;
+
+public interface Tokenizer {
+
+    /**
+     * Pre-tokenizer split used by the llama3 (and cl100k) vocabularies: contractions,
+     * words with one leading non-letter, numbers in groups of three, punctuation
+     * runs and whitespace.
+     */
+    Pattern PRE_TOKENIZER = Pattern.compile(
+            "(?i:'s|'t|'re|'ve|'m|'ll|'d)|[^\\r\\n\\p{L}\\p{N}]?\\p{L}+|\\p{N}{1,3}| ?[^\\s\\p{L}\\p{N}]+[\\r\\n]*|\\s*[\\r\\n]+|\\s+(?!\\S)|\\s+");
+
+    String getName();
+
+    int count(String text);
+}
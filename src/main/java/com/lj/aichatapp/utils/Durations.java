@@ -0,0 +1,45 @@
+package com.lj.aichatapp.utils;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public final class Durations {
+
+    private static final Pattern DURATION_PART = Pattern.compile("(-?\\d+(?:\\.\\d+)?)(ms|h|m|s)");
+
+    private Durations() {
+    }
+
+    /**
+     * Parses a Go style duration such as {@code 1m2.5s}, {@code 250ms} or
+     * {@code 30m} into milliseconds. Returns {@code null} when the text is not
+     * in that format.
+     */
+    public static Long parseMillis(String text) {
+        if (text == null || text.isBlank()) {
+            return null;
+        }
+        Matcher matcher = DURATION_PART.matcher(text.trim());
+        double millis = 0;
+        boolean matched = false;
+        while (matcher.find()) {
+            matched = true;
+            double amount = Double.parseDouble(matcher.group(1));
+            switch (matcher.group(2)) {
+                case "h":
+                    millis += amount * 3_600_000;
+                    break;
+                case "m":
+                    millis += amount * 60_000;
+                    break;
+                case "s":
+                    millis += amount * 1000;
+                    break;
+                default:
+                    millis += amount;
+                    break;
+            }
+        }
+        return matched ? (long) millis : null;
+    }
+}
@@ -0,0 +1,45 @@
+package com.lj.aichatapp.utils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+public final class FutureUtils {
+
+    private FutureUtils() {
+    }
+
+    /**
+     * Completes {@code target} with the outcome of {@code source}, and cancels
+     * {@code source} when {@code target} is cancelled first.
+     */
+    public static <T> CompletableFuture<T> link(CompletableFuture<T> source, CompletableFuture<T> target) {
+        target.whenComplete((r, ex) -> {
+            if (target.isCancelled()) {
+                source.cancel(true);
+            }
+        });
+        source.whenComplete((r, ex) -> {
+            if (ex != null) {
+                target.completeExceptionally(unwrap(ex));
+            } else {
+                target.complete(r);
+            }
+        });
+        return target;
+    }
+
+    public static CompletableFuture<String> failed(Throwable t) {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        future.completeExceptionally(t);
+        return future;
+    }
+
+    public static Throwable unwrap(Throwable t) {
+        Throwable current = t;
+        while ((current instanceof CompletionException || current instanceof ExecutionException) && current.getCause() != null) {
+            current = current.getCause();
+        }
+        return current;
+    }
+}
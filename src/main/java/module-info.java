@@ -3,6 +3,7 @@ module com.lj.aichatapp {
     requires javafx.fxml;
     requires java.net.http;
     requires java.sql;
+    requires jdk.management;
     requires com.fasterxml.jackson.databind;
     requires org.kordamp.ikonli.javafx;
     requires org.kordamp.ikonli.fontawesome5;
@@ -11,7 +12,7 @@ module com.lj.aichatapp {
     opens com.lj.aichatapp.app to javafx.fxml;
     opens com.lj.aichatapp.controllers to javafx.fxml;
     opens com.lj.aichatapp.models to com.fasterxml.jackson.databind, javafx.fxml;
-    opens com.lj.aichatapp.service.ai to javafx.fxml;
+    opens com.lj.aichatapp.service.ai to javafx.fxml, com.fasterxml.jackson.databind;
     
     exports com.lj.aichatapp.app;
     exports com.lj.aichatapp.controllers;
@@ -19,10 +20,14 @@ module com.lj.aichatapp {
     exports com.lj.aichatapp.service;
     exports com.lj.aichatapp.service.ai;
     exports com.lj.aichatapp.service.ai.providers;
+    exports com.lj.aichatapp.service.ai.codec;
+    exports com.lj.aichatapp.service.tokenizer;
     exports com.lj.aichatapp.utils;
     exports com.lj.aichatapp.repository;
     exports com.lj.aichatapp.repository.impl;
     exports com.lj.aichatapp.context;
+    exports com.lj.aichatapp.infrastructure.concurrent;
     exports com.lj.aichatapp.infrastructure.database;
     exports com.lj.aichatapp.infrastructure.preferences;
+    exports com.lj.aichatapp.infrastructure.http;
 }
\ No newline at end of file
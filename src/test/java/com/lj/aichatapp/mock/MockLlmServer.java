@@ -0,0 +1,586 @@
+package com.lj.aichatapp.mock;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Stand-in for Ollama and the OpenAI style providers, for load and latency
+ * runs that must not depend on a real model. It serves
+ * <ul>
+ *     <li>{@code /api/chat} and {@code /api/generate} as Ollama NDJSON, plus {@code /api/tags}
+ *     and {@code /api/ps} (every model asked for so far),</li>
+ *     <li>{@code /chat/completions} (and {@code /v1/chat/completions}) as SSE, plus {@code /models}.
+ *     Like OpenRouter, each answer names its upstream: {@code MockFast}, or
+ *     {@code MockSlow} at half the token rate. Requests alternate between the
+ *     two unless their {@code provider} object sorts, orders or restricts them.</li>
+ * </ul>
+ * Answers come from a corpus and are picked by the hash of the last user
+ * message, so the same prompt always gets the same answer. They are streamed
+ * at a fixed token rate after a first-token delay; a seeded random source
+ * injects 429s, 500s and stalled streams at the configured rates.
+ *
+ * <p>Run it with {@code java -cp target/test-classes:target/classes:<jackson jars>
+ * com.lj.aichatapp.mock.MockLlmServer --port=8089 --tps=40 --ttft=300}, then set
+ * the Ollama host to {@code http://localhost:8089} and the base URL of Groq or
+ * OpenRouter ({@code providerBaseUrls} in {@code preferences.json}) to
+ * {@code http://localhost:8089/v1}.
+ */
+public class MockLlmServer {
+
+    private static final Pattern TOKEN = Pattern.compile("\\s*\\S+");
+    private static final List<String> DEFAULT_CORPUS = List.of(
+            "Sure. Here is a short answer that streams at a steady pace so the client can be measured.",
+            "A **mock** response with some `inline code`, a list:\n\n- first item\n- second item\n\nand a closing sentence.",
+            "```java\nSystem.out.println(\"Hello from the mock server\");\n```\n\nThat prints a greeting.");
+
+    private static final String UPSTREAM_FAST = "MockFast";
+    private static final String UPSTREAM_SLOW = "MockSlow";
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger abortedResponses = new AtomicInteger();
+    private final AtomicLong generated = new AtomicLong();
+    private final Set<String> loaded = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger upstreamTurn = new AtomicInteger();
+
+    private List<String> corpus = DEFAULT_CORPUS;
+    private List<String> models = List.of("mock-small", "mock-large");
+    private double tokensPerSecond = 50;
+    private long firstTokenDelayMs = 200;
+    private int chunkTokens = 1;
+    private double rateLimitRate;
+    private double serverErrorRate;
+    private double stallRate;
+    private long stallMs = 60_000;
+    private long retryAfterSeconds = 1;
+    private Random random = new Random(42);
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    public static void main(String[] args) throws IOException {
+        MockLlmServer mock = new MockLlmServer();
+        int port = 8089;
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (!arg.startsWith("--") || eq < 0) {
+                throw new IllegalArgumentException("Expected --name=value, got " + arg);
+            }
+            String name = arg.substring(2, eq);
+            String value = arg.substring(eq + 1);
+            switch (name) {
+                case "port":
+                    port = Integer.parseInt(value);
+                    break;
+                case "tps":
+                    mock.setTokensPerSecond(Double.parseDouble(value));
+                    break;
+                case "ttft":
+                    mock.setFirstTokenDelayMs(Long.parseLong(value));
+                    break;
+                case "chunk":
+                    mock.setChunkTokens(Integer.parseInt(value));
+                    break;
+                case "rate429":
+                    mock.setRateLimitRate(Double.parseDouble(value));
+                    break;
+                case "rate500":
+                    mock.setServerErrorRate(Double.parseDouble(value));
+                    break;
+                case "stallRate":
+                    mock.setStallRate(Double.parseDouble(value));
+                    break;
+                case "stallMs":
+                    mock.setStallMs(Long.parseLong(value));
+                    break;
+                case "retryAfter":
+                    mock.setRetryAfterSeconds(Long.parseLong(value));
+                    break;
+                case "seed":
+                    mock.setSeed(Long.parseLong(value));
+                    break;
+                case "corpus":
+                    mock.loadCorpus(Path.of(value));
+                    break;
+                case "models":
+                    mock.setModels(List.of(value.split(",")));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option --" + name);
+            }
+        }
+        mock.start(port);
+        System.out.println("Mock LLM server listening on http://localhost:" + mock.getPort());
+    }
+
+    public void start(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 64);
+        executor = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "mock-llm");
+            t.setDaemon(true);
+            return t;
+        });
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+        }
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public int getRequestCount() {
+        return requests.get();
+    }
+
+    /**
+     * Responses that ended early because the client closed the connection or a
+     * stall was abandoned.
+     */
+    public int getAbortedResponses() {
+        return abortedResponses.get();
+    }
+
+    public long getGeneratedTokens() {
+        return generated.get();
+    }
+
+    /**
+     * Reads answers from a text file; answers are separated by lines holding only {@code ---}.
+     */
+    public void loadCorpus(Path file) throws IOException {
+        List<String> answers = new ArrayList<>();
+        for (String answer : Files.readString(file, StandardCharsets.UTF_8).split("(?m)^---\\s*$")) {
+            if (!answer.isBlank()) {
+                answers.add(answer.strip());
+            }
+        }
+        if (answers.isEmpty()) {
+            throw new IOException("No answers in " + file);
+        }
+        this.corpus = answers;
+    }
+
+    public void setCorpus(List<String> corpus) {
+        this.corpus = corpus;
+    }
+
+    public void setModels(List<String> models) {
+        this.models = models;
+    }
+
+    public void setTokensPerSecond(double tokensPerSecond) {
+        this.tokensPerSecond = tokensPerSecond;
+    }
+
+    public void setFirstTokenDelayMs(long firstTokenDelayMs) {
+        this.firstTokenDelayMs = firstTokenDelayMs;
+    }
+
+    public void setChunkTokens(int chunkTokens) {
+        this.chunkTokens = Math.max(1, chunkTokens);
+    }
+
+    public void setRateLimitRate(double rateLimitRate) {
+        this.rateLimitRate = rateLimitRate;
+    }
+
+    public void setServerErrorRate(double serverErrorRate) {
+        this.serverErrorRate = serverErrorRate;
+    }
+
+    public void setStallRate(double stallRate) {
+        this.stallRate = stallRate;
+    }
+
+    public void setStallMs(long stallMs) {
+        this.stallMs = stallMs;
+    }
+
+    public void setRetryAfterSeconds(long retryAfterSeconds) {
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public synchronized void setSeed(long seed) {
+        this.random = new Random(seed);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        String path = exchange.getRequestURI().getPath();
+        try {
+            if ("GET".equals(exchange.getRequestMethod())) {
+                if (path.equals("/api/tags")) {
+                    sendJson(exchange, 200, listed(models));
+                } else if (path.equals("/api/ps")) {
+                    sendJson(exchange, 200, listed(new ArrayList<>(loaded)));
+                } else if (path.endsWith("/models")) {
+                    sendJson(exchange, 200, modelList());
+                } else {
+                    sendJson(exchange, 404, error("Not found: " + path));
+                }
+                return;
+            }
+
+            JsonNode body = mapper.readTree(exchange.getRequestBody());
+            Fault fault = nextFault();
+            if (fault == Fault.RATE_LIMIT) {
+                exchange.getResponseHeaders().add("Retry-After", String.valueOf(retryAfterSeconds));
+                exchange.getResponseHeaders().add("x-ratelimit-remaining-requests", "0");
+                exchange.getResponseHeaders().add("x-ratelimit-reset-requests", retryAfterSeconds + "s");
+                sendJson(exchange, 429, error("Rate limit exceeded"));
+                return;
+            }
+            if (fault == Fault.SERVER_ERROR) {
+                sendJson(exchange, 500, error("Internal server error"));
+                return;
+            }
+
+            boolean stall = fault == Fault.STALL;
+            if (path.equals("/api/chat") || path.equals("/api/generate")) {
+                ollama(exchange, body, path.equals("/api/generate"), stall);
+            } else if (path.endsWith("/chat/completions")) {
+                openAi(exchange, body, stall);
+            } else {
+                sendJson(exchange, 404, error("Not found: " + path));
+            }
+        } catch (IOException e) {
+            // The client went away (usually a cancelled stream) or a stall was abandoned.
+            abortedResponses.incrementAndGet();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void ollama(HttpExchange exchange, JsonNode body, boolean generate, boolean stall) throws IOException {
+        String model = body.path("model").asText(models.get(0));
+        loaded.add(model);
+        String prompt = generate ? body.path("prompt").asText("") : lastUserMessage(body);
+        long start = System.nanoTime();
+        if (generate && prompt.isEmpty()) {
+            // A preload: load the model, generate nothing.
+            ObjectNode done = ollamaChunk(model, true, generate, "");
+            done.put("done_reason", "load");
+            done.put("load_duration", TimeUnit.MILLISECONDS.toNanos(firstTokenDelayMs));
+            done.put("total_duration", System.nanoTime() - start);
+            sendJson(exchange, 200, done);
+            return;
+        }
+
+        List<String> tokens = tokenize(generate ? answerFor(prompt) : answerFor(body, prompt));
+        if (!body.path("stream").asBoolean(true)) {
+            pause(firstTokenDelayMs + Math.round(tokens.size() * 1000 / tokensPerSecond));
+            ObjectNode done = ollamaChunk(model, true, generate, String.join("", tokens));
+            done.put("done_reason", "stop");
+            ollamaStats(done, prompt, tokens.size(), start, generate);
+            generated.addAndGet(tokens.size());
+            sendJson(exchange, 200, done);
+            return;
+        }
+
+        exchange.getResponseHeaders().add("Content-Type", "application/x-ndjson");
+        exchange.sendResponseHeaders(200, 0);
+        OutputStream out = exchange.getResponseBody();
+        stream(tokens, stall, tokensPerSecond, chunk -> {
+            out.write(mapper.writeValueAsBytes(ollamaChunk(model, false, generate, chunk)));
+            out.write('\n');
+            out.flush();
+        });
+        ObjectNode done = ollamaChunk(model, true, generate, "");
+        done.put("done_reason", "stop");
+        ollamaStats(done, prompt, tokens.size(), start, generate);
+        out.write(mapper.writeValueAsBytes(done));
+        out.write('\n');
+        out.flush();
+    }
+
+    private void openAi(HttpExchange exchange, JsonNode body, boolean stall) throws IOException {
+        String model = body.path("model").asText(models.get(0));
+        String prompt = lastUserMessage(body);
+        List<String> tokens = tokenize(answerFor(body, prompt));
+        String id = "mock-" + requests.get();
+        long created = Instant.now().getEpochSecond();
+
+        if (!body.path("stream").asBoolean(false)) {
+            pause(firstTokenDelayMs + Math.round(tokens.size() * 1000 / tokensPerSecond));
+            ObjectNode completion = mapper.createObjectNode();
+            completion.put("id", id);
+            completion.put("object", "chat.completion");
+            completion.put("created", created);
+            completion.put("model", model);
+            ObjectNode choice = completion.putArray("choices").addObject();
+            choice.put("index", 0);
+            ObjectNode message = choice.putObject("message");
+            message.put("role", "assistant");
+            message.put("content", String.join("", tokens));
+            choice.put("finish_reason", "stop");
+            usage(completion, prompt, tokens.size());
+            generated.addAndGet(tokens.size());
+            sendJson(exchange, 200, completion);
+            return;
+        }
+
+        exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+        exchange.getResponseHeaders().add("Cache-Control", "no-cache");
+        exchange.sendResponseHeaders(200, 0);
+        OutputStream out = exchange.getResponseBody();
+        String upstream = upstreamFor(body.path("provider"));
+        double rate = UPSTREAM_SLOW.equals(upstream) ? tokensPerSecond / 2 : tokensPerSecond;
+        stream(tokens, stall, rate, chunk -> writeEvent(out, openAiChunk(id, created, model, chunk, null).put("provider", upstream)));
+        ObjectNode last = openAiChunk(id, created, model, null, "stop").put("provider", upstream);
+        usage(last, prompt, tokens.size());
+        writeEvent(out, last);
+        out.write("data: [DONE]\n\n".getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private String upstreamFor(JsonNode routing) {
+        for (String field : new String[] {"order", "only"}) {
+            String first = routing.path(field).path(0).asText("");
+            if (first.equals(UPSTREAM_FAST) || first.equals(UPSTREAM_SLOW)) {
+                return first;
+            }
+        }
+        if (routing.has("sort")) {
+            return UPSTREAM_FAST;
+        }
+        return upstreamTurn.getAndIncrement() % 2 == 0 ? UPSTREAM_FAST : UPSTREAM_SLOW;
+    }
+
+    /**
+     * Emits {@code tokens} in chunks at the configured rate. Deadlines are taken
+     * from the start of the stream, so slow writes do not add up to drift. A
+     * stalled stream stops halfway, holds the connection open for the stall time
+     * and then ends the body without the final done message.
+     */
+    private void stream(List<String> tokens, boolean stall, double rate, ChunkWriter writer) throws IOException {
+        long start = System.nanoTime();
+        long firstToken = start + TimeUnit.MILLISECONDS.toNanos(firstTokenDelayMs);
+        double nanosPerToken = TimeUnit.SECONDS.toNanos(1) / rate;
+        int stallAt = stall ? tokens.size() / 2 : -1;
+        for (int i = 0; i < tokens.size(); i += chunkTokens) {
+            if (i >= stallAt && stallAt >= 0) {
+                pause(stallMs);
+                throw new IOException("Stalled stream abandoned");
+            }
+            long due = firstToken + (long) (i * nanosPerToken);
+            pause(TimeUnit.NANOSECONDS.toMillis(due - System.nanoTime()));
+            List<String> chunk = tokens.subList(i, Math.min(tokens.size(), i + chunkTokens));
+            writer.write(String.join("", chunk));
+            generated.addAndGet(chunk.size());
+        }
+    }
+
+    private ObjectNode ollamaChunk(String model, boolean done, boolean generate, String content) {
+        ObjectNode node = mapper.createObjectNode();
+        node.put("model", model);
+        node.put("created_at", Instant.now().toString());
+        if (generate) {
+            node.put("response", content);
+        } else {
+            ObjectNode message = node.putObject("message");
+            message.put("role", "assistant");
+            message.put("content", content);
+        }
+        node.put("done", done);
+        return node;
+    }
+
+    private void ollamaStats(ObjectNode done, String prompt, int evalCount, long start, boolean generate) {
+        long total = System.nanoTime() - start;
+        long promptNanos = TimeUnit.MILLISECONDS.toNanos(firstTokenDelayMs);
+        done.put("total_duration", total);
+        done.put("load_duration", 0);
+        done.put("prompt_eval_count", estimateTokens(prompt));
+        done.put("prompt_eval_duration", promptNanos);
+        done.put("eval_count", evalCount);
+        done.put("eval_duration", Math.max(0, total - promptNanos));
+        if (generate) {
+            ArrayNode context = done.putArray("context");
+            for (int i = 0; i < estimateTokens(prompt) + evalCount; i++) {
+                context.add(i);
+            }
+        }
+    }
+
+    private ObjectNode openAiChunk(String id, long created, String model, String content, String finishReason) {
+        ObjectNode node = mapper.createObjectNode();
+        node.put("id", id);
+        node.put("object", "chat.completion.chunk");
+        node.put("created", created);
+        node.put("model", model);
+        ObjectNode choice = node.putArray("choices").addObject();
+        choice.put("index", 0);
+        ObjectNode delta = choice.putObject("delta");
+        if (content != null) {
+            delta.put("content", content);
+        }
+        if (finishReason != null) {
+            choice.put("finish_reason", finishReason);
+        } else {
+            choice.putNull("finish_reason");
+        }
+        return node;
+    }
+
+    private void usage(ObjectNode node, String prompt, int completionTokens) {
+        ObjectNode usage = node.putObject("usage");
+        int promptTokens = estimateTokens(prompt);
+        usage.put("prompt_tokens", promptTokens);
+        usage.put("completion_tokens", completionTokens);
+        usage.put("total_tokens", promptTokens + completionTokens);
+    }
+
+    private ObjectNode listed(List<String> names) {
+        ObjectNode root = mapper.createObjectNode();
+        ArrayNode list = root.putArray("models");
+        for (String model : names) {
+            ObjectNode entry = list.addObject();
+            entry.put("name", model);
+            entry.put("model", model);
+        }
+        return root;
+    }
+
+    private ObjectNode modelList() {
+        ObjectNode root = mapper.createObjectNode();
+        root.put("object", "list");
+        ArrayNode data = root.putArray("data");
+        for (String model : models) {
+            ObjectNode entry = data.addObject();
+            entry.put("id", model);
+            entry.put("object", "model");
+            entry.put("context_length", 8192);
+        }
+        return root;
+    }
+
+    private ObjectNode error(String message) {
+        ObjectNode root = mapper.createObjectNode();
+        root.putObject("error").put("message", message);
+        return root;
+    }
+
+    private void sendJson(HttpExchange exchange, int status, JsonNode body) throws IOException {
+        byte[] bytes = mapper.writeValueAsBytes(body);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    private void writeEvent(OutputStream out, JsonNode event) throws IOException {
+        out.write("data: ".getBytes(StandardCharsets.US_ASCII));
+        out.write(mapper.writeValueAsBytes(event));
+        out.write("\n\n".getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+    }
+
+    private synchronized Fault nextFault() {
+        double roll = random.nextDouble();
+        if (roll < rateLimitRate) {
+            return Fault.RATE_LIMIT;
+        }
+        if (roll < rateLimitRate + serverErrorRate) {
+            return Fault.SERVER_ERROR;
+        }
+        if (roll < rateLimitRate + serverErrorRate + stallRate) {
+            return Fault.STALL;
+        }
+        return Fault.NONE;
+    }
+
+    /**
+     * A request that ends with a cut-off answer and a follow-up (a resume) gets
+     * the rest of that answer, like a model that continues where it stopped.
+     */
+    private String answerFor(JsonNode body, String prompt) {
+        JsonNode messages = body.path("messages");
+        int n = messages.size();
+        if (n >= 3 && "assistant".equals(messages.get(n - 2).path("role").asText())) {
+            String partial = messages.get(n - 2).path("content").asText("");
+            String original = answerFor(messages.get(n - 3).path("content").asText(""));
+            if (!partial.isEmpty() && original.startsWith(partial) && partial.length() < original.length()) {
+                return original.substring(partial.length());
+            }
+        }
+        return answerFor(prompt);
+    }
+
+    private String answerFor(String prompt) {
+        return corpus.get(Math.floorMod(prompt.hashCode(), corpus.size()));
+    }
+
+    private static String lastUserMessage(JsonNode body) {
+        String last = "";
+        for (JsonNode message : body.path("messages")) {
+            if ("user".equals(message.path("role").asText())) {
+                last = message.path("content").asText("");
+            }
+        }
+        return last;
+    }
+
+    private static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        Matcher matcher = TOKEN.matcher(text);
+        while (matcher.find()) {
+            tokens.add(matcher.group());
+        }
+        return tokens;
+    }
+
+    private static int estimateTokens(String text) {
+        return Math.max(1, text.length() / 4);
+    }
+
+    private static void pause(long millis) throws IOException {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        }
+    }
+
+    private enum Fault {
+        NONE, RATE_LIMIT, SERVER_ERROR, STALL
+    }
+
+    private interface ChunkWriter {
+        void write(String chunk) throws IOException;
+    }
+}
@@ -0,0 +1,94 @@
+package com.lj.aichatapp.service.ai.providers;
+
+import com.lj.aichatapp.infrastructure.concurrent.AppExecutors;
+import com.lj.aichatapp.mock.MockLlmServer;
+import com.lj.aichatapp.models.Message;
+import com.lj.aichatapp.models.MessageRole;
+import com.lj.aichatapp.models.UserPreferences;
+import com.lj.aichatapp.service.ai.ChatRequest;
+import com.lj.aichatapp.service.ai.ProviderRegistry;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Cancelling an answer with {@code cancel(true)} must stop reading it and close
+ * the connection, for Ollama's NDJSON and the OpenAI style SSE streams alike.
+ * Streams a slow answer from {@link MockLlmServer}, cancels it after the first
+ * chunk and checks that no further chunk reaches the caller and that the mock
+ * sees the client go away. Run it like the mock server, with
+ * {@code com.lj.aichatapp.service.ai.providers.StreamCancellationCheck} as the
+ * main class; it exits with status 1 when a provider fails.
+ */
+public class StreamCancellationCheck {
+
+    private static final double TOKENS_PER_SECOND = 5;
+    private static final long TIMEOUT_MS = 5000;
+
+    public static void main(String[] args) throws Exception {
+        MockLlmServer mock = new MockLlmServer();
+        mock.setTokensPerSecond(TOKENS_PER_SECOND);
+        mock.setFirstTokenDelayMs(50);
+        mock.start(0);
+        String base = "http://localhost:" + mock.getPort();
+
+        UserPreferences prefs = new UserPreferences();
+        prefs.setOllamaHost(base);
+        prefs.getProviderBaseUrls().put(ProviderRegistry.GROQ, base + "/v1");
+        prefs.getProviderKeys().put(ProviderRegistry.GROQ, "mock");
+        ProviderRegistry registry = new ProviderRegistry(prefs, AppExecutors.getInstance());
+
+        boolean passed = false;
+        try {
+            passed = check(registry, mock, ProviderRegistry.OLLAMA) & check(registry, mock, ProviderRegistry.GROQ);
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            registry.shutdown();
+            mock.stop();
+        }
+        System.exit(passed ? 0 : 1);
+    }
+
+    private static boolean check(ProviderRegistry registry, MockLlmServer mock, String provider) throws Exception {
+        ChatRequest request = new ChatRequest(ChatRequest.NO_CONVERSATION,
+                List.of(new Message(MessageRole.USER, "Cancel me " + provider)), "mock-small");
+        request.setProvider(provider);
+
+        CountDownLatch firstChunk = new CountDownLatch(1);
+        AtomicBoolean cancelled = new AtomicBoolean();
+        AtomicInteger chunksAfterCancel = new AtomicInteger();
+        int abortedBefore = mock.getAbortedResponses();
+
+        CompletableFuture<String> future = registry.get(provider).send(request, chunk -> {
+            if (cancelled.get()) {
+                chunksAfterCancel.incrementAndGet();
+            }
+            firstChunk.countDown();
+        });
+        if (!firstChunk.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+            System.out.println(provider + ": no chunk within " + TIMEOUT_MS + " ms -> FAILED");
+            future.cancel(true);
+            return false;
+        }
+        future.cancel(true);
+        cancelled.set(true);
+
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (mock.getAbortedResponses() == abortedBefore && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        // Leave room for several more tokens at the mock's rate.
+        Thread.sleep((long) (5 * 1000 / TOKENS_PER_SECOND));
+
+        boolean closed = mock.getAbortedResponses() > abortedBefore;
+        boolean passed = closed && chunksAfterCancel.get() == 0;
+        System.out.printf("%s: %d chunks after cancel, connection %s -> %s%n", provider, chunksAfterCancel.get(),
+                closed ? "closed" : "still open", passed ? "ok" : "FAILED");
+        return passed;
+    }
+}